@@ -4,7 +4,10 @@ import java.awt.AWTException;
 import java.awt.Color;
 import java.awt.Desktop;
 import java.awt.Dimension;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
 import java.awt.MouseInfo;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.Toolkit;
@@ -14,13 +17,20 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.HttpURLConnection;
@@ -28,19 +38,78 @@ import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Scanner;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 import javax.swing.JPasswordField;
@@ -107,6 +176,337 @@ public class Javauto {
      */
     private double simulatedMotionSpeed = 0.95D;
 
+    /**
+     * The path the mouse follows when it moves, see {@link setMouseTrajectory}.
+     */
+    private String mouseTrajectory = "linear";
+
+    /**
+     * The time in milliseconds between mouse events during a move.
+     */
+    private final int MOUSE_MOVE_INTERVAL = 8;
+
+    /**
+     * The backend that generates input events and captures the screen. It is
+     * created on first use by {@link getInputBackend}.
+     */
+    private volatile InputBackend inputBackend;
+
+    /**
+     * Guards the creation of the default {@link InputBackend}.
+     */
+    private final Object inputBackendLock = new Object();
+
+    /**
+     * How close to its deadline {@link sleepUntil} stops parking the thread
+     * and spins instead.
+     */
+    private final long SLEEP_SPIN_NANOS = 1000000L;
+
+    /**
+     * The timer that runs tasks for {@link every} and {@link after}. It is
+     * created on first use by {@link getTimer}.
+     */
+    private volatile ScheduledExecutorService timer;
+
+    /**
+     * The thread that polls on behalf of functions that block, like the screen
+     * waits. It's kept apart from the timer so that a function that waits on
+     * it can be called from an {@link every} or {@link after} task. It is
+     * created on first use by {@link getPoller}.
+     */
+    private volatile ScheduledExecutorService poller;
+
+    /**
+     * Guards the creation of the timer and the poller.
+     */
+    private final Object timerLock = new Object();
+
+    /**
+     * The latest frame taken by the background capture started with
+     * {@link captureStart}, or null if it isn't running.
+     */
+    private volatile RasterFrame capturedFrame;
+
+    /**
+     * How old in nanoseconds capturedFrame can be before the pixel functions
+     * stop using it and read the screen themselves.
+     */
+    private volatile long capturedFrameMaxAge;
+
+    /**
+     * The thread taking frames for the background capture, or null if it isn't
+     * running. Guarded by captureLock.
+     */
+    private Thread captureThread;
+
+    /**
+     * Guards starting and stopping the background capture.
+     */
+    private final Object captureLock = new Object();
+
+    /**
+     * The thread recording the screen for {@link recordStart}, or null if it
+     * isn't running. Guarded by recordLock.
+     */
+    private Thread recordThread;
+
+    /**
+     * The error that stopped the last recording, reported by
+     * {@link recordStop}. Guarded by recordLock.
+     */
+    private volatile Exception recordError;
+
+    /**
+     * Guards starting and stopping recordings.
+     */
+    private final Object recordLock = new Object();
+
+    /**
+     * How many seconds apart recordings store a whole frame. Every other frame
+     * only stores what changed since the one before, so rebuilding a frame
+     * means starting from the last whole frame before it.
+     */
+    private final int RECORD_KEYFRAME_SECONDS = 300;
+
+    /**
+     * The size of the buffer each {@link fileOpenAppend} handle collects
+     * writes in. The buffer is written out whenever it fills up.
+     */
+    private final int FILE_APPEND_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * The longest that data appended with {@link fileOpenAppend} waits in its
+     * buffer before being written out.
+     */
+    private final long FILE_APPEND_MAX_AGE_MS = 1000;
+
+    /**
+     * How long in milliseconds a handle opened by {@link fileAppend} is kept
+     * open after it was last appended to.
+     */
+    private final long FILE_APPEND_IDLE_MS = 10000;
+
+    /**
+     * The most handles {@link fileAppend} keeps open at once. Past this the
+     * least recently used one it opened is closed. Handles the script got
+     * from {@link fileOpenAppend} are only closed by the script.
+     */
+    private final int FILE_APPEND_MAX_OPEN = 32;
+
+    /**
+     * The open {@link fileOpenAppend} handles, by absolute path, ordered from
+     * least to most recently used.
+     */
+    private final Map<String, BufferedAppender> fileAppenders = new LinkedHashMap<String, BufferedAppender>(16, 0.75f, true);
+
+    /**
+     * Closes the open append handles when the program exits. It is registered
+     * when the first handle is opened.
+     */
+    private Thread fileAppendersHook;
+
+    /**
+     * How many threads a parallel {@link fileWalk} lists directories with.
+     * Listing mostly waits on the disk, so it's worth more threads than
+     * there are processors.
+     */
+    private final int FILE_WALK_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The watches started by {@link fileOnChange}, {@link dirWatch} and
+     * {@link fileWaitFor} that haven't been cancelled. Guarded by itself.
+     */
+    private final List<FileWatch> fileWatches = new ArrayList<FileWatch>();
+
+    /**
+     * The service that watches directories for fileWatches and the key for
+     * each directory it watches. The service is created the first time it's
+     * needed, and left null if the system can't watch directories itself or
+     * only has the JDK's polling service, see {@link watchDirectories}.
+     * Guarded by fileWatches.
+     */
+    private WatchService fileWatchService;
+    private final Map<Path, WatchKey> fileWatchKeys = new HashMap<Path, WatchKey>();
+    private boolean fileWatchUnavailable = false;
+
+    /**
+     * The thread that polls the watches the service can't handle, started the
+     * first time one is needed, and the task polling them, or null if there
+     * aren't any. The polled watches' listeners run on this thread, so it
+     * isn't the timer or the poller: a listener could be waiting on either.
+     * Guarded by fileWatches.
+     */
+    private ScheduledExecutorService fileWatchPoller;
+    private Future<?> fileWatchPoll;
+
+    /**
+     * The threads listeners are called on, once they've started, so that
+     * {@link fileWaitFor} knows not to wait on a watch from one of them.
+     */
+    private volatile Thread fileWatchThread;
+    private volatile Thread fileWatchPollThread;
+
+    /**
+     * The time in milliseconds between polls of watches that the system can't
+     * watch itself.
+     */
+    private final int FILE_WATCH_POLL_INTERVAL = 250;
+
+    /**
+     * How many files a parallel {@link dirCopy} copies at once, besides the
+     * one the calling thread copies when the queue is full, and how many
+     * more can wait in the queue.
+     */
+    private final int DIR_COPY_THREADS = 4;
+    private final int DIR_COPY_QUEUE_SIZE = 64;
+
+    /**
+     * The thread that encodes and writes screenshots for
+     * {@link screenShotAsync}, created on first use by
+     * {@link getScreenShotEncoder}.
+     */
+    private volatile ThreadPoolExecutor screenShotEncoder;
+
+    /**
+     * Guards the creation of the screenshot encoder.
+     */
+    private final Object screenShotEncoderLock = new Object();
+
+    /**
+     * The most screenshots that can wait to be encoded. Once this many are
+     * waiting, {@link screenShotAsync} encodes on the calling thread instead
+     * so memory can't grow without bound.
+     */
+    private final int SCREENSHOT_QUEUE_SIZE = 8;
+
+    /**
+     * The PNG compression level (0-9) for {@link screenShotAsync}, or -1 to
+     * use the encoder's default.
+     */
+    private volatile int screenShotCompression = -1;
+
+    /**
+     * The fewest pixels a search has to check before it is split between
+     * threads, see {@link searchFrame}.
+     */
+    private final int PARALLEL_SEARCH_MIN_PIXELS = 1 << 18;
+
+    /**
+     * How the screen is read for a search, see {@link setSearchCapture}.
+     */
+    private volatile String searchCapture = "whole";
+
+    /**
+     * The order searches go through an area in, see {@link setSearchOrder}.
+     */
+    private volatile String searchOrder = "row-major";
+
+    /**
+     * About how many pixels each strip holds when searches read the screen in
+     * strips.
+     */
+    private final int SEARCH_STRIP_PIXELS = 1 << 18;
+
+    /**
+     * The index last built by {@link screenIndex}, which {@link pixelSearch}
+     * answers from while it's fresh.
+     */
+    private volatile PixelIndex screenColorIndex;
+
+    /**
+     * Matchers for the colors recently searched for by {@link pixelSearchAny},
+     * ordered from most to least recently used. They're kept since scripts
+     * tend to search for the same few sets of colors over and over.
+     */
+    private final List<ColorSetMatcher> colorSetMatchers = new ArrayList<ColorSetMatcher>();
+
+    /**
+     * The most matchers to keep in colorSetMatchers.
+     */
+    private final int COLOR_SET_CACHE_SIZE = 8;
+
+    /**
+     * The most colors a set can have and still be matched through a small hash
+     * table rather than a bitmap of every color.
+     */
+    private final int COLOR_TABLE_MAX_COLORS = 1024;
+
+    /**
+     * The X and Y steps between the pixels checked by each search speed, see
+     * {@link pixelSearch}.
+     */
+    private final int[] SEARCH_SPEED_X_STEPS = { 1, 1, 2, 2, 3, 3 };
+    private final int[] SEARCH_SPEED_Y_STEPS = { 1, 1, 1, 2, 2, 3 };
+
+    /**
+     * Decoded images for {@link imageSearch}, by absolute path, ordered from
+     * least to most recently used.
+     */
+    private final Map<String, ImageTemplate> imageTemplateCache = new LinkedHashMap<String, ImageTemplate>(16, 0.75f, true);
+
+    /**
+     * The most images to keep in imageTemplateCache.
+     */
+    private final int IMAGE_TEMPLATE_CACHE_SIZE = 32;
+
+    /**
+     * The waits started by {@link waitForPixel}, {@link waitForPixelChange}
+     * and {@link waitForRegionChange} that haven't finished yet. All of them
+     * are checked together from one capture on each tick of the poller.
+     * Guarded by itself.
+     */
+    private final List<ScreenWait> screenWaits = new ArrayList<ScreenWait>();
+
+    /**
+     * Whether the next check of screenWaits is scheduled, and how long in
+     * milliseconds the wait before it is. Guarded by screenWaits.
+     */
+    private boolean screenWaitScheduled = false;
+    private int screenWaitInterval = 4;
+
+    /**
+     * The shortest and longest time in milliseconds between checks of
+     * screenWaits. The time doubles each tick nothing changes, and goes back
+     * to the shortest as soon as something does.
+     */
+    private final int SCREEN_WAIT_MIN_INTERVAL = 4;
+    private final int SCREEN_WAIT_MAX_INTERVAL = 128;
+
+    /**
+     * Set in a key table entry when shift must be held to type the key.
+     */
+    private final int KEY_SHIFTED = 0x10000;
+
+    /**
+     * The kinds of op in a compiled keystroke program. Each op is one of these
+     * combined with a virtual key code, see {@link compileKeystrokes}.
+     */
+    private final int KEYSTROKE_PRESS = 0x100000;
+    private final int KEYSTROKE_RELEASE = 0x200000;
+    private final int KEYSTROKE_DELAY = 0x300000;
+    private final int KEYSTROKE_OP_MASK = 0xF00000;
+
+    /**
+     * The virtual key code of each typeable ASCII character, combined with
+     * KEY_SHIFTED if shift is needed to type it. Characters that can't be
+     * typed map to 0. It's built the first time it's needed.
+     */
+    private volatile int[] keyTable;
+
+    /**
+     * Compiled keystroke programs for recently sent strings, ordered from least
+     * to most recently used.
+     */
+    private final Map<String, int[]> keystrokeCache = new LinkedHashMap<String, int[]>(16, 0.75f, true);
+
+    /**
+     * The most keystroke programs to keep in keystrokeCache, and the longest
+     * string whose program will be kept.
+     */
+    private final int KEYSTROKE_CACHE_SIZE = 256;
+    private final int KEYSTROKE_CACHE_MAX_LENGTH = 4096;
+
     /*
      * Define the public functions to be offered by the library
      */
@@ -142,6 +542,126 @@ public class Javauto {
 	}
     }
 
+    /**
+     * Get the path the mouse follows when it moves.
+     * 
+     * @return "linear", "eased", or "bezier"
+     */
+    public String getMouseTrajectory() {
+	return mouseTrajectory;
+    }
+
+    /**
+     * Set the path the mouse follows when it moves. A "linear" move goes in a
+     * straight line at a constant speed. An "eased" move also goes in a
+     * straight line, but speeds up at the start and slows down at the end. A
+     * "bezier" move is eased and curves out to one side, like a hand would
+     * move it. The time a move takes is set by {@link setSpeed} and doesn't
+     * depend on the path.
+     * 
+     * @param trajectory
+     *            either "linear", "eased", or "bezier"
+     */
+    public void setMouseTrajectory(String trajectory) {
+	if (!trajectory.equals("linear") && !trajectory.equals("eased")
+		&& !trajectory.equals("bezier"))
+	    throw new IllegalArgumentException("Unknown mouse trajectory "
+		    + trajectory);
+	mouseTrajectory = trajectory;
+    }
+
+    /**
+     * Get how searches read the screen.
+     * 
+     * @return "whole" or "strips"
+     */
+    public String getSearchCapture() {
+	return searchCapture;
+    }
+
+    /**
+     * Set how {@link pixelSearch} and {@link pixelSearchAny} read the screen.
+     * With "whole" the whole area is captured and then searched, which is
+     * quickest when the pixel is likely to be near the bottom of the area or
+     * not there at all. With "strips" the area is captured a strip of rows at
+     * a time and the search stops at the first strip with a match, so a pixel
+     * near the top of a large area is found after reading only a little of
+     * the screen, and a search never holds more than one strip in memory.
+     * Either way a running background capture (see {@link captureStart}) is
+     * used if it covers the area.
+     * 
+     * @param mode
+     *            either "whole" or "strips"
+     */
+    public void setSearchCapture(String mode) {
+	if (!mode.equals("whole") && !mode.equals("strips"))
+	    throw new IllegalArgumentException("Unknown search capture " + mode);
+	searchCapture = mode;
+    }
+
+    /**
+     * Get the order searches go through an area in.
+     * 
+     * @return "row-major", "column-major" or "spiral"
+     */
+    public String getSearchOrder() {
+	return searchOrder;
+    }
+
+    /**
+     * Set the order {@link pixelSearch} and {@link pixelSearchAny} go through
+     * an area in, which decides which match they return when there's more
+     * than one. With "row-major" the area is searched a row at a time from
+     * the top, each row from left to right. With "column-major" it's searched
+     * a column at a time from the left, each column from top to bottom. With
+     * "spiral" it's searched outward from the middle, so the match returned
+     * is the one nearest the middle; see {@link pixelSearchNear}. Searching
+     * in strips (see {@link setSearchCapture}) is only done in row-major
+     * order.
+     * 
+     * @param order
+     *            either "row-major", "column-major" or "spiral"
+     */
+    public void setSearchOrder(String order) {
+	if (!order.equals("row-major") && !order.equals("column-major")
+		&& !order.equals("spiral"))
+	    throw new IllegalArgumentException("Unknown search order " + order);
+	searchOrder = order;
+    }
+
+    /**
+     * Replace the backend used for mouse, keyboard and screen access. Every
+     * function that moves the mouse, presses a key or reads the screen goes
+     * through this backend.
+     * 
+     * @param backend
+     *            The new backend. If this is null the default backend, which
+     *            uses one {@link Robot} per screen, will be used again.
+     */
+    public void setInputBackend(InputBackend backend) {
+	inputBackend = backend;
+    }
+
+    /**
+     * Get the number of mouse and keyboard events the current input backend
+     * has issued.
+     * 
+     * @return The number of events issued so far.
+     */
+    public long getInputEventCount() {
+	return getInputBackend().getEventCount();
+    }
+
+    /**
+     * Get the number of screen captures (including single pixel reads) the
+     * current input backend has issued.
+     * 
+     * @return The number of captures issued so far.
+     */
+    public long getCaptureCount() {
+	return getInputBackend().getCaptureCount();
+    }
+
     /**
      * Simulate keyboard input by "typing" the contents of str. Special keys can
      * also be typed. The speed at which this typing occurs can be set with
@@ -151,15 +671,23 @@ public class Javauto {
      *            The string to type, one letter (or special key) at a time.
      */
     public void send(String str) {
-	/* replace special characters like {CTRL} with unicode place holders */
-	String s = handleSpecialChars(str);
-
-	/* iterate through the charcters in the string and simulate each one */
-	for (int i = 0; i < s.length(); i++) {
-	    char c = s.charAt(i);
-	    sendChar(c);
-	    if (simulatedMotionSpeed < .945D)
-		sleep((int) (400 - (400 * (simulatedMotionSpeed + .05D))));
+	/* compile the string into keystrokes (or reuse them) and play them */
+	int[] program = getKeystrokeProgram(str);
+	InputBackend r = getInputBackend();
+	for (int op : program) {
+	    int key = op & 0xFFFF;
+	    switch (op & KEYSTROKE_OP_MASK) {
+	    case KEYSTROKE_PRESS:
+		r.keyPress(key);
+		break;
+	    case KEYSTROKE_RELEASE:
+		r.keyRelease(key);
+		break;
+	    case KEYSTROKE_DELAY:
+		if (simulatedMotionSpeed < .945D)
+		    sleep((int) (400 - (400 * (simulatedMotionSpeed + .05D))));
+		break;
+	    }
 	}
     }
 
@@ -173,586 +701,31 @@ public class Javauto {
      *            or keys specified only the first will be held down.
      */
     public void keyDown(String str) {
-	/* replace special characters like {CTRL} with unicode place holders */
-	String s = handleSpecialChars(str);
+	/* if there is more than one key specified just use the first */
+	int key = keyAt(str, 0);
+
+	/* only keys that can be typed without shift can be held down */
+	if (key == 0 || (key & KEY_SHIFTED) != 0)
+	    throw new IllegalArgumentException("Cannot type " + str);
+	getInputBackend().keyPress(key);
+    }
 
+    /**
+     * Release a key that has been held down. Special keys can also be used
+     * here.
+     * 
+     * @param str
+     *            The single key that will be released. If more than one key is
+     *            specified only the first will be released.
+     */
+    public void keyUp(String str) {
 	/* if there is more than one key specified just use the first */
-	char c = s.charAt(0);
+	int key = keyAt(str, 0);
 
-	/* try to recognize the key and press it down */
-	try {
-	    Robot r = new Robot();
-	    switch (c) {
-	    case '\u0259':
-		r.keyPress(KeyEvent.VK_WINDOWS);
-		break;
-	    case '\u025A':
-		r.keyPress(KeyEvent.VK_SHIFT);
-		break;
-	    case '\u025B':
-		r.keyPress(KeyEvent.VK_DELETE);
-		break;
-	    case '\u025C':
-		r.keyPress(KeyEvent.VK_CONTROL);
-		break;
-	    case '\u025D':
-		r.keyPress(KeyEvent.VK_ALT);
-		break;
-	    case '\u025E':
-		r.keyPress(KeyEvent.VK_ESCAPE);
-		break;
-	    case '\u025F':
-		r.keyPress(KeyEvent.VK_META);
-		break;
-	    case '\u1E90':
-		r.keyPress(KeyEvent.VK_F1);
-		break;
-	    case '\u1E91':
-		r.keyPress(KeyEvent.VK_F2);
-		break;
-	    case '\u1E92':
-		r.keyPress(KeyEvent.VK_F3);
-		break;
-	    case '\u1E93':
-		r.keyPress(KeyEvent.VK_F4);
-		break;
-	    case '\u1E94':
-		r.keyPress(KeyEvent.VK_F5);
-		break;
-	    case '\u1E95':
-		r.keyPress(KeyEvent.VK_F6);
-		break;
-	    case '\u1E96':
-		r.keyPress(KeyEvent.VK_F7);
-		break;
-	    case '\u1E97':
-		r.keyPress(KeyEvent.VK_F8);
-		break;
-	    case '\u1E98':
-		r.keyPress(KeyEvent.VK_F9);
-		break;
-	    case '\u1E99':
-		r.keyPress(KeyEvent.VK_F10);
-		break;
-	    case '\u1E9A':
-		r.keyPress(KeyEvent.VK_F11);
-		break;
-	    case '\u1E9B':
-		r.keyPress(KeyEvent.VK_F12);
-		break;
-	    case '\u1E9C':
-		r.keyPress(KeyEvent.VK_F13);
-		break;
-	    case '\u1E9D':
-		r.keyPress(KeyEvent.VK_F14);
-		break;
-	    case '\u1E9E':
-		r.keyPress(KeyEvent.VK_F15);
-		break;
-	    case '\u1E9F':
-		r.keyPress(KeyEvent.VK_F16);
-		break;
-	    case '\u1EA0':
-		r.keyPress(KeyEvent.VK_F17);
-		break;
-	    case '\u1EA1':
-		r.keyPress(KeyEvent.VK_F18);
-		break;
-	    case '\u1EA2':
-		r.keyPress(KeyEvent.VK_F19);
-		break;
-	    case '\u1EA3':
-		r.keyPress(KeyEvent.VK_F20);
-		break;
-	    case '\u1EA4':
-		r.keyPress(KeyEvent.VK_F21);
-		break;
-	    case '\u1EA5':
-		r.keyPress(KeyEvent.VK_F22);
-		break;
-	    case '\u1EA6':
-		r.keyPress(KeyEvent.VK_F23);
-		break;
-	    case '\u1EA7':
-		r.keyPress(KeyEvent.VK_F24);
-		break;
-	    case '\u1EA8':
-		r.keyPress(KeyEvent.VK_HOME);
-		break;
-	    case '\u1EA9':
-		r.keyPress(KeyEvent.VK_END);
-		break;
-	    case '\u2C00':
-		r.keyPress(KeyEvent.VK_LEFT);
-		break;
-	    case '\u2C01':
-		r.keyPress(KeyEvent.VK_RIGHT);
-		break;
-	    case '\u2C02':
-		r.keyPress(KeyEvent.VK_UP);
-		break;
-	    case '\u2C03':
-		r.keyPress(KeyEvent.VK_DOWN);
-		break;
-	    case '\u2C04':
-		r.keyPress(KeyEvent.VK_CAPS_LOCK);
-		break;
-	    case 'a':
-		r.keyPress(KeyEvent.VK_A);
-		break;
-	    case 'b':
-		r.keyPress(KeyEvent.VK_B);
-		break;
-	    case 'c':
-		r.keyPress(KeyEvent.VK_C);
-		break;
-	    case 'd':
-		r.keyPress(KeyEvent.VK_D);
-		break;
-	    case 'e':
-		r.keyPress(KeyEvent.VK_E);
-		break;
-	    case 'f':
-		r.keyPress(KeyEvent.VK_F);
-		break;
-	    case 'g':
-		r.keyPress(KeyEvent.VK_G);
-		break;
-	    case 'h':
-		r.keyPress(KeyEvent.VK_H);
-		break;
-	    case 'i':
-		r.keyPress(KeyEvent.VK_I);
-		break;
-	    case 'j':
-		r.keyPress(KeyEvent.VK_J);
-		break;
-	    case 'k':
-		r.keyPress(KeyEvent.VK_K);
-		break;
-	    case 'l':
-		r.keyPress(KeyEvent.VK_L);
-		break;
-	    case 'm':
-		r.keyPress(KeyEvent.VK_M);
-		break;
-	    case 'n':
-		r.keyPress(KeyEvent.VK_N);
-		break;
-	    case 'o':
-		r.keyPress(KeyEvent.VK_O);
-		break;
-	    case 'p':
-		r.keyPress(KeyEvent.VK_P);
-		break;
-	    case 'q':
-		r.keyPress(KeyEvent.VK_Q);
-		break;
-	    case 'r':
-		r.keyPress(KeyEvent.VK_R);
-		break;
-	    case 's':
-		r.keyPress(KeyEvent.VK_S);
-		break;
-	    case 't':
-		r.keyPress(KeyEvent.VK_T);
-		break;
-	    case 'u':
-		r.keyPress(KeyEvent.VK_U);
-		break;
-	    case 'v':
-		r.keyPress(KeyEvent.VK_V);
-		break;
-	    case 'w':
-		r.keyPress(KeyEvent.VK_W);
-		break;
-	    case 'x':
-		r.keyPress(KeyEvent.VK_X);
-		break;
-	    case 'y':
-		r.keyPress(KeyEvent.VK_Y);
-		break;
-	    case 'z':
-		r.keyPress(KeyEvent.VK_Z);
-		break;
-	    case '`':
-		r.keyPress(KeyEvent.VK_BACK_QUOTE);
-		break;
-	    case '0':
-		r.keyPress(KeyEvent.VK_0);
-		break;
-	    case '1':
-		r.keyPress(KeyEvent.VK_1);
-		break;
-	    case '2':
-		r.keyPress(KeyEvent.VK_2);
-		break;
-	    case '3':
-		r.keyPress(KeyEvent.VK_3);
-		break;
-	    case '4':
-		r.keyPress(KeyEvent.VK_4);
-		break;
-	    case '5':
-		r.keyPress(KeyEvent.VK_5);
-		break;
-	    case '6':
-		r.keyPress(KeyEvent.VK_6);
-		break;
-	    case '7':
-		r.keyPress(KeyEvent.VK_7);
-		break;
-	    case '8':
-		r.keyPress(KeyEvent.VK_8);
-		break;
-	    case '9':
-		r.keyPress(KeyEvent.VK_9);
-		break;
-	    case '-':
-		r.keyPress(KeyEvent.VK_MINUS);
-		break;
-	    case '=':
-		r.keyPress(KeyEvent.VK_EQUALS);
-		break;
-	    case '\t':
-		r.keyPress(KeyEvent.VK_TAB);
-		break;
-	    case '\n':
-		r.keyPress(KeyEvent.VK_ENTER);
-		break;
-	    case '[':
-		r.keyPress(KeyEvent.VK_OPEN_BRACKET);
-		break;
-	    case ']':
-		r.keyPress(KeyEvent.VK_CLOSE_BRACKET);
-		break;
-	    case '\\':
-		r.keyPress(KeyEvent.VK_BACK_SLASH);
-		break;
-	    case ';':
-		r.keyPress(KeyEvent.VK_SEMICOLON);
-		break;
-	    case '\'':
-		r.keyPress(KeyEvent.VK_QUOTE);
-		break;
-	    case ',':
-		r.keyPress(KeyEvent.VK_COMMA);
-		break;
-	    case '.':
-		r.keyPress(KeyEvent.VK_PERIOD);
-		break;
-	    case '/':
-		r.keyPress(KeyEvent.VK_SLASH);
-		break;
-	    case ' ':
-		r.keyPress(KeyEvent.VK_SPACE);
-		break;
-	    case '\b':
-		r.keyPress(KeyEvent.VK_BACK_SPACE);
-		break;
-	    default:
-		throw new IllegalArgumentException("Cannot type " + s);
-	    }
-	} catch (AWTException e) { // throw an error
-	    throw new RuntimeException(e);
-	}
-    }
-
-    /**
-     * Release a key that has been held down. Special keys can also be used
-     * here.
-     * 
-     * @param str
-     *            The single key that will be released. If more than one key is
-     *            specified only the first will be released.
-     */
-    public void keyUp(String str) {
-	/* replace special characters like {CTRL} with unicode place holders */
-	String s = handleSpecialChars(str);
-
-	/* if there is more than one key specified just use the first */
-	char c = s.charAt(0);
-
-	/* try to recognize the key and un-press it */
-	try {
-	    Robot r = new Robot();
-	    switch (c) {
-	    case '\u0259':
-		r.keyRelease(KeyEvent.VK_WINDOWS);
-		break;
-	    case '\u025A':
-		r.keyRelease(KeyEvent.VK_SHIFT);
-		break;
-	    case '\u025B':
-		r.keyRelease(KeyEvent.VK_DELETE);
-		break;
-	    case '\u025C':
-		r.keyRelease(KeyEvent.VK_CONTROL);
-		break;
-	    case '\u025D':
-		r.keyRelease(KeyEvent.VK_ALT);
-		break;
-	    case '\u025E':
-		r.keyRelease(KeyEvent.VK_ESCAPE);
-		break;
-	    case '\u025F':
-		r.keyRelease(KeyEvent.VK_META);
-		break;
-	    case '\u1E90':
-		r.keyRelease(KeyEvent.VK_F1);
-		break;
-	    case '\u1E91':
-		r.keyRelease(KeyEvent.VK_F2);
-		break;
-	    case '\u1E92':
-		r.keyRelease(KeyEvent.VK_F3);
-		break;
-	    case '\u1E93':
-		r.keyRelease(KeyEvent.VK_F4);
-		break;
-	    case '\u1E94':
-		r.keyRelease(KeyEvent.VK_F5);
-		break;
-	    case '\u1E95':
-		r.keyRelease(KeyEvent.VK_F6);
-		break;
-	    case '\u1E96':
-		r.keyRelease(KeyEvent.VK_F7);
-		break;
-	    case '\u1E97':
-		r.keyRelease(KeyEvent.VK_F8);
-		break;
-	    case '\u1E98':
-		r.keyRelease(KeyEvent.VK_F9);
-		break;
-	    case '\u1E99':
-		r.keyRelease(KeyEvent.VK_F10);
-		break;
-	    case '\u1E9A':
-		r.keyRelease(KeyEvent.VK_F11);
-		break;
-	    case '\u1E9B':
-		r.keyRelease(KeyEvent.VK_F12);
-		break;
-	    case '\u1E9C':
-		r.keyRelease(KeyEvent.VK_F13);
-		break;
-	    case '\u1E9D':
-		r.keyRelease(KeyEvent.VK_F14);
-		break;
-	    case '\u1E9E':
-		r.keyRelease(KeyEvent.VK_F15);
-		break;
-	    case '\u1E9F':
-		r.keyRelease(KeyEvent.VK_F16);
-		break;
-	    case '\u1EA0':
-		r.keyRelease(KeyEvent.VK_F17);
-		break;
-	    case '\u1EA1':
-		r.keyRelease(KeyEvent.VK_F18);
-		break;
-	    case '\u1EA2':
-		r.keyRelease(KeyEvent.VK_F19);
-		break;
-	    case '\u1EA3':
-		r.keyRelease(KeyEvent.VK_F20);
-		break;
-	    case '\u1EA4':
-		r.keyRelease(KeyEvent.VK_F21);
-		break;
-	    case '\u1EA5':
-		r.keyRelease(KeyEvent.VK_F22);
-		break;
-	    case '\u1EA6':
-		r.keyRelease(KeyEvent.VK_F23);
-		break;
-	    case '\u1EA7':
-		r.keyRelease(KeyEvent.VK_F24);
-		break;
-	    case '\u1EA8':
-		r.keyRelease(KeyEvent.VK_HOME);
-		break;
-	    case '\u1EA9':
-		r.keyRelease(KeyEvent.VK_END);
-		break;
-	    case '\u2C00':
-		r.keyRelease(KeyEvent.VK_LEFT);
-		break;
-	    case '\u2C01':
-		r.keyRelease(KeyEvent.VK_RIGHT);
-		break;
-	    case '\u2C02':
-		r.keyRelease(KeyEvent.VK_UP);
-		break;
-	    case '\u2C03':
-		r.keyRelease(KeyEvent.VK_DOWN);
-		break;
-	    case '\u2C04':
-		r.keyRelease(KeyEvent.VK_CAPS_LOCK);
-		break;
-	    case 'a':
-		r.keyRelease(KeyEvent.VK_A);
-		break;
-	    case 'b':
-		r.keyRelease(KeyEvent.VK_B);
-		break;
-	    case 'c':
-		r.keyRelease(KeyEvent.VK_C);
-		break;
-	    case 'd':
-		r.keyRelease(KeyEvent.VK_D);
-		break;
-	    case 'e':
-		r.keyRelease(KeyEvent.VK_E);
-		break;
-	    case 'f':
-		r.keyRelease(KeyEvent.VK_F);
-		break;
-	    case 'g':
-		r.keyRelease(KeyEvent.VK_G);
-		break;
-	    case 'h':
-		r.keyRelease(KeyEvent.VK_H);
-		break;
-	    case 'i':
-		r.keyRelease(KeyEvent.VK_I);
-		break;
-	    case 'j':
-		r.keyRelease(KeyEvent.VK_J);
-		break;
-	    case 'k':
-		r.keyRelease(KeyEvent.VK_K);
-		break;
-	    case 'l':
-		r.keyRelease(KeyEvent.VK_L);
-		break;
-	    case 'm':
-		r.keyRelease(KeyEvent.VK_M);
-		break;
-	    case 'n':
-		r.keyRelease(KeyEvent.VK_N);
-		break;
-	    case 'o':
-		r.keyRelease(KeyEvent.VK_O);
-		break;
-	    case 'p':
-		r.keyRelease(KeyEvent.VK_P);
-		break;
-	    case 'q':
-		r.keyRelease(KeyEvent.VK_Q);
-		break;
-	    case 'r':
-		r.keyRelease(KeyEvent.VK_R);
-		break;
-	    case 's':
-		r.keyRelease(KeyEvent.VK_S);
-		break;
-	    case 't':
-		r.keyRelease(KeyEvent.VK_T);
-		break;
-	    case 'u':
-		r.keyRelease(KeyEvent.VK_U);
-		break;
-	    case 'v':
-		r.keyRelease(KeyEvent.VK_V);
-		break;
-	    case 'w':
-		r.keyRelease(KeyEvent.VK_W);
-		break;
-	    case 'x':
-		r.keyRelease(KeyEvent.VK_X);
-		break;
-	    case 'y':
-		r.keyRelease(KeyEvent.VK_Y);
-		break;
-	    case 'z':
-		r.keyRelease(KeyEvent.VK_Z);
-		break;
-	    case '`':
-		r.keyRelease(KeyEvent.VK_BACK_QUOTE);
-		break;
-	    case '0':
-		r.keyRelease(KeyEvent.VK_0);
-		break;
-	    case '1':
-		r.keyRelease(KeyEvent.VK_1);
-		break;
-	    case '2':
-		r.keyRelease(KeyEvent.VK_2);
-		break;
-	    case '3':
-		r.keyRelease(KeyEvent.VK_3);
-		break;
-	    case '4':
-		r.keyRelease(KeyEvent.VK_4);
-		break;
-	    case '5':
-		r.keyRelease(KeyEvent.VK_5);
-		break;
-	    case '6':
-		r.keyRelease(KeyEvent.VK_6);
-		break;
-	    case '7':
-		r.keyRelease(KeyEvent.VK_7);
-		break;
-	    case '8':
-		r.keyRelease(KeyEvent.VK_8);
-		break;
-	    case '9':
-		r.keyRelease(KeyEvent.VK_9);
-		break;
-	    case '-':
-		r.keyRelease(KeyEvent.VK_MINUS);
-		break;
-	    case '=':
-		r.keyRelease(KeyEvent.VK_EQUALS);
-		break;
-	    case '\t':
-		r.keyRelease(KeyEvent.VK_TAB);
-		break;
-	    case '\n':
-		r.keyRelease(KeyEvent.VK_ENTER);
-		break;
-	    case '[':
-		r.keyRelease(KeyEvent.VK_OPEN_BRACKET);
-		break;
-	    case ']':
-		r.keyRelease(KeyEvent.VK_CLOSE_BRACKET);
-		break;
-	    case '\\':
-		r.keyRelease(KeyEvent.VK_BACK_SLASH);
-		break;
-	    case ';':
-		r.keyRelease(KeyEvent.VK_SEMICOLON);
-		break;
-	    case '\'':
-		r.keyRelease(KeyEvent.VK_QUOTE);
-		break;
-	    case '\"':
-		r.keyRelease(KeyEvent.VK_QUOTEDBL);
-		break;
-	    case ',':
-		r.keyRelease(KeyEvent.VK_COMMA);
-		break;
-	    case '.':
-		r.keyRelease(KeyEvent.VK_PERIOD);
-		break;
-	    case '/':
-		r.keyRelease(KeyEvent.VK_SLASH);
-		break;
-	    case ' ':
-		r.keyRelease(KeyEvent.VK_SPACE);
-		break;
-	    case '\b':
-		r.keyRelease(KeyEvent.VK_BACK_SPACE);
-		break;
-	    default:
-		throw new IllegalArgumentException("Cannot type" + s);
-	    }
-	} catch (AWTException e) { // throw an error
-	    throw new RuntimeException(e);
-	}
+	/* only keys that can be typed without shift can be released */
+	if (key == 0 || (key & KEY_SHIFTED) != 0)
+	    throw new IllegalArgumentException("Cannot type " + str);
+	getInputBackend().keyRelease(key);
     }
 
     /**
@@ -777,12 +750,7 @@ public class Javauto {
      *            Integer value of key to be pressed.
      */
     public void keyDown(int i) {
-	try {
-	    Robot r = new Robot();
-	    r.keyPress(i);
-	} catch (AWTException e) { // throw an error
-	    throw new RuntimeException(e);
-	}
+	getInputBackend().keyPress(i);
     }
 
     /**
@@ -793,12 +761,7 @@ public class Javauto {
      *            Integer representation of the key that will be released.
      */
     public void keyUp(int i) {
-	try {
-	    Robot r = new Robot();
-	    r.keyRelease(i);
-	} catch (AWTException e) { // throw an error
-	    throw new RuntimeException(e);
-	}
+	getInputBackend().keyRelease(i);
     }
 
     /**
@@ -856,25 +819,58 @@ public class Javauto {
 
     /**
      * Delay execution for an amount of milliseconds (1000 milliseconds = 1
-     * second).
+     * second). The delay is accurate to well under a millisecond.
      * 
      * @param milliseconds
-     *            Time to delay; must be between 0 and 60,000ms. Only takes
-     *            integer values.
+     *            Time to delay; must not be negative. Only takes integer
+     *            values.
      */
     public void sleep(int milliseconds) {
-	try {
-	    Robot r = new Robot();
-	    r.delay(milliseconds);
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
-	}
+	if (milliseconds < 0)
+	    throw new IllegalArgumentException("Cannot sleep for "
+		    + milliseconds + "ms");
+	sleepUntil(System.nanoTime() + milliseconds * 1000000L);
+    }
+
+    /**
+     * Run a task over and over, once every period. Each run is scheduled from
+     * when the first run was due rather than from when the last one finished,
+     * so a task that polls 20 times a second keeps to that rate. All tasks are
+     * run one at a time on a single timer thread, so a slow task delays the
+     * others.
+     * 
+     * @param periodMs
+     *            The time in milliseconds between the start of each run. The
+     *            first run happens one period from now.
+     * @param task
+     *            The task to run. If it throws an exception it won't be run
+     *            again.
+     * @return A Future that can be used to cancel the task.
+     */
+    public Future<?> every(int periodMs, Runnable task) {
+	return getTimer().scheduleAtFixedRate(task, periodMs, periodMs,
+		TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task once after a delay, on the same timer thread used by
+     * {@link every}.
+     * 
+     * @param delayMs
+     *            The time in milliseconds to wait before running the task.
+     * @param task
+     *            The task to run.
+     * @return A Future that can be used to cancel the task before it runs.
+     */
+    public Future<?> after(int delayMs, Runnable task) {
+	return getTimer().schedule(task, delayMs, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Move the mouse cursor to a certain position. The speed of the mouse
-     * movement can be set with {@link setSpeed}. Note that mouse coordinates
-     * can be found with the Javauto Helper.
+     * movement can be set with {@link setSpeed} and the path it follows with
+     * {@link setMouseTrajectory}. Note that mouse coordinates can be found
+     * with the Javauto Helper.
      * 
      * @param xFinal
      *            The X value of the coordinate to move the mouse to.
@@ -882,111 +878,66 @@ public class Javauto {
      *            The Y value of the coordinate to move the mouse to.
      */
     public void mouseMove(int xFinal, int yFinal) {
+	InputBackend r = getInputBackend();
 
-	try {
-	    /*
-	     * if they have speed set to highest (everything happens instantly)
-	     * just move the mouse
-	     */
-	    if (simulatedMotionSpeed == 1) {
-		new Robot().mouseMove(xFinal, yFinal);
-		return;
-	    }
-
-	    /* calculate delay time in milliseconds based on overall speed */
-	    int delay = (int) ((1 - simulatedMotionSpeed) * 100) / 4;
-
-	    /* set how many pixels we want to move at a time */
-	    final int pixelInterval = 7;
+	/*
+	 * if they have speed set to highest (everything happens instantly)
+	 * just move the mouse
+	 */
+	if (simulatedMotionSpeed == 1) {
+	    r.mouseMove(xFinal, yFinal);
+	    return;
+	}
 
-	    /* get starting position */
-	    int xInitial = MouseInfo.getPointerInfo().getLocation().x;
-	    int yInitial = MouseInfo.getPointerInfo().getLocation().y;
+	/* get starting position and the change in each direction */
+	Point start = r.getMousePosition();
+	double deltaX = xFinal - start.x;
+	double deltaY = yFinal - start.y;
 
-	    /* keep track of where we are */
-	    int xCurrent = xInitial;
-	    int yCurrent = yInitial;
+	/*
+	 * the move takes a set time based on its length and the speed, and is
+	 * split into one step per MOUSE_MOVE_INTERVAL
+	 */
+	long duration = (long) (Math.hypot(deltaX, deltaY) / 7
+		* (1 - simulatedMotionSpeed) * 25);
+	int steps = (int) Math.max(1, duration / MOUSE_MOVE_INTERVAL);
+
+	/* how far a bezier path's control points sit out to one side */
+	double bowX = -deltaY * .2;
+	double bowY = deltaX * .2;
+
+	long startTime = System.nanoTime();
+	int xLast = start.x;
+	int yLast = start.y;
+	for (int i = 1; i <= steps; i++) {
+	    /* how far along the path we should be at this step (0-1) */
+	    double t = (double) i / steps;
+	    double along = t;
+	    double aside = 0;
+	    if (!mouseTrajectory.equals("linear")) {
+		/* ease in and out, starting and stopping gently */
+		along = t * t * (3 - 2 * t);
+	    }
+	    if (mouseTrajectory.equals("bezier")) {
+		/*
+		 * a cubic bezier with its control points a third and two thirds
+		 * of the way along, both pushed out to the side
+		 */
+		aside = 3 * along * (1 - along);
+	    }
+	    int x = (int) Math.round(start.x + deltaX * along + bowX * aside);
+	    int y = (int) Math.round(start.y + deltaY * along + bowY * aside);
 
-	    /* keep track of where we'd like to be (as double) */
 	    /*
-	     * this ensures that adding decimal intervals repeatedly doesn't
-	     * result in a loss of accuracy over time since we can always refer
-	     * back to this ideal value and round from there to get the closest
-	     * pixel
+	     * wait until this step is due, measuring from the start so time
+	     * spent moving the mouse doesn't add up over the steps
 	     */
-	    double xIdeal = (double) xCurrent;
-	    double yIdeal = (double) yCurrent;
-
-	    /* get the change that must occur in each direction */
-	    int deltaX = xFinal - xInitial;
-	    int deltaY = yFinal - yInitial;
-
-	    /* get how many x pixels to move for each y and vice versa */
-	    double xForEachY = 0;
-	    if (deltaY != 0)
-		xForEachY = (double) deltaX / deltaY;
-	    double yForEachX = 0;
-	    if (deltaX != 0)
-		yForEachX = (double) deltaY / deltaX;
-
-	    /* get the closest point that allows for our pixel interval */
-	    int xClosest = xFinal;
-	    int yClosest = yFinal;
-	    if (deltaX > 0) {
-		while ((xClosest - xInitial) % pixelInterval != 0)
-		    xClosest = xClosest - 1;
-	    } else {
-		while ((xClosest - xInitial) % pixelInterval != 0)
-		    xClosest = xClosest + 1;
-	    }
-	    if (deltaY > 0) {
-		while ((yClosest - yInitial) % pixelInterval != 0)
-		    yClosest = yClosest - 1;
-	    } else {
-		while ((yClosest - yInitial) % pixelInterval != 0)
-		    yClosest = yClosest + 1;
-	    }
-
-	    /* initialize Robot that will make mouse movements */
-	    Robot r = new Robot();
-
-	    /* if x is larger than y, move x value in whole numbers */
-	    if (Math.abs(deltaX) > Math.abs(deltaY)) {
-		while (xCurrent != xClosest) {
-		    if (deltaX < 0)
-			xCurrent = xCurrent - pixelInterval;
-		    else
-			xCurrent = xCurrent + pixelInterval;
-		    if (deltaY < 0)
-			yIdeal = yIdeal - (Math.abs(yForEachX) * pixelInterval);
-		    else
-			yIdeal = yIdeal + (Math.abs(yForEachX) * pixelInterval);
-		    yCurrent = (int) Math.round(yIdeal);
-		    r.mouseMove(xCurrent, yCurrent);
-		    r.delay(delay);
-		}
-	    }
-
-	    /* if y is larger than x, move y value in whole numbers */
-	    else {
-		while (yCurrent != yClosest) {
-		    if (deltaY < 0)
-			yCurrent = yCurrent - pixelInterval;
-		    else
-			yCurrent = yCurrent + pixelInterval;
-		    if (deltaX < 0)
-			xIdeal = xIdeal - (Math.abs(xForEachY) * pixelInterval);
-		    else
-			xIdeal = xIdeal + (Math.abs(xForEachY) * pixelInterval);
-		    xCurrent = (int) Math.round(xIdeal);
-		    r.mouseMove(xCurrent, yCurrent);
-		    r.delay(delay);
-		}
+	    sleepUntil(startTime + duration * 1000000L * i / steps);
+	    if (x != xLast || y != yLast || i == steps) {
+		r.mouseMove(x, y);
+		xLast = x;
+		yLast = y;
 	    }
-
-	    r.mouseMove(xFinal, yFinal);
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
 	}
     }
 
@@ -1001,25 +952,21 @@ public class Javauto {
      *            The Y value of the coordinate that willl be clicked on.
      */
     public void mouseClick(String button, int x, int y) {
-	try {
-	    Robot r = new Robot();
-
-	    /* move the mouse to where we want to click */
-	    mouseMove(x, y);
-
-	    /* perform a mouse click with the specified button */
-	    if (button.equals("left")) {
-		r.mousePress(InputEvent.BUTTON1_MASK);
-		r.mouseRelease(InputEvent.BUTTON1_MASK);
-	    } else if (button.equals("middle")) {
-		r.mousePress(InputEvent.BUTTON2_MASK);
-		r.mouseRelease(InputEvent.BUTTON2_MASK);
-	    } else if (button.equals("right")) {
-		r.mousePress(InputEvent.BUTTON3_MASK);
-		r.mouseRelease(InputEvent.BUTTON3_MASK);
-	    }
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
+	InputBackend r = getInputBackend();
+
+	/* move the mouse to where we want to click */
+	mouseMove(x, y);
+
+	/* perform a mouse click with the specified button */
+	if (button.equals("left")) {
+	    r.mousePress(InputEvent.BUTTON1_MASK);
+	    r.mouseRelease(InputEvent.BUTTON1_MASK);
+	} else if (button.equals("middle")) {
+	    r.mousePress(InputEvent.BUTTON2_MASK);
+	    r.mouseRelease(InputEvent.BUTTON2_MASK);
+	} else if (button.equals("right")) {
+	    r.mousePress(InputEvent.BUTTON3_MASK);
+	    r.mouseRelease(InputEvent.BUTTON3_MASK);
 	}
     }
 
@@ -1031,21 +978,17 @@ public class Javauto {
      *            "left", "right", or "middle".
      */
     public void mouseClick(String button) {
-	try {
-	    Robot r = new Robot();
-	    /* perform a mouse click with the specified button */
-	    if (button.equals("left")) {
-		r.mousePress(InputEvent.BUTTON1_MASK);
-		r.mouseRelease(InputEvent.BUTTON1_MASK);
-	    } else if (button.equals("middle")) {
-		r.mousePress(InputEvent.BUTTON2_MASK);
-		r.mouseRelease(InputEvent.BUTTON2_MASK);
-	    } else if (button.equals("right")) {
-		r.mousePress(InputEvent.BUTTON3_MASK);
-		r.mouseRelease(InputEvent.BUTTON3_MASK);
-	    }
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
+	InputBackend r = getInputBackend();
+	/* perform a mouse click with the specified button */
+	if (button.equals("left")) {
+	    r.mousePress(InputEvent.BUTTON1_MASK);
+	    r.mouseRelease(InputEvent.BUTTON1_MASK);
+	} else if (button.equals("middle")) {
+	    r.mousePress(InputEvent.BUTTON2_MASK);
+	    r.mouseRelease(InputEvent.BUTTON2_MASK);
+	} else if (button.equals("right")) {
+	    r.mousePress(InputEvent.BUTTON3_MASK);
+	    r.mouseRelease(InputEvent.BUTTON3_MASK);
 	}
     }
 
@@ -1062,22 +1005,18 @@ public class Javauto {
      *            The Y value of the coordinate that will be clicked on.
      */
     public void mouseDown(String button, int x, int y) {
-	try {
-	    Robot r = new Robot();
-
-	    /* move the mouse to where we want it to be */
-	    mouseMove(x, y);
-
-	    /* press down the appropriate button */
-	    if (button.equals("left")) {
-		r.mousePress(InputEvent.BUTTON1_MASK);
-	    } else if (button.equals("middle")) {
-		r.mousePress(InputEvent.BUTTON2_MASK);
-	    } else if (button.equals("right")) {
-		r.mousePress(InputEvent.BUTTON3_MASK);
-	    }
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
+	InputBackend r = getInputBackend();
+
+	/* move the mouse to where we want it to be */
+	mouseMove(x, y);
+
+	/* press down the appropriate button */
+	if (button.equals("left")) {
+	    r.mousePress(InputEvent.BUTTON1_MASK);
+	} else if (button.equals("middle")) {
+	    r.mousePress(InputEvent.BUTTON2_MASK);
+	} else if (button.equals("right")) {
+	    r.mousePress(InputEvent.BUTTON3_MASK);
 	}
     }
 
@@ -1090,19 +1029,15 @@ public class Javauto {
      *            "left", "right", or "middle".
      */
     public void mouseDown(String button) {
-	try {
-	    Robot r = new Robot();
-
-	    /* press down the appropriate button */
-	    if (button.equals("left")) {
-		r.mousePress(InputEvent.BUTTON1_MASK);
-	    } else if (button.equals("middle")) {
-		r.mousePress(InputEvent.BUTTON2_MASK);
-	    } else if (button.equals("right")) {
-		r.mousePress(InputEvent.BUTTON3_MASK);
-	    }
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
+	InputBackend r = getInputBackend();
+
+	/* press down the appropriate button */
+	if (button.equals("left")) {
+	    r.mousePress(InputEvent.BUTTON1_MASK);
+	} else if (button.equals("middle")) {
+	    r.mousePress(InputEvent.BUTTON2_MASK);
+	} else if (button.equals("right")) {
+	    r.mousePress(InputEvent.BUTTON3_MASK);
 	}
     }
 
@@ -1114,19 +1049,15 @@ public class Javauto {
      *            "left", "right", or "middle".
      */
     public void mouseUp(String button) {
-	try {
-	    Robot r = new Robot();
-
-	    /* release the appropriate button */
-	    if (button.equals("left")) {
-		r.mouseRelease(InputEvent.BUTTON1_MASK);
-	    } else if (button.equals("middle")) {
-		r.mouseRelease(InputEvent.BUTTON2_MASK);
-	    } else if (button.equals("right")) {
-		r.mouseRelease(InputEvent.BUTTON3_MASK);
-	    }
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
+	InputBackend r = getInputBackend();
+
+	/* release the appropriate button */
+	if (button.equals("left")) {
+	    r.mouseRelease(InputEvent.BUTTON1_MASK);
+	} else if (button.equals("middle")) {
+	    r.mouseRelease(InputEvent.BUTTON2_MASK);
+	} else if (button.equals("right")) {
+	    r.mouseRelease(InputEvent.BUTTON3_MASK);
 	}
     }
 
@@ -1157,24 +1088,14 @@ public class Javauto {
      * Scroll the mouse wheel up once.
      */
     public void mouseScrollUp() {
-	try {
-	    Robot r = new Robot();
-	    r.mouseWheel(-100);
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
-	}
+	getInputBackend().mouseWheel(-100);
     }
 
     /**
      * Scroll the mouse wheel down once.
      */
     public void mouseScrollDown() {
-	try {
-	    Robot r = new Robot();
-	    r.mouseWheel(100);
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
-	}
+	getInputBackend().mouseWheel(100);
     }
 
     /**
@@ -1710,9 +1631,15 @@ public class Javauto {
 	    if (!fileName.toLowerCase().endsWith(".png")) {
 		fileName = fileName + ".png";
 	    }
-	    Robot robot = new Robot();
-	    BufferedImage img = robot.createScreenCapture(new Rectangle(
-		    topLeft[0], topLeft[1], width, height));
+	    Rectangle area = new Rectangle(topLeft[0], topLeft[1], width,
+		    height);
+	    BufferedImage img;
+	    ScreenFrame frame = getCapturedFrame(area);
+	    if (frame != null)
+		img = frame.region(area.x, area.y, area.x + width - 1,
+			area.y + height - 1).toImage();
+	    else
+		img = getInputBackend().createScreenCapture(area);
 	    File save_path = new File(fileName);
 	    ImageIO.write(img, "png", save_path);
 	} catch (Exception e) {
@@ -1737,31 +1664,430 @@ public class Javauto {
     }
 
     /**
-     * Open a file or URL in the default program. (This will be the default
-     * browser if it's a URL.)
+     * Take a screenshot and save it to a file in the background. The screen is
+     * captured straight away but encoding and writing the file happen on a
+     * separate thread, so the script doesn't have to wait for them. The file
+     * format is picked from the file's extension:
+     * <ul>
+     * <li>.png - PNG, compressed according to {@link setScreenShotCompression}
+     * </li>
+     * <li>.bmp - an uncompressed bitmap, which is quick to write</li>
+     * <li>.qoi - the "Quite OK Image" format, which is lossless and many times
+     * quicker to encode than PNG while still being compressed. It can be read
+     * back with {@link imageRead}.</li>
+     * <li>.raw - just the pixels, as 3 bytes (red, green, blue) for each pixel,
+     * row by row from the top left</li>
+     * </ul>
+     * Any other file name has ".png" added to it. As with {@link screenShot}
+     * the bottom right coordinate is just outside the area, so the image is
+     * x2 - x1 pixels wide and y2 - y1 pixels high.
      * 
-     * @param path
-     *            The URL or file to open. URLs must begin with http:// or
-     *            https://
-     * @return Returns true on success. Returns false on failure.
-     */
-    public boolean open(String path) {
-	if (path.toLowerCase().startsWith("http://")
-		|| path.toLowerCase().startsWith("https://")) {
-	    try {
-		Desktop d = Desktop.getDesktop();
-		URI p = new URI(path);
-		d.browse(p);
-		return true;
-	    } catch (Throwable t) {
-		return false;
-	    }
-	} else {
-	    try {
-		Desktop d = Desktop.getDesktop();
-		File file = new File(path);
-		d.open(file);
-		return true;
+     * @param fileName
+     *            Filename to save the screenshot to.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return A Future that completes with the written file once it's been
+     *         saved, or with the error if it couldn't be, such as when the
+     *         area is empty.
+     */
+    public Future<File> screenShotAsync(String fileName, int x1, int y1, int x2, int y2) {
+	/* work out the format from the file name */
+	String format = imageFormat(fileName);
+	if (format == null) {
+	    format = "png";
+	    fileName = fileName + ".png";
+	}
+
+	/* the same area screenShot takes */
+	final Rectangle area = new Rectangle(Math.min(x1, x2), Math.min(y1, y2),
+		Math.abs(x2 - x1), Math.abs(y2 - y1));
+	if (area.isEmpty()) {
+	    return getScreenShotEncoder().submit(new Callable<File>() {
+		public File call() throws IOException {
+		    throw new IOException("the screenshot area is empty: "
+			    + area);
+		}
+	    });
+	}
+
+	/* capture now, then leave the rest to the encoder */
+	final RasterFrame frame = grabRegion(area);
+	final File file = new File(fileName);
+	final String encoding = format;
+	final int compression = screenShotCompression;
+	return getScreenShotEncoder().submit(new Callable<File>() {
+	    public File call() throws IOException {
+		writeScreenShot(frame, file, encoding, compression);
+		return file;
+	    }
+	});
+    }
+
+    /**
+     * Take a screenshot of the whole screen and save it to a file in the
+     * background. See {@link screenShotAsync}.
+     * 
+     * @param fileName
+     *            Filename to save the screenshot to.
+     * @return A Future that completes with the written file once it's been
+     *         saved.
+     */
+    public Future<File> screenShotAsync(String fileName) {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	return screenShotAsync(fileName, 0, 0, screen.width, screen.height);
+    }
+
+    /**
+     * Set how hard {@link screenShotAsync} compresses PNG files. Lower levels
+     * are quicker to write but make larger files.
+     * 
+     * @param level
+     *            The compression level from 0 (none) to 9 (most), or -1 to use
+     *            the default.
+     */
+    public void setScreenShotCompression(int level) {
+	if (level < -1 || level > 9)
+	    throw new IllegalArgumentException(
+		    "Compression level must be from 0 to 9, not " + level);
+	screenShotCompression = level;
+    }
+
+    /**
+     * Read an image file. Any format that can be read by ImageIO (such as PNG,
+     * BMP, GIF or JPEG) can be read, as well as QOI files written by
+     * {@link screenShotAsync}.
+     * 
+     * @param fileName
+     *            The image file to read.
+     * @return The image.
+     */
+    public BufferedImage imageRead(String fileName) {
+	try {
+	    return readImage(new File(fileName));
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    /**
+     * Start capturing part of the screen in the background. Frames are taken
+     * at a steady rate on their own thread, and while the latest frame is
+     * recent enough the pixel functions ({@link pixelGetColor},
+     * {@link pixelSearch} and {@link screenShot}) read from it instead of
+     * capturing the screen themselves. This means a loop that checks several
+     * pixels does no captures of its own, and every check sees the same frame.
+     * Areas outside the captured region are still read from the screen.
+     * 
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param fps
+     *            How many frames to take each second.
+     * @param maxAgeMs
+     *            The oldest in milliseconds a frame can be and still be used.
+     *            If capturing falls behind, pixel functions read the screen
+     *            themselves rather than use an older frame.
+     */
+    public void captureStart(int x1, int y1, int x2, int y2, int fps, int maxAgeMs) {
+	if (fps <= 0)
+	    throw new IllegalArgumentException("Cannot capture at " + fps
+		    + " fps");
+	final Rectangle area = screenArea(x1, y1, x2, y2);
+	final long period = 1000000000L / fps;
+
+	synchronized (captureLock) {
+	    captureStop();
+	    capturedFrameMaxAge = maxAgeMs * 1000000L;
+	    captureThread = new Thread(new Runnable() {
+		public void run() {
+		    long next = System.nanoTime();
+		    while (!Thread.currentThread().isInterrupted()) {
+			/*
+			 * take the next frame, then swap it in for the last
+			 * one so readers always see a whole frame
+			 */
+			long time = System.nanoTime();
+			capturedFrame = new RasterFrame(getInputBackend()
+				.createScreenCapture(area), area.x, area.y,
+				time);
+
+			/* if a capture ran long skip ahead instead of catching up */
+			next += period;
+			if (next < System.nanoTime())
+			    next = System.nanoTime();
+			sleepUntil(next);
+		    }
+		}
+	    }, "Javauto capture");
+	    captureThread.setDaemon(true);
+	    captureThread.start();
+	}
+    }
+
+    /**
+     * Start capturing the whole screen in the background. See
+     * {@link captureStart}.
+     * 
+     * @param fps
+     *            How many frames to take each second.
+     * @param maxAgeMs
+     *            The oldest in milliseconds a frame can be and still be used.
+     */
+    public void captureStart(int fps, int maxAgeMs) {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	captureStart(0, 0, screen.width - 1, screen.height - 1, fps, maxAgeMs);
+    }
+
+    /**
+     * Stop the background capture started with {@link captureStart}. The pixel
+     * functions go back to reading the screen themselves.
+     */
+    public void captureStop() {
+	synchronized (captureLock) {
+	    if (captureThread == null)
+		return;
+	    captureThread.interrupt();
+	    try {
+		captureThread.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    captureThread = null;
+	    capturedFrame = null;
+	}
+    }
+
+    /**
+     * Start recording part of the screen to a file. This is much smaller and
+     * cheaper than saving a screenshot for every frame: a whole frame is only
+     * stored every few minutes, and the frames in between only store the parts
+     * of the screen that changed. While nothing on screen changes a frame
+     * takes up a few bytes. Any frame can be saved as an image afterwards with
+     * {@link recordExtract}. Starting a new recording stops the last one.
+     * 
+     * @param fileName
+     *            The file to record to. It is overwritten if it exists.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param fps
+     *            How many frames to record each second.
+     */
+    public void recordStart(String fileName, int x1, int y1, int x2, int y2, int fps) {
+	if (fps <= 0)
+	    throw new IllegalArgumentException("Cannot record at " + fps
+		    + " fps");
+	final Rectangle area = screenArea(x1, y1, x2, y2);
+	final long period = 1000000000L / fps;
+
+	synchronized (recordLock) {
+	    recordStop();
+	    final RecordingWriter writer;
+	    try {
+		writer = new RecordingWriter(new File(fileName), area,
+			fps * RECORD_KEYFRAME_SECONDS);
+	    } catch (IOException e) {
+		throw new RuntimeException(e);
+	    }
+	    recordThread = new Thread(new Runnable() {
+		public void run() {
+		    long next = System.nanoTime();
+		    try {
+			while (!Thread.currentThread().isInterrupted()) {
+			    writer.write(grabRegion(area));
+
+			    /* skip frames rather than catch up if behind */
+			    next += period;
+			    if (next < System.nanoTime())
+				next = System.nanoTime();
+			    sleepUntil(next);
+			}
+		    } catch (IOException e) {
+			recordError = e;
+		    } catch (RuntimeException e) {
+			/* such as the screen not being readable */
+			recordError = e;
+		    } finally {
+			try {
+			    writer.close();
+			} catch (IOException e) {
+			    if (recordError == null)
+				recordError = e;
+			}
+		    }
+		}
+	    }, "Javauto recorder");
+	    recordThread.setDaemon(true);
+	    recordThread.start();
+	}
+    }
+
+    /**
+     * Start recording the whole screen to a file. See {@link recordStart}.
+     * 
+     * @param fileName
+     *            The file to record to. It is overwritten if it exists.
+     * @param fps
+     *            How many frames to record each second.
+     */
+    public void recordStart(String fileName, int fps) {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	recordStart(fileName, 0, 0, screen.width - 1, screen.height - 1, fps);
+    }
+
+    /**
+     * Stop the recording started with {@link recordStart} and finish its file.
+     * A recording that is never stopped, for example because the script
+     * crashed, can still be read, it just takes longer to open.
+     */
+    public void recordStop() {
+	synchronized (recordLock) {
+	    if (recordThread == null)
+		return;
+	    recordThread.interrupt();
+	    try {
+		recordThread.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    recordThread = null;
+
+	    Exception error = recordError;
+	    recordError = null;
+	    if (error != null)
+		throw new RuntimeException("Recording failed", error);
+	}
+    }
+
+    /**
+     * Get the number of frames in a recording made with {@link recordStart}.
+     * 
+     * @param fileName
+     *            The recording.
+     * @return The number of frames.
+     */
+    public int recordFrameCount(String fileName) {
+	try {
+	    RecordingReader reader = new RecordingReader(new File(fileName));
+	    try {
+		return reader.getFrameCount();
+	    } finally {
+		reader.close();
+	    }
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    /**
+     * Save a frame of a recording made with {@link recordStart} as an image.
+     * The image format is picked from the file's extension in the same way as
+     * {@link screenShotAsync}.
+     * 
+     * @param fileName
+     *            The recording.
+     * @param frame
+     *            The frame to save, counting from 0.
+     * @param imageFileName
+     *            The file to save the frame to.
+     * @return The time the frame was taken, in milliseconds since the
+     *         recording started.
+     */
+    public long recordExtract(String fileName, int frame, String imageFileName) {
+	String format = imageFormat(imageFileName);
+	if (format == null) {
+	    format = "png";
+	    imageFileName = imageFileName + ".png";
+	}
+	try {
+	    RecordingReader reader = new RecordingReader(new File(fileName));
+	    try {
+		RasterFrame image = reader.getFrame(frame);
+		writeScreenShot(image, new File(imageFileName), format,
+			screenShotCompression);
+		return image.getTime();
+	    } finally {
+		reader.close();
+	    }
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    /**
+     * Take a snapshot of part of the screen that can be read from as often as
+     * needed without capturing the screen again. This is much faster than
+     * calling {@link pixelGetColor} for each pixel when checking several
+     * pixels at once. If a background capture started with
+     * {@link captureStart} has a recent enough frame the snapshot is taken
+     * from it.
+     * 
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return The snapshot. Its pixels are read with screen coordinates.
+     */
+    public ScreenFrame screenSnapshot(int x1, int y1, int x2, int y2) {
+	return grabRegion(screenArea(x1, y1, x2, y2));
+    }
+
+    /**
+     * Take a snapshot of the whole screen. See {@link screenSnapshot}.
+     * 
+     * @return The snapshot.
+     */
+    public ScreenFrame screenSnapshot() {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	return screenSnapshot(0, 0, screen.width - 1, screen.height - 1);
+    }
+
+    /**
+     * Open a file or URL in the default program. (This will be the default
+     * browser if it's a URL.)
+     * 
+     * @param path
+     *            The URL or file to open. URLs must begin with http:// or
+     *            https://
+     * @return Returns true on success. Returns false on failure.
+     */
+    public boolean open(String path) {
+	if (path.toLowerCase().startsWith("http://")
+		|| path.toLowerCase().startsWith("https://")) {
+	    try {
+		Desktop d = Desktop.getDesktop();
+		URI p = new URI(path);
+		d.browse(p);
+		return true;
+	    } catch (Throwable t) {
+		return false;
+	    }
+	} else {
+	    try {
+		Desktop d = Desktop.getDesktop();
+		File file = new File(path);
+		d.open(file);
+		return true;
 	    } catch (Throwable t) {
 		return false;
 	    }
@@ -2000,14 +2326,24 @@ public class Javauto {
      * @return Integer array formatted like [x position, y position].
      */
     public int[] cursorGetPos() {
-	int X = MouseInfo.getPointerInfo().getLocation().x; // get the X
-							    // coordinate of the
-							    // mouse
-	int Y = MouseInfo.getPointerInfo().getLocation().y; // get the Y
-							    // coordinate of the
-							    // mouse
-	int[] coords = { X, Y };
-	return coords;
+	return cursorGetPos(new int[2]);
+    }
+
+    /**
+     * Get the current position of the mouse cursor, putting it in an array
+     * that's passed in. Reusing the same array for every call saves creating
+     * a new one each time, which matters when polling the cursor very often.
+     * 
+     * @param out
+     *            An array of at least two integers to put the position in.
+     * @return The array passed in, now holding [x position, y position].
+     */
+    public int[] cursorGetPos(int[] out) {
+	/* read both from one location so they always go together */
+	Point location = getInputBackend().getMousePosition();
+	out[0] = location.x;
+	out[1] = location.y;
+	return out;
     }
 
     /**
@@ -2020,13 +2356,13 @@ public class Javauto {
      * @return The integer representation of the pixel's color.
      */
     public int pixelGetColor(int x, int y) {
-	try {
-	    Robot r = new Robot();
-	    Color pixel = r.getPixelColor(x, y);
-	    return pixel.getRGB();
-	} catch (AWTException e) {
-	    throw new RuntimeException(e);
-	}
+	/* checked here rather than by getCapturedFrame to avoid a Rectangle */
+	RasterFrame frame = capturedFrame;
+	if (frame != null
+		&& System.nanoTime() - frame.getTime() <= capturedFrameMaxAge
+		&& frame.contains(x, y))
+	    return frame.getColor(x, y);
+	return getInputBackend().getPixelColor(x, y);
     }
 
     /**
@@ -2041,8 +2377,10 @@ public class Javauto {
      * @return The integer representation of the color.
      */
     public int rgbGetInt(int r, int g, int b) {
-	Color c = new Color(r, g, b);
-	return c.getRGB();
+	if (((r | g | b) & ~0xFF) != 0)
+	    throw new IllegalArgumentException("Color values " + r + "," + g
+		    + "," + b + " must be from 0 to 255");
+	return 0xFF000000 | r << 16 | g << 8 | b;
     }
 
     /**
@@ -2053,14 +2391,31 @@ public class Javauto {
      * @return An array with three values: [red, green, blue].
      */
     public int[] intGetRGB(int i) {
-	Color c = new Color(i);
-	return new int[] { c.getRed(), c.getGreen(), c.getBlue() };
+	return intGetRGB(i, new int[3]);
+    }
+
+    /**
+     * Get the RGB values of an integer color value, putting them in an array
+     * that's passed in. Reusing the same array for every call saves creating
+     * a new one each time.
+     * 
+     * @param i
+     *            The integer value of the color.
+     * @param out
+     *            An array of at least three integers to put the values in.
+     * @return The array passed in, now holding [red, green, blue].
+     */
+    public int[] intGetRGB(int i, int[] out) {
+	out[0] = (i >> 16) & 0xFF;
+	out[1] = (i >> 8) & 0xFF;
+	out[2] = i & 0xFF;
+	return out;
     }
 
     /**
      * Search for the coordinates of a pixel of a certain color within an area.
      * This will return the coordinates of the first pixel found within the area
-     * that matches the search color.
+     * that matches the search color, or is within a shade of it.
      * 
      * @param colorInt
      *            Integer representation of the color to search for.
@@ -2077,22 +2432,19 @@ public class Javauto {
      *            searches twice as fast as speed 1 except it only checks every
      *            other pixel, which is fine if the color you're trying to find
      *            is more than two pixels wide.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the search color and still match. A shade
+     *            of 0 only matches the exact color.
      * @return If the color is found coordinates are returned in an int array
      *         formatted like: [x, y]. If the color is not found it will return
      *         [-1,-1]. If there is an error executing the search it will return
      *         [-3, -3].
      */
-    public int[] pixelSearch(int colorInt, int x1, int y1, int x2, int y2,
-	    int speed) {
+    public int[] pixelSearch(int colorInt, int x1, int y1, int x2, int y2, int speed, int shade) {
 	try {
-	    Color color = new Color(colorInt);
-	    Robot r = new Robot(); // create robot to capture the screen
-	    BufferedImage screen = r.createScreenCapture(new Rectangle(x1, y1,
-		    x2 + 1, y2 + 1)); // read the screen into a buffered image
-				      // (+1's to avoid index out of range)
-
-	    int cVal = color.getRGB(); // get value of color to compare to
-				       // pixels
+	    PixelMatcher matcher = shadeMatcher(colorInt, shade);
+	    Rectangle area = screenArea(x1, y1, x2, y2);
 
 	    // speed 1 - xMod = 1 yMod = 1
 	    // 10201 - 100%
@@ -2104,85 +2456,11 @@ public class Javauto {
 	    // 1650 - 16%
 	    // speed 5 - xMod = 3 yMod = 3
 	    // 1089 - 10%
+	    if (speed < 1 || speed > 5)
+		speed = 1;
 
-	    int xMod;
-	    int yMod;
-	    switch (speed) {
-	    case 1:
-		xMod = 1;
-		yMod = 1;
-		break;
-	    case 2:
-		xMod = 2;
-		yMod = 1;
-		break;
-	    case 3:
-		xMod = 2;
-		yMod = 2;
-		break;
-	    case 4:
-		xMod = 3;
-		yMod = 2;
-		break;
-	    case 5:
-		xMod = 3;
-		yMod = 3;
-		break;
-	    default:
-		xMod = 1;
-		yMod = 1;
-		break;
-	    }
-
-	    int[] preXArray = new int[x2 - x1 + 1]; // create an array to hold
-						    // all X values in image
-	    int iterator = 0;
-	    while (iterator <= x2) {
-		preXArray[iterator] = x1 + iterator;
-		iterator++;
-	    }
-	    int[] preYArray = new int[y2 - y1 + 1]; // create an array to hold
-						    // all Y values in image
-	    iterator = 0;
-	    while (iterator <= y2) {
-		preYArray[iterator] = y1 + iterator;
-		iterator++;
-	    }
-
-	    int[] xArray = new int[(preXArray.length / xMod)];
-	    int step = 0;
-	    for (int i = 0; i < preXArray.length; i += xMod) {
-		try {
-		    xArray[step] = preXArray[i];
-		} catch (Exception e) {
-		}
-		step++;
-	    }
-
-	    int[] yArray = new int[(preYArray.length / yMod)];
-	    step = 0;
-	    for (int i = 0; i < preYArray.length; i += yMod) {
-		try {
-		    yArray[step] = preYArray[i];
-		} catch (Exception e) {
-		}
-		step++;
-	    }
-
-	    for (int yVal : yArray) {
-		for (int xVal : xArray) {
-		    int col = screen.getRGB(xVal, yVal); // get the color of
-							 // pixel at coords
-							 // (xVal, yVal)
-		    if (col == cVal) { // if we find the color
-			int[] cPos = { xVal, yVal };
-			return cPos;
-		    }
-		}
-	    }
-
-	    int[] returnVal = { -1, -1 };
-	    return returnVal;
+	    return searchScreen(matcher, area, SEARCH_SPEED_X_STEPS[speed],
+		    SEARCH_SPEED_Y_STEPS[speed]);
 	} catch (Exception e) {
 	    int[] returnVal = { -3, -3 };
 	    return returnVal;
@@ -2204,12 +2482,48 @@ public class Javauto {
      *            X value of bottom right coordinate.
      * @param y2
      *            Y value of bottom right coordinate.
+     * @param speed
+     *            A value of 1-5 to describe how fast to search. A speed of 2
+     *            searches twice as fast as speed 1 except it only checks every
+     *            other pixel, which is fine if the color you're trying to find
+     *            is more than two pixels wide.
+     * @return If the color is found coordinates are returned in an int array
+     *         formatted like: [x, y]. If the color is not found it will return
+     *         [-1,-1]. If there is an error executing the search it will return
+     *         [-3, -3].
+     */
+    public int[] pixelSearch(int colorInt, int x1, int y1, int x2, int y2, int speed) {
+	return pixelSearch(colorInt, x1, y1, x2, y2, speed, 0);
+    }
+
+    /**
+     * Search for the coordinates of a pixel of a certain color within an area.
+     * This will return the coordinates of the first pixel found within the area
+     * that matches the search color, in the order set by
+     * {@link setSearchOrder}. If an index built with
+     * {@link screenIndex} covers the area and is still fresh the answer comes
+     * from the index without reading the screen.
+     * 
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
      * @return If the color is found coordinates are returned in an int array
      *         formatted like: [x, y]. If the color is not found it will return
      *         [-1,-1]. If there is an error executing the search it will return
      *         [-3, -3].
      */
     public int[] pixelSearch(int colorInt, int x1, int y1, int x2, int y2) {
+	PixelIndex index = screenColorIndex;
+	if (index != null && searchOrder.equals("row-major")
+		&& index.covers(screenArea(x1, y1, x2, y2)))
+	    return index.find(colorInt, x1, y1, x2, y2);
 	return pixelSearch(colorInt, x1, y1, x2, y2, 1);
     }
 
@@ -2227,1609 +2541,4330 @@ public class Javauto {
      */
     public int[] pixelSearch(int colorInt) {
 	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
-	return pixelSearch(colorInt, 0, 0, screen.width, screen.height);
+	return pixelSearch(colorInt, 0, 0, screen.width - 1, screen.height - 1);
     }
 
     /**
-     * Check if a file or directory exists.
+     * Search for the pixel of a certain color nearest to a point, searching
+     * outward from the point in square rings. This is much quicker than
+     * {@link pixelSearch} when the pixel is expected to be close by, such as
+     * when following something that moves a little at a time. Pixels are
+     * nearer if they are fewer pixels away horizontally or vertically,
+     * whichever is more; between those the nearest in a straight line wins.
      * 
-     * @param fPath
-     *            Path of the file or directory to check.
-     * @return Will return true if the file or directory exists, otherwise
-     *         returns false.
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x
+     *            X value of the point to search around.
+     * @param y
+     *            Y value of the point to search around.
+     * @param maxRadius
+     *            The furthest in pixels horizontally or vertically from the
+     *            point to search.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the search color and still match.
+     * @return If the color is found coordinates are returned in an int array
+     *         formatted like: [x, y]. If the color is not found it will return
+     *         [-1,-1]. If there is an error executing the search it will return
+     *         [-3, -3].
      */
-    public boolean fileExists(String fPath) {
-	return new File(fPath).exists();
-    }
-
-    /**
-     * Delete a file. This will not work on a directory.
+    public int[] pixelSearchNear(int colorInt, int x, int y, int maxRadius, int shade) {
+	try {
+	    PixelMatcher matcher = shadeMatcher(colorInt, shade);
+	    if (maxRadius < 0)
+		throw new IllegalArgumentException("Cannot search within "
+			+ maxRadius + " pixels");
+	    /* only read as much of the screen as might be searched */
+	    Rectangle area = screenArea(Math.max(x - maxRadius, 0), Math.max(
+		    y - maxRadius, 0), x + maxRadius, y + maxRadius);
+	    return searchRings(grabFrame(area), matcher, area, x, y, 1, 1);
+	} catch (Exception e) {
+	    int[] returnVal = { -3, -3 };
+	    return returnVal;
+	}
+    }
+
+    /**
+     * Search for the pixel of a certain color nearest to a point. See
+     * {@link pixelSearchNear}.
      * 
-     * @param fPath
-     *            Path of the file to delete.
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x
+     *            X value of the point to search around.
+     * @param y
+     *            Y value of the point to search around.
+     * @param maxRadius
+     *            The furthest in pixels horizontally or vertically from the
+     *            point to search.
+     * @return If the color is found coordinates are returned in an int array
+     *         formatted like: [x, y]. If the color is not found it will return
+     *         [-1,-1]. If there is an error executing the search it will return
+     *         [-3, -3].
      */
-    public void fileDelete(String fPath) {
-	new File(fPath).delete();
+    public int[] pixelSearchNear(int colorInt, int x, int y, int maxRadius) {
+	return pixelSearchNear(colorInt, x, y, maxRadius, 0);
     }
 
     /**
-     * Delete a directory and its contents.
+     * Read part of the screen and index where every color in it is. Looking
+     * up a color in the index takes the same short time however large the
+     * area is, so this is much quicker than {@link pixelSearch} when looking
+     * for many colors on the same screen. Until the index is maxAgeMs old,
+     * {@link pixelSearch} (without a speed or shade) also uses it for any area
+     * inside it.
+     * 
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param maxAgeMs
+     *            How long in milliseconds {@link pixelSearch} uses the index
+     *            for. Use 0 to stop it being used by {@link pixelSearch}.
+     * @return The index.
      */
-    public void rmDir(String filePath) {
-	File file = new File(filePath);
-	if (!file.exists())
-	    return;
-	if (file.isDirectory()) {
-	    for (File f : file.listFiles()) {
-		rmDir(f.getAbsolutePath());
-	    }
-	}
-	file.delete();
+    public ColorIndex screenIndex(int x1, int y1, int x2, int y2, int maxAgeMs) {
+	return screenIndex(grabRegion(screenArea(x1, y1, x2, y2)), maxAgeMs);
     }
 
     /**
-     * Create a directory.
+     * Index where every color in a snapshot is. See {@link screenIndex}.
      * 
-     * @param dirName
-     *            The name of the directory to create. If the directory already
-     *            exists no action will be taken.
+     * @param frame
+     *            A snapshot from {@link screenSnapshot}.
+     * @param maxAgeMs
+     *            How long in milliseconds after the snapshot was taken
+     *            {@link pixelSearch} uses the index for.
+     * @return The index.
      */
-    public void mkDir(String dirName) {
-	File file = new File(dirName);
-	if (!file.exists())
-	    file.mkdir();
+    public ColorIndex screenIndex(ScreenFrame frame, int maxAgeMs) {
+	PixelIndex index = new PixelIndex(toRasterFrame(frame),
+		maxAgeMs * 1000000L);
+	screenColorIndex = index;
+	return index;
     }
 
     /**
-     * Create a file. Similar to the unix touch command.
+     * Search for the coordinates of a pixel that is any one of several colors
+     * within an area. This will return the coordinates of the first pixel
+     * found within the area that matches any of the colors. The area is only
+     * read and searched once, however many colors there are.
      * 
-     * @param fPath
-     *            Path of file to be created.
-     */
-    public void fileCreate(String fPath) {
+     * @param colors
+     *            Integer representations of the colors to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param speed
+     *            A value of 1-5 to describe how fast to search, see
+     *            {@link pixelSearch}.
+     * @return If a color is found coordinates are returned in an int array
+     *         formatted like: [x, y]. If none of the colors are found it will
+     *         return [-1,-1]. If there is an error executing the search it
+     *         will return [-3, -3].
+     */
+    public int[] pixelSearchAny(int[] colors, int x1, int y1, int x2, int y2, int speed) {
 	try {
-	    new File(fPath).createNewFile();
-	} catch (IOException e) {
-	    // TODO Auto-generated catch block
-	    e.printStackTrace();
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    if (speed < 1 || speed > 5)
+		speed = 1;
+
+	    PixelMatcher matcher = getColorSetMatcher(colors);
+	    return searchScreen(matcher, area, SEARCH_SPEED_X_STEPS[speed],
+		    SEARCH_SPEED_Y_STEPS[speed]);
+	} catch (Exception e) {
+	    int[] returnVal = { -3, -3 };
+	    return returnVal;
 	}
     }
 
     /**
-     * Get the full file path of a specific file or directory.
+     * Search for the coordinates of a pixel that is any one of several colors
+     * within an area. This will return the coordinates of the first pixel
+     * found within the area that matches any of the colors.
      * 
-     * @param fPath
-     *            Path of the file.
-     * @return The full (absolute) path of the file or directory.
+     * @param colors
+     *            Integer representations of the colors to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return If a color is found coordinates are returned in an int array
+     *         formatted like: [x, y]. If none of the colors are found it will
+     *         return [-1,-1]. If there is an error executing the search it
+     *         will return [-3, -3].
      */
-    public String fileGetPath(String fPath) {
-	return new File(fPath).getAbsolutePath();
+    public int[] pixelSearchAny(int[] colors, int x1, int y1, int x2, int y2) {
+	return pixelSearchAny(colors, x1, y1, x2, y2, 1);
     }
 
     /**
-     * Get the base name of a file, including its extension.
+     * Search for an image within an area of the screen. This will return the
+     * coordinates of the first place, in row-major order, where every pixel of
+     * the image matches the screen. Fully transparent pixels in the image
+     * match anything. Images are decoded once and kept until their file
+     * changes.
      * 
-     * @param fPath
-     *            Path of the file.
-     * @return Name of the file (including extension).
-     */
-    public String fileGetName(String fPath) {
-	return new File(fPath).getName();
+     * @param templatePath
+     *            Path of the image file to search for, in any format that can
+     *            be read by ImageIO (such as PNG, BMP, GIF or JPEG).
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param tolerance
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel on the screen can be from the image and still match.
+     * @return If the image is found the coordinates of its top left corner are
+     *         returned in an int array formatted like: [x, y]. If the image is
+     *         not found it will return [-1,-1]. If there is an error executing
+     *         the search (such as the image file not being readable) it will
+     *         return [-3, -3].
+     */
+    public int[] imageSearch(String templatePath, int x1, int y1, int x2, int y2, int tolerance) {
+	try {
+	    if (tolerance < 0 || tolerance > 255)
+		throw new IllegalArgumentException(
+			"Tolerance must be from 0 to 255, not " + tolerance);
+	    ImageTemplate template = getImageTemplate(templatePath);
+
+	    /* read the screen into a frame */
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    RasterFrame screen = grabFrame(area);
+
+	    /* the image can only start where it fits inside the area */
+	    Rectangle positions = new Rectangle(area.x, area.y, area.width
+		    - template.width + 1, area.height - template.height + 1);
+	    if (positions.width <= 0 || positions.height <= 0)
+		return new int[] { -1, -1 };
+
+	    return searchFrame(new TemplateScan(screen, template, tolerance),
+		    positions, 1, 1);
+	} catch (Exception e) {
+	    int[] returnVal = { -3, -3 };
+	    return returnVal;
+	}
     }
 
     /**
-     * Returns true for a file but not for a directory (or a non-existant file).
+     * Search for an exact copy of an image within an area of the screen.
      * 
-     * @param fPath
-     *            Path to evaluate.
-     * @return Returns true if fPath is a file, otherwise returns false.
+     * @param templatePath
+     *            Path of the image file to search for, in any format that can
+     *            be read by ImageIO (such as PNG, BMP, GIF or JPEG).
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return If the image is found the coordinates of its top left corner are
+     *         returned in an int array formatted like: [x, y]. If the image is
+     *         not found it will return [-1,-1]. If there is an error executing
+     *         the search (such as the image file not being readable) it will
+     *         return [-3, -3].
      */
-    public boolean isFile(String fPath) {
-	return new File(fPath).isFile();
+    public int[] imageSearch(String templatePath, int x1, int y1, int x2, int y2) {
+	return imageSearch(templatePath, x1, y1, x2, y2, 0);
     }
 
     /**
-     * Check if a path is a directory.
+     * Search for an exact copy of an image anywhere on the screen.
      * 
-     * @param fPath
-     *            Path to evaluate.
-     * @return True if directory, false if not.
-     */
-    public boolean isDirectory(String fPath) {
-	return new File(fPath).isDirectory();
+     * @param templatePath
+     *            Path of the image file to search for.
+     * @return If the image is found the coordinates of its top left corner are
+     *         returned in an int array formatted like: [x, y]. If the image is
+     *         not found it will return [-1,-1]. If there is an error executing
+     *         the search (such as the image file not being readable) it will
+     *         return [-3, -3].
+     */
+    public int[] imageSearch(String templatePath) {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	return imageSearch(templatePath, 0, 0, screen.width - 1,
+		screen.height - 1);
     }
 
     /**
-     * Read the contents of a file to a string.
+     * Search for something on the screen by the colors of a few of its
+     * pixels. The signature lists the pixels as {x offset, y offset, color},
+     * with offsets from a point of the caller's choosing, such as:
      * 
-     * @param fPath
-     *            Path of the file to read.
-     * @return The contents of the file as a string.
-     */
-    public String fileRead(String fPath) {
+     * <pre>
+     * int[][] okButton = { { 0, 0, 0x3366CC }, { 40, 0, 0x3366CC },
+     * 	{ 20, 8, 0xFFFFFF } };
+     * </pre>
+     * 
+     * This will return the position of that point for the first place, in
+     * row-major order, where every pixel matches. This is much quicker than
+     * {@link imageSearch} and more reliable than searching for one pixel. The
+     * search looks for whichever color is rarest in the area first and only
+     * checks the other pixels where it's found.
+     * 
+     * @param signature
+     *            The pixels to match, each as {x offset, y offset, color}.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param tolerance
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel on the screen can be from the signature and still match.
+     * @return If the signature is found the coordinates of the point its
+     *         offsets are from are returned in an int array formatted like:
+     *         [x, y]. Every pixel of the signature will be inside the area,
+     *         but the point itself might not be. If the signature is not found
+     *         it will return [-1,-1]. If there is an error executing the
+     *         search it will return [-3, -3].
+     */
+    public int[] signatureSearch(int[][] signature, int x1, int y1, int x2, int y2, int tolerance) {
 	try {
-	    BufferedReader br = new BufferedReader(new FileReader(fPath));
-	    StringBuilder data = new StringBuilder();
+	    if (tolerance < 0 || tolerance > 255)
+		throw new IllegalArgumentException(
+			"Tolerance must be from 0 to 255, not " + tolerance);
+	    if (signature.length == 0)
+		throw new IllegalArgumentException("Signature has no pixels");
+	    for (int[] point : signature) {
+		if (point.length != 3)
+		    throw new IllegalArgumentException("Signature pixels must "
+			    + "be {x offset, y offset, color}, not "
+			    + Arrays.toString(point));
+	    }
 
-	    String line = br.readLine();
-	    while (line != null) {
-		data.append(line);
-		data.append('\n');
-		line = br.readLine();
+	    /*
+	     * read just the area, so the rarest color is picked from what's
+	     * in it rather than from the whole background capture
+	     */
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    RasterFrame screen = grabRegion(area);
+
+	    /* the point can only be where every pixel fits inside the area */
+	    int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE;
+	    int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+	    for (int[] point : signature) {
+		left = Math.min(left, point[0]);
+		right = Math.max(right, point[0]);
+		top = Math.min(top, point[1]);
+		bottom = Math.max(bottom, point[1]);
 	    }
+	    Rectangle positions = new Rectangle(area.x - left, area.y - top,
+		    area.width - (right - left), area.height - (bottom - top));
+	    if (positions.width <= 0 || positions.height <= 0)
+		return new int[] { -1, -1 };
 
-	    String fileData = data.toString();
-	    fileData = fileData.substring(0, fileData.length() - 1);
-	    br.close();
-	    return fileData;
+	    return searchFrame(new SignatureScan(screen, signature, tolerance),
+		    positions, 1, 1);
 	} catch (Exception e) {
-	    return "null";
+	    int[] returnVal = { -3, -3 };
+	    return returnVal;
 	}
     }
 
     /**
-     * Write data to a file -- this will overwrite the file. If the file does
-     * not exist it will be created.
+     * Search for something on the screen by the exact colors of a few of its
+     * pixels. See {@link signatureSearch}.
      * 
-     * @param fPath
-     *            Path of the file to write to.
-     * @param data
-     *            Data to write to the file as a string.
-     * @return Returns false if the file write failed. Otherwise returns true.
+     * @param signature
+     *            The pixels to match, each as {x offset, y offset, color}.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return If the signature is found the coordinates of the point its
+     *         offsets are from are returned in an int array formatted like:
+     *         [x, y]. If the signature is not found it will return [-1,-1]. If
+     *         there is an error executing the search it will return [-3, -3].
      */
-    public boolean fileWrite(String fPath, String data) {
-	BufferedWriter bufferedWriter = null;
-	try {
-	    File myFile = new File(fPath);
-	    if (!myFile.exists()) {
-		myFile.createNewFile();
-	    }
-	    Writer writer = new FileWriter(myFile);
-	    bufferedWriter = new BufferedWriter(writer);
-	    bufferedWriter.write(data);
-	    try {
-		if (bufferedWriter != null)
-		    bufferedWriter.close();
-	    } catch (Exception ex) {
-	    }
-	    return true;
-	} catch (IOException e) {
-	    return false;
-	}
+    public int[] signatureSearch(int[][] signature, int x1, int y1, int x2, int y2) {
+	return signatureSearch(signature, x1, y1, x2, y2, 0);
     }
 
     /**
-     * Append data to a file. If the file does not exist it will be created.
+     * Search for something anywhere on the screen by the exact colors of a few
+     * of its pixels. See {@link signatureSearch}.
      * 
-     * @param fPath
-     *            The path of the file to which we are appending data.
-     * @param data
-     *            The data to be appended to the file.
-     * @return If appending to the file failed false will be returned. Otherwise
-     *         will return true.
+     * @param signature
+     *            The pixels to match, each as {x offset, y offset, color}.
+     * @return If the signature is found the coordinates of the point its
+     *         offsets are from are returned in an int array formatted like:
+     *         [x, y]. If the signature is not found it will return [-1,-1]. If
+     *         there is an error executing the search it will return [-3, -3].
+     */
+    public int[] signatureSearch(int[][] signature) {
+	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+	return signatureSearch(signature, 0, 0, screen.width - 1,
+		screen.height - 1);
+    }
+
+    /**
+     * Follow something of a certain color as it moves around an area. Each
+     * call to {@link Tracker#update} only searches a small window around where
+     * it expects the color to be, going by where it was found the last two
+     * times, which is much quicker than searching the whole area with
+     * {@link pixelSearch} every time. The whole area is only searched when
+     * the color isn't in the window, such as the first time. The position
+     * tracked is the matching pixel nearest to where it was expected.
+     * 
+     * @param colorInt
+     *            Integer representation of the color to follow.
+     * @param x1
+     *            X value of top left coordinate of the area to search.
+     * @param y1
+     *            Y value of top left coordinate of the area to search.
+     * @param x2
+     *            X value of bottom right coordinate of the area to search.
+     * @param y2
+     *            Y value of bottom right coordinate of the area to search.
+     * @param radius
+     *            How far in pixels horizontally or vertically from where the
+     *            color is expected to search before searching the whole area.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the color and still match.
+     * @return The tracker.
+     */
+    public Tracker trackColor(int colorInt, int x1, int y1, int x2, int y2, int radius, int shade) {
+	if (radius < 0)
+	    throw new IllegalArgumentException("Cannot track within " + radius
+		    + " pixels");
+	return new PixelTracker(shadeMatcher(colorInt, shade), null, 0,
+		screenArea(x1, y1, x2, y2), radius);
+    }
+
+    /**
+     * Follow something of an exact color as it moves around an area. See
+     * {@link trackColor}.
+     * 
+     * @param colorInt
+     *            Integer representation of the color to follow.
+     * @param x1
+     *            X value of top left coordinate of the area to search.
+     * @param y1
+     *            Y value of top left coordinate of the area to search.
+     * @param x2
+     *            X value of bottom right coordinate of the area to search.
+     * @param y2
+     *            Y value of bottom right coordinate of the area to search.
+     * @param radius
+     *            How far in pixels horizontally or vertically from where the
+     *            color is expected to search before searching the whole area.
+     * @return The tracker.
      */
-    public boolean fileAppend(String fPath, String data) {
+    public Tracker trackColor(int colorInt, int x1, int y1, int x2, int y2, int radius) {
+	return trackColor(colorInt, x1, y1, x2, y2, radius, 0);
+    }
+
+    /**
+     * Follow an image as it moves around an area. This works like
+     * {@link trackColor}, searching for the image as {@link imageSearch} does
+     * but only within a window around where it's expected to be. The position
+     * tracked is the image's top left corner.
+     * 
+     * @param templatePath
+     *            Path of the image file to follow.
+     * @param x1
+     *            X value of top left coordinate of the area to search.
+     * @param y1
+     *            Y value of top left coordinate of the area to search.
+     * @param x2
+     *            X value of bottom right coordinate of the area to search.
+     * @param y2
+     *            Y value of bottom right coordinate of the area to search.
+     * @param radius
+     *            How far in pixels horizontally or vertically from where the
+     *            image is expected to search before searching the whole area.
+     * @param tolerance
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel on the screen can be from the image and still match.
+     * @return The tracker.
+     */
+    public Tracker trackImage(String templatePath, int x1, int y1, int x2, int y2, int radius, int tolerance) {
+	if (radius < 0)
+	    throw new IllegalArgumentException("Cannot track within " + radius
+		    + " pixels");
+	if (tolerance < 0 || tolerance > 255)
+	    throw new IllegalArgumentException(
+		    "Tolerance must be from 0 to 255, not " + tolerance);
 	try {
-	    File oFile = new File(fPath);
-	    if (!oFile.exists()) {
-		oFile.createNewFile();
-	    }
-	    FileWriter fileWriter = new FileWriter(oFile, true);
-	    BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-	    bufferedWriter.write(data);
-	    bufferedWriter.close();
-	    return false;
+	    return new PixelTracker(null, getImageTemplate(templatePath),
+		    tolerance, screenArea(x1, y1, x2, y2), radius);
 	} catch (IOException e) {
-	    return false;
+	    throw new RuntimeException(e);
 	}
     }
 
     /**
-     * Get a list of file names in a directory as an array.
+     * Follow an exact copy of an image as it moves around an area. See
+     * {@link trackImage}.
      * 
-     * @param dir
-     *            Directory to list files from.
-     * @return String array of file names.
+     * @param templatePath
+     *            Path of the image file to follow.
+     * @param x1
+     *            X value of top left coordinate of the area to search.
+     * @param y1
+     *            Y value of top left coordinate of the area to search.
+     * @param x2
+     *            X value of bottom right coordinate of the area to search.
+     * @param y2
+     *            Y value of bottom right coordinate of the area to search.
+     * @param radius
+     *            How far in pixels horizontally or vertically from where the
+     *            image is expected to search before searching the whole area.
+     * @return The tracker.
      */
-    public String[] fileList(String dir) {
-	try {
-	    File[] fileList = new File(dir).listFiles(); // java code to get a
-							 // list of files
-	    int fileNum = fileList.length; // store length of file list
-	    String[] files = new String[fileNum];
-
-	    for (int i = 0; i < fileNum; i++) {
-		files[i] = fileList[i].toString();
-	    }
-	    return files;
-	} catch (Exception e) {
-	    String[] files = { "null" };
-	    return files;
-	}
+    public Tracker trackImage(String templatePath, int x1, int y1, int x2, int y2, int radius) {
+	return trackImage(templatePath, x1, y1, x2, y2, radius, 0);
     }
 
     /**
-     * Put a string in the system clipboard. On Ubuntu Linux the way the
-     * clipboard is handled only allows information in the clipboard to be
-     * accessable while the application that put it there is running.
+     * Wait for a pixel to turn a certain color. This is much cheaper than
+     * calling {@link pixelGetColor} and {@link sleep} in a loop: all waits are
+     * checked together from a single capture, checking often while the
+     * screen is changing and less and less often while it isn't.
      * 
-     * @param s
-     *            String data to put in the clip board.
+     * @param x
+     *            X coordinate of pixel.
+     * @param y
+     *            Y coordinate of pixel.
+     * @param color
+     *            Integer representation of the color to wait for.
+     * @param timeoutMs
+     *            The longest time in milliseconds to wait. A timeout of 0 or
+     *            less waits for as long as it takes.
+     * @return True if the pixel turned the color, false if the timeout ran
+     *         out first.
      */
-    public void clipboardPut(String s) {
-	StringSelection stringSelection = new StringSelection(s);
-	Clipboard clpbrd = Toolkit.getDefaultToolkit().getSystemClipboard();
-	clpbrd.setContents(stringSelection, null);
+    public boolean waitForPixel(int x, int y, int color, int timeoutMs) {
+	Rectangle area = new Rectangle(x, y, 1, 1);
+	ScreenWait wait = new ScreenWait(area, true, color | 0xFF000000);
+	return waitForScreen(wait, grabFrame(area), timeoutMs);
     }
 
     /**
-     * Get the contents of the clip board (as string).
+     * Wait for a pixel to change from the color it is now. See
+     * {@link waitForPixel}.
      * 
-     * @return The clip board contents as a string. Returns null if the data
-     *         inside the clip board cannot be read to a string.
-     */
-    public String clipboardGet() {
-	Toolkit toolkit = Toolkit.getDefaultToolkit();
-	Clipboard clipboard = toolkit.getSystemClipboard();
-	String result;
-	try {
-	    result = (String) clipboard.getData(DataFlavor.stringFlavor);
-	    return result;
-	} catch (Exception e) {
-	    return null;
-	}
+     * @param x
+     *            X coordinate of pixel.
+     * @param y
+     *            Y coordinate of pixel.
+     * @param timeoutMs
+     *            The longest time in milliseconds to wait. A timeout of 0 or
+     *            less waits for as long as it takes.
+     * @return True if the pixel changed, false if the timeout ran out first.
+     */
+    public boolean waitForPixelChange(int x, int y, int timeoutMs) {
+	Rectangle area = new Rectangle(x, y, 1, 1);
+	RasterFrame frame = grabFrame(area);
+	ScreenWait wait = new ScreenWait(area, false, 0);
+	wait.target = wait.read(frame);
+	return waitForScreen(wait, frame, timeoutMs);
     }
 
     /**
-     * Get the value of a flagged argument. So if the program is executed like
-     * java program -v --file aFile.txt -o outFile.txt getFlaggedArg(args,
-     * "-f|--file") would return aFile.txt.
+     * Wait for anything to change within an area of the screen. See
+     * {@link waitForPixel}.
      * 
-     * @param args
-     *            The String[] args from the main function. Pass them in by just
-     *            saying args.
-     * @param flag
-     *            The flags to get values from, separated by | like -f|--file.
-     * @return The argument directly after the detected flag.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param timeoutMs
+     *            The longest time in milliseconds to wait. A timeout of 0 or
+     *            less waits for as long as it takes.
+     * @return True if the area changed, false if the timeout ran out first.
      */
-    public String getFlaggedArg(String[] args, String flag) {
-	ArrayList<String> flags = new ArrayList<String>();
-	if (flag.contains("|")) {
-	    /* we need to user [|] because .split() takes a regex value */
-	    for (String f : flag.split("[|]"))
-		flags.add(f.trim());
-	} else {
-	    flags.add(flag.trim());
-	}
-	for (int i = 0; i < args.length; i++) {
-	    if (flags.contains(args[i])) {
-		if (i == args.length - 1)
-		    return "";
-		else
-		    return args[i + 1];
-	    }
-	}
-	return "";
+    public boolean waitForRegionChange(int x1, int y1, int x2, int y2, int timeoutMs) {
+	Rectangle area = screenArea(x1, y1, x2, y2);
+	RasterFrame frame = grabFrame(area);
+	ScreenWait wait = new ScreenWait(area, false, 0);
+	wait.target = wait.read(frame);
+	return waitForScreen(wait, frame, timeoutMs);
     }
 
     /**
-     * Check if a flag is present within the command line arguments.
+     * Get a checksum of the pixels within an area, like AutoIt's
+     * PixelChecksum. If anything in the area changes the checksum will (almost
+     * certainly) change too, so comparing checksums is a cheap way to tell
+     * whether the screen has changed.
      * 
-     * @param args
-     *            The String[] args from the main function. Pass them in by just
-     *            saying args.
-     * @param flag
-     *            The flag(s) to check for, separate possible values with a pipe
-     *            | For instance -h|--help could match either one.
-     * @return True or false based on whether the flag is present.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return The checksum.
      */
-    public boolean isFlagged(String[] args, String flag) {
-	ArrayList<String> flags = new ArrayList<String>();
-	if (flag.contains("|")) {
-	    /* we need to user [|] because .split() takes a regex value */
-	    for (String f : flag.split("[|]"))
-		flags.add(f.trim());
-	} else {
-	    flags.add(flag.trim());
-	}
-	for (int i = 0; i < args.length; i++) {
-	    if (flags.contains(args[i]))
-		return true;
-	}
-	return false;
+    public long pixelChecksum(int x1, int y1, int x2, int y2) {
+	return screenSnapshot(x1, y1, x2, y2).getChecksum();
     }
 
     /**
-     * Send a HTTP GET request to a URL.
+     * Find the parts of an area that changed between two snapshots taken with
+     * {@link screenSnapshot}. The snapshots are compared in 32 by 32 pixel
+     * tiles, and changed tiles next to each other are joined into rectangles.
+     * Each snapshot's tiles are only hashed once, so comparing each new
+     * snapshot with the one before it only hashes each snapshot once.
      * 
-     * @param url
-     *            The URL to query, including the get parameters.
-     * @return Page response as HTML.
-     */
-    public String httpGet(String url) {
-	try {
-	    URL obj = new URL(url);
-	    HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-	    // optional default is GET
-	    con.setRequestMethod("GET");
-
-	    // add request header
-	    con.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-	    BufferedReader in = new BufferedReader(new InputStreamReader(
-		    con.getInputStream()));
-	    String inputLine;
-	    StringBuffer response = new StringBuffer();
+     * @param before
+     *            The earlier snapshot.
+     * @param after
+     *            The later snapshot, which must cover the same area.
+     * @return The changed rectangles, each formatted like: [left, top, right,
+     *         bottom]. If nothing changed the array will be empty.
+     */
+    public int[][] regionDiff(ScreenFrame before, ScreenFrame after) {
+	if (before.getX() != after.getX() || before.getY() != after.getY()
+		|| before.getWidth() != after.getWidth()
+		|| before.getHeight() != after.getHeight())
+	    throw new IllegalArgumentException(
+		    "Snapshots must cover the same area");
+	RasterFrame a = toRasterFrame(before);
+	RasterFrame b = toRasterFrame(after);
+	long[] hashesA = a.getTileHashes();
+	long[] hashesB = b.getTileHashes();
+	int columns = a.getTileColumns();
+	int rows = hashesA.length / columns;
+	int tile = RasterFrame.TILE_SIZE;
 
-	    while ((inputLine = in.readLine()) != null) {
-		response.append(inputLine);
+	/*
+	 * find each run of changed tiles along a row, and join it to the
+	 * rectangle above if that covers exactly the same columns
+	 */
+	List<int[]> open = new ArrayList<int[]>();
+	List<int[]> closed = new ArrayList<int[]>();
+	for (int row = 0; row < rows; row++) {
+	    List<int[]> stillOpen = new ArrayList<int[]>();
+	    int column = 0;
+	    while (column < columns) {
+		if (hashesA[row * columns + column] == hashesB[row * columns
+			+ column]) {
+		    column++;
+		    continue;
+		}
+		int first = column;
+		while (column < columns
+			&& hashesA[row * columns + column] != hashesB[row
+				* columns + column])
+		    column++;
+
+		/* rectangles are kept as tiles [first, last, top, bottom] */
+		int[] rect = null;
+		for (int[] above : open) {
+		    if (above[0] == first && above[1] == column - 1) {
+			rect = above;
+			break;
+		    }
+		}
+		if (rect == null)
+		    rect = new int[] { first, column - 1, row, row };
+		else
+		    open.remove(rect);
+		rect[3] = row;
+		stillOpen.add(rect);
 	    }
-	    in.close();
-
-	    return response.toString();
-	} catch (Exception e) {
-	    e.printStackTrace();
-	    return "";
+	    closed.addAll(open);
+	    open = stillOpen;
 	}
-
+	closed.addAll(open);
+
+	/* turn tiles into pixels, trimming the last tiles to the snapshot */
+	int[][] changed = new int[closed.size()][];
+	for (int i = 0; i < changed.length; i++) {
+	    int[] rect = closed.get(i);
+	    changed[i] = new int[] {
+		    a.getX() + rect[0] * tile,
+		    a.getY() + rect[2] * tile,
+		    a.getX() + Math.min((rect[1] + 1) * tile, a.getWidth()) - 1,
+		    a.getY() + Math.min((rect[3] + 1) * tile, a.getHeight())
+			    - 1 };
+	}
+	return changed;
     }
 
     /**
-     * Send a HTTP POST request to a given URL with the specified parameters.
+     * Find every pixel of a certain color within an area. The whole area is
+     * read from a single capture.
      * 
-     * @param postUrl
-     *            URL to send the post request to.
-     * @param parameters
-     *            Post parameters to send to URL. Parameters must be defined in
-     *            a two dimesional array like [ [key, value], [key, value],
-     *            [key, value] ].
-     * @return Page response as HTML.
-     */
-    public String httpPost(String postUrl, String[][] parameters) {
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the search color and still match. A shade
+     *            of 0 only matches the exact color.
+     * @return The coordinates of every matching pixel in row-major order,
+     *         packed into one int array formatted like: [x1, y1, x2, y2, ...].
+     *         If there is an error executing the search it will return [-3,
+     *         -3].
+     */
+    public int[] pixelSearchAll(int colorInt, int x1, int y1, int x2, int y2, int shade) {
 	try {
-	    URL url = new URL(postUrl);
-	    Map<String, Object> params = new LinkedHashMap<>();
-	    for (String[] param : parameters) {
-		params.put(param[0], param[1]);
-	    }
-	    StringBuilder postData = new StringBuilder();
-	    for (Map.Entry<String, Object> param : params.entrySet()) {
-		if (postData.length() != 0)
-		    postData.append('&');
-		postData.append(URLEncoder.encode(param.getKey(), "UTF-8"));
-		postData.append('=');
-		postData.append(URLEncoder.encode(
-			String.valueOf(param.getValue()), "UTF-8"));
+	    PixelMatcher matcher = shadeMatcher(colorInt, shade);
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    RasterFrame screen = grabFrame(area);
+	    int left = area.x;
+	    int right = area.x + area.width - 1;
+
+	    /* collect matches two ints at a time, growing as needed */
+	    int[] matches = new int[16];
+	    int length = 0;
+	    for (int y = area.y; y < area.y + area.height; y++) {
+		int x = screen.findInRow(matcher, y, left, right, 1);
+		while (x != -1) {
+		    if (length == matches.length)
+			matches = Arrays.copyOf(matches, length * 2);
+		    matches[length++] = x;
+		    matches[length++] = y;
+		    x = screen.findInRow(matcher, y, x + 1, right, 1);
+		}
 	    }
-	    byte[] postDataBytes = postData.toString().getBytes("UTF-8");
-	    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-	    conn.setRequestMethod("POST");
-	    conn.setRequestProperty("Content-Type",
-		    "application/x-www-form-urlencoded");
-	    conn.setRequestProperty("Content-Length",
-		    String.valueOf(postDataBytes.length));
-	    conn.setDoOutput(true);
-	    conn.getOutputStream().write(postDataBytes);
-	    Reader in = new BufferedReader(new InputStreamReader(
-		    conn.getInputStream(), "UTF-8"));
-	    int ch;
-	    String response = "";
-	    while ((ch = in.read()) >= 0)
-		response = response + String.valueOf((char) ch);
-	    return response;
+	    return Arrays.copyOf(matches, length);
 	} catch (Exception e) {
-	    return "Error";
+	    int[] returnVal = { -3, -3 };
+	    return returnVal;
 	}
     }
 
     /**
-     * Get the source of a web page as HTML.
+     * Find every pixel of a certain color within an area. The whole area is
+     * read from a single capture.
      * 
-     * @param url
-     *            The page to fetch.
-     * @return The page source (HTML) as a string.
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return The coordinates of every matching pixel in row-major order,
+     *         packed into one int array formatted like: [x1, y1, x2, y2, ...].
+     *         If there is an error executing the search it will return [-3,
+     *         -3].
      */
-    public String getPage(String url) {
+    public int[] pixelSearchAll(int colorInt, int x1, int y1, int x2, int y2) {
+	return pixelSearchAll(colorInt, x1, y1, x2, y2, 0);
+    }
+
+    /**
+     * Count the pixels of a certain color within an area.
+     * 
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the search color and still match. A shade
+     *            of 0 only matches the exact color.
+     * @return The number of matching pixels. If there is an error executing
+     *         the search it will return -3.
+     */
+    public int pixelCount(int colorInt, int x1, int y1, int x2, int y2, int shade) {
 	try {
-	    // get URL content
-	    URL page = new URL(url);
-	    URLConnection conn = page.openConnection();
-	    // open the stream and put it into BufferedReader
-	    BufferedReader br = new BufferedReader(new InputStreamReader(
-		    conn.getInputStream()));
-	    String inputLine;
-	    String pageData = "";
-	    while ((inputLine = br.readLine()) != null) {
-		pageData = pageData + inputLine + "\n";
+	    PixelMatcher matcher = shadeMatcher(colorInt, shade);
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    RasterFrame screen = grabFrame(area);
+	    int left = area.x;
+	    int right = area.x + area.width - 1;
+
+	    int count = 0;
+	    for (int y = area.y; y < area.y + area.height; y++) {
+		int x = screen.findInRow(matcher, y, left, right, 1);
+		while (x != -1) {
+		    count++;
+		    x = screen.findInRow(matcher, y, x + 1, right, 1);
+		}
 	    }
-	    br.close();
-	    /* get rid of the last newline we added on */
-	    return pageData.substring(0, pageData.length() - 1);
+	    return count;
 	} catch (Exception e) {
-	    return "Error";
+	    return -3;
 	}
     }
 
     /**
-     * Join a string array into a string with a delimeter.
+     * Count the pixels of a certain color within an area.
      * 
-     * @param joinString
-     *            The delimeter with which to join the string array.
-     * @param strArray
-     *            The array to join.
-     * @return The array as a string with the delimeter between each index.
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return The number of matching pixels. If there is an error executing
+     *         the search it will return -3.
      */
-    public String join(String joinString, String[] strArray) {
-	String joined = "";
-	for (String s : strArray)
-	    joined = joined + s + joinString;
-	return joined.substring(0, joined.length() - joinString.length());
+    public int pixelCount(int colorInt, int x1, int y1, int x2, int y2) {
+	return pixelCount(colorInt, x1, y1, x2, y2, 0);
     }
 
-    /*
-     * Define the private, internally used functions that support the public
-     * functions
-     */
-
     /**
-     * Replace special characters like {CTRL} or {ENTER} with arbitrary unicode
-     * characters that can be recognized by other functions
+     * Find the smallest rectangle that holds every pixel of a certain color
+     * within an area.
      * 
-     * @param s
-     *            String to replace special characters in
-     * @return String with special characters replaced by appropriate unicode
-     *         chracters
-     */
-    private String handleSpecialChars(String s) {
-	// compensate for special characters
-	s = s.replace("{ENTER}", "\n");
-	s = s.replace("{TAB}", "\t");
-	s = s.replace("{WIN}", "\u0259");
-	s = s.replace("{SHIFT}", "\u025A");
-	s = s.replace("{DELETE}", "\u025B");
-	s = s.replace("{CTRL}", "\u025C");
-	s = s.replace("{ALT}", "\u025D");
-	s = s.replace("{ESC}", "\u025E");
-	s = s.replace("{APPLE}", "\u025F");
-	s = s.replace("{F1}", "\u1E90");
-	s = s.replace("{F2}", "\u1E91");
-	s = s.replace("{F3}", "\u1E92");
-	s = s.replace("{F4}", "\u1E93");
-	s = s.replace("{F5}", "\u1E94");
-	s = s.replace("{F6}", "\u1E95");
-	s = s.replace("{F7}", "\u1E96");
-	s = s.replace("{F8}", "\u1E97");
-	s = s.replace("{F9}", "\u1E98");
-	s = s.replace("{F10}", "\u1E99");
-	s = s.replace("{F11}", "\u1E9A");
-	s = s.replace("{F12}", "\u1E9B");
-	s = s.replace("{F13}", "\u1E9C");
-	s = s.replace("{F14}", "\u1E9D");
-	s = s.replace("{F15}", "\u1E9E");
-	s = s.replace("{F16}", "\u1E9F");
-	s = s.replace("{F17}", "\u1EA0");
-	s = s.replace("{F18}", "\u1EA1");
-	s = s.replace("{F19}", "\u1EA2");
-	s = s.replace("{F20}", "\u1EA3");
-	s = s.replace("{F21}", "\u1EA4");
-	s = s.replace("{F22}", "\u1EA5");
-	s = s.replace("{F23}", "\u1EA6");
-	s = s.replace("{F24}", "\u1EA7");
-	s = s.replace("{HOME}", "\u1EA8");
-	s = s.replace("{END}", "\u1EA9");
-	s = s.replace("{LEFT}", "\u2C00");
-	s = s.replace("{RIGHT}", "\u2C01");
-	s = s.replace("{UP}", "\u2C02");
-	s = s.replace("{DOWN}", "\u2C03");
-	s = s.replace("{CAPS}", "\u2C04");
-	s = s.replace("{BACKSPACE}", "\b");
-	return s;
-    }
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @param shade
+     *            How far (0-255) each of the red, green and blue values of a
+     *            pixel can be from the search color and still match. A shade
+     *            of 0 only matches the exact color.
+     * @return The corners of the rectangle, including both, formatted like:
+     *         [left, top, right, bottom]. If the color is not found it will
+     *         return [-1, -1, -1, -1]. If there is an error executing the
+     *         search it will return [-3, -3, -3, -3].
+     */
+    public int[] pixelBoundingBox(int colorInt, int x1, int y1, int x2, int y2, int shade) {
+	try {
+	    PixelMatcher matcher = shadeMatcher(colorInt, shade);
+	    Rectangle area = screenArea(x1, y1, x2, y2);
+	    RasterFrame screen = grabFrame(area);
+	    int left = area.x;
+	    int right = area.x + area.width - 1;
+
+	    /* find the top row with a match */
+	    int top = area.y;
+	    int bottom = area.y + area.height - 1;
+	    while (top <= bottom
+		    && screen.findInRow(matcher, top, left, right, 1) == -1)
+		top++;
+	    if (top > bottom)
+		return new int[] { -1, -1, -1, -1 };
+
+	    /* then the bottom one, which can't be above the top */
+	    while (screen.findInRow(matcher, bottom, left, right, 1) == -1)
+		bottom--;
 
-    /**
-     * Figure out which virtual key codes are associated with each character and
-     * then call {@link keyType} with the right value
-     * 
-     * @param c
-     *            character to send
-     */
-    private void sendChar(char c) {
-	switch (c) {
-	case 'a':
-	    keyType(KeyEvent.VK_A);
-	    break;
-	case 'b':
-	    keyType(KeyEvent.VK_B);
-	    break;
-	case 'c':
-	    keyType(KeyEvent.VK_C);
-	    break;
-	case 'd':
-	    keyType(KeyEvent.VK_D);
-	    break;
-	case 'e':
-	    keyType(KeyEvent.VK_E);
-	    break;
-	case 'f':
-	    keyType(KeyEvent.VK_F);
-	    break;
-	case 'g':
-	    keyType(KeyEvent.VK_G);
-	    break;
-	case 'h':
-	    keyType(KeyEvent.VK_H);
-	    break;
-	case 'i':
-	    keyType(KeyEvent.VK_I);
-	    break;
-	case 'j':
-	    keyType(KeyEvent.VK_J);
-	    break;
-	case 'k':
-	    keyType(KeyEvent.VK_K);
-	    break;
-	case 'l':
-	    keyType(KeyEvent.VK_L);
-	    break;
-	case 'm':
-	    keyType(KeyEvent.VK_M);
-	    break;
-	case 'n':
-	    keyType(KeyEvent.VK_N);
-	    break;
-	case 'o':
-	    keyType(KeyEvent.VK_O);
-	    break;
-	case 'p':
-	    keyType(KeyEvent.VK_P);
-	    break;
-	case 'q':
-	    keyType(KeyEvent.VK_Q);
-	    break;
-	case 'r':
-	    keyType(KeyEvent.VK_R);
-	    break;
-	case 's':
-	    keyType(KeyEvent.VK_S);
-	    break;
-	case 't':
-	    keyType(KeyEvent.VK_T);
-	    break;
-	case 'u':
-	    keyType(KeyEvent.VK_U);
-	    break;
-	case 'v':
-	    keyType(KeyEvent.VK_V);
-	    break;
-	case 'w':
-	    keyType(KeyEvent.VK_W);
-	    break;
-	case 'x':
-	    keyType(KeyEvent.VK_X);
-	    break;
-	case 'y':
-	    keyType(KeyEvent.VK_Y);
-	    break;
-	case 'z':
-	    keyType(KeyEvent.VK_Z);
-	    break;
-	case 'A':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_A);
-	    break;
-	case 'B':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_B);
-	    break;
-	case 'C':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_C);
-	    break;
-	case 'D':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_D);
-	    break;
-	case 'E':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_E);
-	    break;
-	case 'F':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_F);
-	    break;
-	case 'G':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_G);
-	    break;
-	case 'H':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_H);
-	    break;
-	case 'I':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_I);
-	    break;
-	case 'J':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_J);
-	    break;
-	case 'K':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_K);
-	    break;
-	case 'L':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_L);
-	    break;
-	case 'M':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_M);
-	    break;
-	case 'N':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_N);
-	    break;
-	case 'O':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_O);
-	    break;
-	case 'P':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_P);
-	    break;
-	case 'Q':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_Q);
-	    break;
-	case 'R':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_R);
-	    break;
-	case 'S':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_S);
-	    break;
-	case 'T':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_T);
-	    break;
-	case 'U':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_U);
-	    break;
-	case 'V':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_V);
-	    break;
-	case 'W':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_W);
-	    break;
-	case 'X':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_X);
-	    break;
-	case 'Y':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_Y);
-	    break;
-	case 'Z':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_Z);
-	    break;
-	case '`':
-	    keyType(KeyEvent.VK_BACK_QUOTE);
-	    break;
-	case '0':
-	    keyType(KeyEvent.VK_0);
-	    break;
-	case '1':
-	    keyType(KeyEvent.VK_1);
-	    break;
-	case '2':
-	    keyType(KeyEvent.VK_2);
-	    break;
-	case '3':
-	    keyType(KeyEvent.VK_3);
-	    break;
-	case '4':
-	    keyType(KeyEvent.VK_4);
-	    break;
-	case '5':
-	    keyType(KeyEvent.VK_5);
-	    break;
-	case '6':
-	    keyType(KeyEvent.VK_6);
-	    break;
-	case '7':
-	    keyType(KeyEvent.VK_7);
-	    break;
-	case '8':
-	    keyType(KeyEvent.VK_8);
-	    break;
-	case '9':
-	    keyType(KeyEvent.VK_9);
-	    break;
-	case '-':
-	    keyType(KeyEvent.VK_MINUS);
-	    break;
-	case '=':
-	    keyType(KeyEvent.VK_EQUALS);
-	    break;
-	case '~':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_BACK_QUOTE);
-	    break;
-	case '!':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_1);
-	    break;
-	case '@':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_2);
-	    break;
-	case '#':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_3);
-	    break;
-	case '$':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_4);
-	    break;
-	case '%':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_5);
-	    break;
-	case '^':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_6);
-	    break;
-	case '&':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_7);
-	    break;
-	case '*':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_8);
-	    break;
-	case '(':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_9);
-	    break;
-	case ')':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_0);
-	    break;
-	case '_':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_MINUS);
-	    break;
-	case '+':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_EQUALS);
-	    break;
-	case '\t':
-	    keyType(KeyEvent.VK_TAB);
-	    break;
-	case '\n':
-	    keyType(KeyEvent.VK_ENTER);
-	    break;
-	case '[':
-	    keyType(KeyEvent.VK_OPEN_BRACKET);
-	    break;
-	case ']':
-	    keyType(KeyEvent.VK_CLOSE_BRACKET);
-	    break;
-	case '\\':
-	    keyType(KeyEvent.VK_BACK_SLASH);
-	    break;
-	case '{':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_OPEN_BRACKET);
-	    break;
-	case '}':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_CLOSE_BRACKET);
-	    break;
-	case '|':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_BACK_SLASH);
-	    break;
-	case ';':
-	    keyType(KeyEvent.VK_SEMICOLON);
-	    break;
-	case ':':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_SEMICOLON);
-	    break;
-	case '\'':
-	    keyType(KeyEvent.VK_QUOTE);
-	    break;
-	case '\"':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_QUOTE);
-	    break;
-	case ',':
-	    keyType(KeyEvent.VK_COMMA);
-	    break;
-	case '<':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_COMMA);
-	    break;
-	case '.':
-	    keyType(KeyEvent.VK_PERIOD);
-	    break;
-	case '>':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_PERIOD);
-	    break;
-	case '/':
-	    keyType(KeyEvent.VK_SLASH);
-	    break;
-	case '?':
-	    keyType(KeyEvent.VK_SHIFT, KeyEvent.VK_SLASH);
-	    break;
-	case ' ':
-	    keyType(KeyEvent.VK_SPACE);
-	    break;
-	case '\u0259':
-	    keyType(KeyEvent.VK_WINDOWS);
-	    break;
-	case '\u025A':
-	    keyType(KeyEvent.VK_SHIFT);
-	    break;
-	case '\u025B':
-	    keyType(KeyEvent.VK_DELETE);
-	    break;
-	case '\u025C':
-	    keyType(KeyEvent.VK_CONTROL);
-	    break;
-	case '\u025D':
-	    keyType(KeyEvent.VK_ALT);
-	    break;
-	case '\u025E':
-	    keyType(KeyEvent.VK_ESCAPE);
-	    break;
-	case '\u025F':
-	    keyType(KeyEvent.VK_META);
-	    break;
-	case '\u1E90':
-	    keyType(KeyEvent.VK_F1);
-	    break;
-	case '\u1E91':
-	    keyType(KeyEvent.VK_F2);
-	    break;
-	case '\u1E92':
-	    keyType(KeyEvent.VK_F3);
-	    break;
-	case '\u1E93':
-	    keyType(KeyEvent.VK_F4);
-	    break;
-	case '\u1E94':
-	    keyType(KeyEvent.VK_F5);
-	    break;
-	case '\u1E95':
-	    keyType(KeyEvent.VK_F6);
-	    break;
-	case '\u1E96':
-	    keyType(KeyEvent.VK_F7);
-	    break;
-	case '\u1E97':
-	    keyType(KeyEvent.VK_F8);
-	    break;
-	case '\u1E98':
-	    keyType(KeyEvent.VK_F9);
-	    break;
-	case '\u1E99':
-	    keyType(KeyEvent.VK_F10);
-	    break;
-	case '\u1E9A':
-	    keyType(KeyEvent.VK_F11);
-	    break;
-	case '\u1E9B':
-	    keyType(KeyEvent.VK_F12);
-	    break;
-	case '\u1E9C':
-	    keyType(KeyEvent.VK_F13);
-	    break;
-	case '\u1E9D':
-	    keyType(KeyEvent.VK_F14);
-	    break;
-	case '\u1E9E':
-	    keyType(KeyEvent.VK_F15);
-	    break;
-	case '\u1E9F':
-	    keyType(KeyEvent.VK_F16);
-	    break;
-	case '\u1EA0':
-	    keyType(KeyEvent.VK_F17);
-	    break;
-	case '\u1EA1':
-	    keyType(KeyEvent.VK_F18);
-	    break;
-	case '\u1EA2':
-	    keyType(KeyEvent.VK_F19);
-	    break;
-	case '\u1EA3':
-	    keyType(KeyEvent.VK_F20);
-	    break;
-	case '\u1EA4':
-	    keyType(KeyEvent.VK_F21);
-	    break;
-	case '\u1EA5':
-	    keyType(KeyEvent.VK_F22);
-	    break;
-	case '\u1EA6':
-	    keyType(KeyEvent.VK_F23);
-	    break;
-	case '\u1EA7':
-	    keyType(KeyEvent.VK_F24);
-	    break;
-	case '\u1EA8':
-	    keyType(KeyEvent.VK_HOME);
-	    break;
-	case '\u1EA9':
-	    keyType(KeyEvent.VK_END);
-	    break;
-	case '\u2C00':
-	    keyType(KeyEvent.VK_LEFT);
-	    break;
-	case '\u2C01':
-	    keyType(KeyEvent.VK_RIGHT);
-	    break;
-	case '\u2C02':
-	    keyType(KeyEvent.VK_UP);
-	    break;
-	case '\u2C03':
-	    keyType(KeyEvent.VK_DOWN);
-	    break;
-	case '\u2C04':
-	    keyType(KeyEvent.VK_CAPS_LOCK);
-	    break;
-	case '\b':
-	    keyType(KeyEvent.VK_BACK_SPACE);
-	    break;
-	default:
-	    throw new IllegalArgumentException("Cannot type character " + c);
-	}
-    }
-
-    /**
-     * Use the java.awt.Robot class to perform a key press for each int in int[]
-     * keyCodes
-     * 
-     * @param keyCodes
-     *            int array of virtual key codes to press
-     */
-    private void keyType(int... keyCodes) {
-	keyType(keyCodes, 0, keyCodes.length);
-    }
-
-    /**
-     * Use the java.awt.Robot class to perform a key press for each int in int[]
-     * keyCodes
-     * 
-     * @param keyCodes
-     *            int array of virtual key codes to press
-     * @param offset
-     *            used to recursively call each virtual key code in array
-     * @param length
-     *            used to manage the recursive base case in calling each virtual
-     *            key code in the array
-     */
-    private void keyType(int[] keyCodes, int offset, int length) {
-	if (length == 0) {
-	    return;
-	}
-	try {
-	    Robot r = new Robot();
-	    r.keyPress(keyCodes[offset]);
-	    keyType(keyCodes, offset + 1, length - 1);
-	    r.keyRelease(keyCodes[offset]);
-	} catch (AWTException e) { // throw an error
-	    throw new RuntimeException(e);
+	    /*
+	     * then widen the box to fit each row in between, only looking at
+	     * pixels outside of it
+	     */
+	    int minX = Integer.MAX_VALUE;
+	    int maxX = Integer.MIN_VALUE;
+	    for (int y = top; y <= bottom; y++) {
+		int x = screen.findInRow(matcher, y, left,
+			Math.min(minX - 1, right), 1);
+		if (x != -1)
+		    minX = x;
+		x = screen.findInRow(matcher, y, Math.max(maxX + 1, left), right,
+			1);
+		while (x != -1) {
+		    maxX = x;
+		    x = screen.findInRow(matcher, y, x + 1, right, 1);
+		}
+	    }
+	    return new int[] { minX, top, Math.max(minX, maxX), bottom };
+	} catch (Exception e) {
+	    return new int[] { -3, -3, -3, -3 };
 	}
     }
 
     /**
-     * Terminates the currently running Java Virtual Machine. The argument
-     * serves as a status code. This code can be used by Windows or the DOS
-     * variable %ERRORLEVEL%. On *nix to check the exit code we can simply print
-     * the $? special variable in bash. This variable will print the exit code
-     * of the last run command.
-     * 
-     * @param code
-     *            - Integer that sets the script's return code. Exit code is
-     *            <ul>
-     *            <li>0 when execution went fine</li>
-     *            <li>1, -1, whatever != 0 when some error occurred</li>
-     *            </ul>
+     * Find the smallest rectangle that holds every pixel of a certain color
+     * within an area.
      * 
-     * @return
+     * @param colorInt
+     *            Integer representation of the color to search for.
+     * @param x1
+     *            X value of top left coordinate.
+     * @param y1
+     *            Y value of top left coordinate.
+     * @param x2
+     *            X value of bottom right coordinate.
+     * @param y2
+     *            Y value of bottom right coordinate.
+     * @return The corners of the rectangle, including both, formatted like:
+     *         [left, top, right, bottom]. If the color is not found it will
+     *         return [-1, -1, -1, -1]. If there is an error executing the
+     *         search it will return [-3, -3, -3, -3].
      */
-    public void exit(final int code) {
-	System.exit(code);
+    public int[] pixelBoundingBox(int colorInt, int x1, int y1, int x2, int y2) {
+	return pixelBoundingBox(colorInt, x1, y1, x2, y2, 0);
     }
 
     /**
-     * Terminates the currently running Java Virtual Machine with exit code 0
-     * (Scripts normally set a exit status code of 0 if the script executed
-     * properly).
+     * Check if a file or directory exists.
+     * 
+     * @param fPath
+     *            Path of the file or directory to check.
+     * @return Will return true if the file or directory exists, otherwise
+     *         returns false.
      */
-    public void exit() {
-	System.exit(0);
+    public boolean fileExists(String fPath) {
+	return new File(fPath).exists();
     }
 
     /**
-     * Returns a fixed-size list backed by the specified Array.
+     * Delete a file. This will not work on a directory.
      * 
-     * @param array
-     *            - This is the Array of strings by which the list will be
-     *            backed.
-     * @return This method returns a list view of the specified Array.
+     * @param fPath
+     *            Path of the file to delete.
      */
-    public List<String> arrayAsList(final String[] array) {
-	return Arrays.asList(array);
+    public void fileDelete(String fPath) {
+	fileClose(fPath);
+	new File(fPath).delete();
     }
 
     /**
-     * This method searches the specified Array of bytes for the specified value
-     * using the binary search algorithm.
+     * Copy a file. The data is copied by the system without passing through
+     * the program, so it's fast and any kind of file is copied exactly. If the
+     * destination exists it will be overwritten.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
-     */
-    public int arrayBinarySearch(byte[] a, byte key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+     * @param source
+     *            Path of the file to copy.
+     * @param dest
+     *            Path of the copy, including its name.
+     * @return Returns false if the copy failed. Otherwise returns true.
+     */
+    public boolean fileCopy(String source, String dest) {
+	fileFlush(source);
+	fileClose(dest);
+	try {
+	    copyFile(Paths.get(source), Paths.get(dest));
+	    return true;
+	} catch (IOException e) {
+	    return false;
+	}
     }
 
     /**
-     * This method searches the specified Array of chars for the specified value
-     * using the binary search algorithm.
+     * Move or rename a file or directory. Within a drive the move is atomic,
+     * so nothing ever sees it half done. Between drives it is copied and then
+     * deleted. If the destination is a file it will be overwritten. Any
+     * {@link fileOpenAppend} handles for files being moved or overwritten are
+     * closed first.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
+     * @param source
+     *            Path of the file or directory to move.
+     * @param dest
+     *            Its new path, including its name.
+     * @return Returns false if the move failed. Otherwise returns true.
+     */
+    public boolean fileMove(String source, String dest) {
+	Path from = Paths.get(source);
+	closeFileAppenders(from);
+	closeFileAppenders(Paths.get(dest));
+	try {
+	    Files.move(from, Paths.get(dest), StandardCopyOption.ATOMIC_MOVE);
+	    return true;
+	} catch (AtomicMoveNotSupportedException e) {
+	    /* it's on another drive, so it has to be copied */
+	} catch (IOException e) {
+	    return false;
+	}
+
+	if (Files.isDirectory(from, LinkOption.NOFOLLOW_LINKS)) {
+	    if (!dirCopy(source, dest))
+		return false;
+	    rmDir(source);
+	    return !Files.exists(from, LinkOption.NOFOLLOW_LINKS);
+	}
+	return fileCopy(source, dest) && new File(source).delete();
+    }
+
+    /**
+     * Delete a directory and its contents. Symbolic links are deleted rather
+     * than followed.
      */
-    public int arrayBinarySearch(char[] a, char key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+    public void rmDir(String filePath) {
+	Path root = Paths.get(filePath);
+	if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS))
+	    return;
+	try {
+	    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+		public FileVisitResult visitFile(Path file,
+			BasicFileAttributes attributes) {
+		    fileDelete(file.toString());
+		    return FileVisitResult.CONTINUE;
+		}
+
+		public FileVisitResult visitFileFailed(Path file,
+			IOException e) {
+		    fileDelete(file.toString());
+		    return FileVisitResult.CONTINUE;
+		}
+
+		public FileVisitResult postVisitDirectory(Path dir,
+			IOException e) {
+		    dir.toFile().delete();
+		    return FileVisitResult.CONTINUE;
+		}
+	    });
+	} catch (IOException e) {
+	    /* whatever could be deleted has been */
+	}
     }
 
     /**
-     * This method searches the specified Array of doubles for the specified
-     * value using the binary search algorithm.
+     * Copy a directory and everything in it. The destination is created if it
+     * doesn't exist, and files already in it are overwritten. Anything still
+     * buffered by {@link fileOpenAppend} for files in the source is written
+     * out first, so the copy includes it.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
+     * @param source
+     *            Path of the directory to copy.
+     * @param dest
+     *            Path of the copy.
+     * @return Returns false if anything couldn't be copied. Otherwise returns
+     *         true.
      */
-    public int arrayBinarySearch(double[] a, double key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+    public boolean dirCopy(String source, String dest) {
+	return dirCopy(source, dest, false);
     }
 
     /**
-     * This method searches the specified Array of floats for the specified
-     * value using the binary search algorithm.
+     * Copy a directory and everything in it, see {@link dirCopy}. A parallel
+     * copy copies several files at once, which is much faster for many small
+     * files, especially on network drives.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
-     */
-    public int arrayBinarySearch(float[] a, float key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+     * @param source
+     *            Path of the directory to copy.
+     * @param dest
+     *            Path of the copy.
+     * @param parallel
+     *            Whether to copy several files at once.
+     * @return Returns false if anything couldn't be copied. Otherwise returns
+     *         true.
+     */
+    public boolean dirCopy(String source, String dest, boolean parallel) {
+	final Path from = Paths.get(source).toAbsolutePath().normalize();
+	final Path to = Paths.get(dest).toAbsolutePath().normalize();
+
+	/* a copy inside the source would be copied into itself forever */
+	if (!Files.isDirectory(from) || to.startsWith(from))
+	    return false;
+	flushFileAppenders(from);
+	closeFileAppenders(to);
+
+	final ThreadPoolExecutor copiers = parallel ? new ThreadPoolExecutor(
+		DIR_COPY_THREADS, DIR_COPY_THREADS, 0, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(DIR_COPY_QUEUE_SIZE),
+		new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			return new Thread(r, "Javauto file copier");
+		    }
+		}, new ThreadPoolExecutor.CallerRunsPolicy()) : null;
+	final AtomicInteger failures = new AtomicInteger();
+	try {
+	    Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+		public FileVisitResult preVisitDirectory(Path dir,
+			BasicFileAttributes attributes) throws IOException {
+		    Files.createDirectories(to.resolve(from.relativize(dir)));
+		    return FileVisitResult.CONTINUE;
+		}
+
+		public FileVisitResult visitFile(final Path file,
+			BasicFileAttributes attributes) {
+		    final Path target = to.resolve(from.relativize(file));
+		    Runnable copy = new Runnable() {
+			public void run() {
+			    try {
+				if (Files.isSymbolicLink(file))
+				    Files.copy(file, target,
+					    LinkOption.NOFOLLOW_LINKS,
+					    StandardCopyOption.REPLACE_EXISTING);
+				else
+				    copyFile(file, target);
+			    } catch (IOException e) {
+				failures.incrementAndGet();
+			    }
+			}
+		    };
+		    if (copiers != null)
+			copiers.execute(copy);
+		    else
+			copy.run();
+		    return FileVisitResult.CONTINUE;
+		}
+
+		public FileVisitResult visitFileFailed(Path file,
+			IOException e) {
+		    failures.incrementAndGet();
+		    return FileVisitResult.CONTINUE;
+		}
+	    });
+	} catch (IOException e) {
+	    failures.incrementAndGet();
+	} finally {
+	    if (copiers != null) {
+		copiers.shutdown();
+		try {
+		    copiers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+		    copiers.shutdownNow();
+		    Thread.currentThread().interrupt();
+		    failures.incrementAndGet();
+		}
+	    }
+	}
+	return failures.get() == 0;
     }
 
     /**
-     * This method searches the specified Array of ints for the specified value
-     * using the binary search algorithm.
+     * Create a directory.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
+     * @param dirName
+     *            The name of the directory to create. If the directory already
+     *            exists no action will be taken.
      */
-    public int arrayBinarySearch(int[] a, int key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+    public void mkDir(String dirName) {
+	File file = new File(dirName);
+	if (!file.exists())
+	    file.mkdir();
     }
 
     /**
-     * This method searches the specified Array of longs for the specified value
-     * using the binary search algorithm.
+     * Create a file. Similar to the unix touch command.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
+     * @param fPath
+     *            Path of file to be created.
      */
-    public int arrayBinarySearch(long[] a, long key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+    public void fileCreate(String fPath) {
+	try {
+	    new File(fPath).createNewFile();
+	} catch (IOException e) {
+	    // TODO Auto-generated catch block
+	    e.printStackTrace();
+	}
     }
 
     /**
-     * This method searches the specified Array of shorts for the specified
-     * value using the binary search algorithm.
+     * Get the full file path of a specific file or directory.
      * 
-     * @param a
-     *            - This is the Array to be searched.
-     * @param key
-     *            - This is the value to be searched for.
-     * @return The index of the search key, if it is contained in the Array,
-     *         else it returns (-(insertion point) - 1). The insertion point is
-     *         the point at which the key would be inserted into the Array: the
-     *         index of the first element greater than the key, or a.length if
-     *         all elements in the Array are less than the specified key.
+     * @param fPath
+     *            Path of the file.
+     * @return The full (absolute) path of the file or directory.
      */
-    public int arrayBinarySearch(short[] a, short key) {
-	Arrays.sort(a);
-	return Arrays.binarySearch(a, key);
+    public String fileGetPath(String fPath) {
+	return new File(fPath).getAbsolutePath();
     }
 
     /**
-     * This method copies the specified Array, truncating or padding with false
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original Array and the copy, the two Arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain false. Such indices will exist if
-     * and only if the specified length is greater than that of the original
-     * Array.
+     * Get the base name of a file, including its extension.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return A copy of the original array, truncated or padded with false
-     *         elements to obtain the specified length.
+     * @param fPath
+     *            Path of the file.
+     * @return Name of the file (including extension).
      */
-    public boolean[] arrayCopyOf(boolean[] original, int newLength) {
-	boolean[] arr;
-	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
-	}
+    public String fileGetName(String fPath) {
+	return new File(fPath).getName();
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain (byte) 0.Such indices will exist
-     * if and only if the specified length is greater than that of the original
-     * array.
+     * Returns true for a file but not for a directory (or a non-existant file).
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return A copy of the original array, truncated or padded with false
-     *         elements to obtain the specified length.
+     * @param fPath
+     *            Path to evaluate.
+     * @return Returns true if fPath is a file, otherwise returns false.
      */
-    public byte[] arrayCopyOf(byte[] original, int newLength) {
-	byte[] arr;
-	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
-	}
+    public boolean isFile(String fPath) {
+	return new File(fPath).isFile();
     }
 
     /**
-     * This method copies the specified array, truncating or padding with null
-     * characters (if necessary) so the copy has the specified length. For all
-     * indices that are valid in both the original array and the copy, the two
-     * arrays will contain identical values. For any indices that are valid in
-     * the copy but not the original, the copy will contain '\\u000'.Such
-     * indices will exist if and only if the specified length is greater than
-     * that of the original array.
+     * Check if a path is a directory.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return A copy of the original array, truncated or padded with null
-     *         characters to obtain the specified length.
+     * @param fPath
+     *            Path to evaluate.
+     * @return True if directory, false if not.
      */
-    public char[] arrayCopyOf(char[] original, int newLength) {
-	char[] arr;
-	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
-	}
+    public boolean isDirectory(String fPath) {
+	return new File(fPath).isDirectory();
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain 0d. Such indices will exist if
-     * and only if the specified length is greater than that of the original
-     * array.
+     * Read the contents of a file to a string.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return A copy of the original Array, truncated or padded with zeros to
-     *         obtain the specified length.
+     * @param fPath
+     *            Path of the file to read.
+     * @return The contents of the file as a string.
      */
-    public double[] arrayCopyOf(double[] original, int newLength) {
-	double[] arr;
+    public String fileRead(String fPath) {
 	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
+	    String data = fileRead(fPath, Charset.defaultCharset().name());
+	    if (data.isEmpty())
+		return "null";
+
+	    /* lines always end in \n, and the last one doesn't */
+	    if (data.indexOf('\r') != -1)
+		data = data.replace("\r\n", "\n").replace('\r', '\n');
+	    if (data.endsWith("\n"))
+		data = data.substring(0, data.length() - 1);
+	    return data;
+	} catch (Exception e) {
+	    return "null";
 	}
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain 0f.Such indices will exist if and
-     * only if the specified length is greater than that of the original array.
+     * Read the contents of a file to a string exactly as they are, decoding
+     * them all at once. The file is read straight into an array of its size
+     * rather than through a buffer. To go through a file too large to hold in
+     * memory use {@link fileLines}.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return
+     * @param fPath
+     *            Path of the file to read.
+     * @param charset
+     *            The name of the file's character set, such as "UTF-8".
+     *            Anything that isn't valid in the character set is replaced
+     *            with "\uFFFD".
+     * @return The contents of the file as a string.
      */
-    public float[] arrayCopyOf(float[] original, int newLength) {
-	float[] arr;
+    public String fileRead(String fPath, String charset) {
+	fileFlush(fPath);
 	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
+	    FileChannel channel = FileChannel.open(Paths.get(fPath));
+	    try {
+		long size = channel.size();
+		if (size >= Integer.MAX_VALUE / 2)
+		    throw new IOException(fPath
+			    + " is too large to read at once, use fileLines");
+
+		/*
+		 * one byte spare lets the end of the file show up without
+		 * growing the array, and it's grown for files that report a
+		 * size of 0 but still have something in them, like those in
+		 * /proc
+		 */
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max((int) size + 1,
+			4096));
+		while (channel.read(buffer) != -1) {
+		    if (!buffer.hasRemaining()) {
+			if (buffer.capacity() >= Integer.MAX_VALUE / 2)
+			    throw new IOException(fPath + " is too large to"
+				    + " read at once, use fileLines");
+			ByteBuffer larger = ByteBuffer.allocate(buffer
+				.capacity() * 2);
+			buffer.flip();
+			buffer = larger.put(buffer);
+		    }
+		}
+		return new String(buffer.array(), 0, buffer.position(), charset);
+	    } finally {
+		channel.close();
+	    }
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
 	}
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain 0.Such indices will exist if and
-     * only if the specified length is greater than that of the original array.
+     * Read the contents of a file as bytes.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return
+     * @param fPath
+     *            Path of the file to read.
+     * @return The contents of the file.
      */
-    public int[] arrayCopyOf(int[] original, int newLength) {
-	int[] arr;
+    public byte[] fileReadBytes(String fPath) {
+	fileFlush(fPath);
 	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
+	    return Files.readAllBytes(Paths.get(fPath));
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
 	}
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain 0L. Such indices will exist if
-     * and only if the specified length is greater than that of the original
-     * array.
+     * Go through the lines of a file one at a time. Lines are only read as
+     * they're needed, so however large the file is only a little of it is in
+     * memory at once. The file is closed once the last line has been read,
+     * or it can be closed early, for example:
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return
-     */
-    public long[] arrayCopyOf(long[] original, int newLength) {
-	long[] arr;
+     * <pre>
+     * LineIterator lines = fileLines("server.log", "UTF-8");
+     * try {
+     *     for (String line : lines) {
+     * 	if (line.contains("ERROR"))
+     * 	    print(line);
+     *     }
+     * } finally {
+     *     lines.close();
+     * }
+     * </pre>
+     * 
+     * @param fPath
+     *            Path of the file to read.
+     * @param charset
+     *            The name of the file's character set, such as "UTF-8".
+     *            Anything that isn't valid in the character set is replaced
+     *            with "\uFFFD".
+     * @return The lines of the file, without their line endings.
+     */
+    public LineIterator fileLines(String fPath, String charset) {
+	fileFlush(fPath);
 	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
+	    CharsetDecoder decoder = Charset.forName(charset).newDecoder()
+		    .onMalformedInput(CodingErrorAction.REPLACE)
+		    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+	    FileChannel channel = FileChannel.open(Paths.get(fPath));
+	    return new FileLineIterator(new BufferedReader(Channels.newReader(
+		    channel, decoder, -1), 1 << 16));
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
 	}
     }
 
     /**
-     * This method copies the specified array, truncating or padding with zeros
-     * (if necessary) so the copy has the specified length. For all indices that
-     * are valid in both the original array and the copy, the two arrays will
-     * contain identical values. For any indices that are valid in the copy but
-     * not the original, the copy will contain (short)0. Such indices will exist
-     * if and only if the specified length is greater than that of the original
-     * array.
+     * Go through the lines of a file in the system's default character set one
+     * at a time. See {@link fileLines}.
      * 
-     * @param original
-     *            - The Array to be copied.
-     * @param newLength
-     *            - The length of the copy to be returned.
-     * @return A copy of the original array, truncated or padded with zeros to
-     *         obtain the specified length.
+     * @param fPath
+     *            Path of the file to read.
+     * @return The lines of the file, without their line endings.
      */
-    public short[] arrayCopyOf(short[] original, int newLength) {
-	short[] arr;
-	try {
-	    arr = Arrays.copyOf(original, newLength);
-	    return arr;
-	} catch (NegativeArraySizeException e) {
-	    throw new RuntimeException("The new length cannot be negative."
-		    + e.getMessage());
-	}
+    public LineIterator fileLines(String fPath) {
+	return fileLines(fPath, Charset.defaultCharset().name());
     }
 
     /**
-     * This method sorts the specified array of bytes into ascending numerical
-     * order.
+     * Write data to a file -- this will overwrite the file. If the file does
+     * not exist it will be created.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param fPath
+     *            Path of the file to write to.
+     * @param data
+     *            Data to write to the file as a string.
+     * @return Returns false if the file write failed. Otherwise returns true.
      */
-    public byte[] arraySort(byte[] a) {
-	Arrays.sort(a);
-	return a;
+    public boolean fileWrite(String fPath, String data) {
+	fileFlush(fPath);
+	BufferedWriter bufferedWriter = null;
+	try {
+	    File myFile = new File(fPath);
+	    if (!myFile.exists()) {
+		myFile.createNewFile();
+	    }
+	    Writer writer = new FileWriter(myFile);
+	    bufferedWriter = new BufferedWriter(writer);
+	    bufferedWriter.write(data);
+	    try {
+		if (bufferedWriter != null)
+		    bufferedWriter.close();
+	    } catch (Exception ex) {
+	    }
+	    return true;
+	} catch (IOException e) {
+	    return false;
+	}
     }
 
     /**
-     * This method sorts the specified array of chars into ascending numerical
-     * order.
+     * Append data to a file. If the file does not exist it will be created.
+     * The file is kept open between calls, see {@link fileOpenAppend}, but the
+     * data is written out before this returns. It's closed again once it
+     * hasn't been appended to for a while.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param fPath
+     *            The path of the file to which we are appending data.
+     * @param data
+     *            The data to be appended to the file.
+     * @return If appending to the file failed false will be returned. Otherwise
+     *         will return true.
      */
-    public char[] arraySort(char[] a) {
-	Arrays.sort(a);
-	return a;
+    public boolean fileAppend(String fPath, String data) {
+	try {
+	    FileAppender appender = openFileAppender(fPath, false);
+	    appender.write(data);
+	    appender.flush();
+	    return true;
+	} catch (RuntimeException e) {
+	    return false;
+	}
     }
 
     /**
-     * This method sorts the specified array of doubles into ascending numerical
-     * order.
+     * Open a file for appending, creating it if it doesn't exist. Writes are
+     * collected in a buffer and written out when it fills up, when the oldest
+     * has waited a second, when {@link fileFlush} is called, or when the file
+     * is closed. Handles are shared, so opening the same file again gives the
+     * same handle, and {@link fileAppend} writes through it too. Any handles
+     * still open are closed when the program exits.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param fPath
+     *            Path of the file to append to.
+     * @return A handle to write to the end of the file with.
      */
-    public double[] arraySort(double[] a) {
-	Arrays.sort(a);
-	return a;
+    public FileAppender fileOpenAppend(String fPath) {
+	return openFileAppender(fPath, true);
     }
 
     /**
-     * This method sorts the specified array of floats into ascending numerical
-     * order.
+     * Write out anything appended to a file that is still waiting in the
+     * buffer of its {@link fileOpenAppend} handle.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param fPath
+     *            Path of the file to flush.
+     * @return Returns false if writing to the file failed. Otherwise returns
+     *         true, including when the file isn't open for appending.
      */
-    public float[] arraySort(float[] a) {
-	Arrays.sort(a);
-	return a;
+    public boolean fileFlush(String fPath) {
+	BufferedAppender appender = getFileAppender(fPath);
+	try {
+	    if (appender != null)
+		appender.flush();
+	    return true;
+	} catch (RuntimeException e) {
+	    return false;
+	}
     }
 
     /**
-     * This method sorts the specified array of ints into ascending numerical
-     * order.
+     * Close the {@link fileOpenAppend} handle for a file, writing out anything
+     * still in its buffer.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param fPath
+     *            Path of the file to close.
+     * @return Returns false if writing to the file failed. Otherwise returns
+     *         true, including when the file isn't open for appending.
      */
-    public int[] arraySort(int[] a) {
-	Arrays.sort(a);
-	return a;
+    public boolean fileClose(String fPath) {
+	BufferedAppender appender = getFileAppender(fPath);
+	try {
+	    if (appender != null)
+		appender.close();
+	    return true;
+	} catch (RuntimeException e) {
+	    return false;
+	}
     }
 
     /**
-     * This method sorts the specified array of longs into ascending numerical
-     * order.
+     * Get a list of file names in a directory as an array.
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
+     * @param dir
+     *            Directory to list files from.
+     * @return String array of file names.
      */
-    public long[] arraySort(long[] a) {
-	Arrays.sort(a);
-	return a;
+    public String[] fileList(String dir) {
+	try {
+	    File[] fileList = new File(dir).listFiles(); // java code to get a
+							 // list of files
+	    int fileNum = fileList.length; // store length of file list
+	    String[] files = new String[fileNum];
+
+	    for (int i = 0; i < fileNum; i++) {
+		files[i] = fileList[i].toString();
+	    }
+	    return files;
+	} catch (Exception e) {
+	    String[] files = { "null" };
+	    return files;
+	}
     }
 
     /**
-     * This method sorts the specified array of shorts into ascending numerical
-     * order.
+     * Find the files and directories below a directory whose names match a
+     * glob pattern, such as "*.log" or "report-202?-*.{csv,txt}". If the
+     * pattern contains a "/" it is matched against the path relative to the
+     * root instead, such as "logs/**.gz".
      * 
-     * @param a
-     *            - The array to be sorted.
-     * @return The sorted array.
-     */
-    public short[] arraySort(short[] a) {
-	Arrays.sort(a);
-	return a;
+     * @param root
+     *            The directory to search.
+     * @param glob
+     *            The pattern to match, see
+     *            {@link java.nio.file.FileSystem#getPathMatcher}.
+     * @param maxDepth
+     *            How many levels below the root to search, where 1 is only
+     *            what's directly in the root and 0 finds nothing. Use -1 for
+     *            no limit.
+     * @param parallel
+     *            Whether to search several directories at once, see
+     *            {@link fileWalk}. The results are in no particular order.
+     * @return The paths that match, each beginning with the root.
+     */
+    public String[] fileFind(String root, String glob, int maxDepth, boolean parallel) {
+	final Path start = Paths.get(root);
+	final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+		"glob:" + glob);
+	final boolean wholePath = glob.indexOf('/') != -1;
+	final List<String> found = Collections
+		.synchronizedList(new ArrayList<String>());
+	walkFiles(start, maxDepth, parallel, new PathVisitor() {
+	    public boolean visit(Path path, BasicFileAttributes attributes) {
+		if (matcher.matches(wholePath ? start.relativize(path) : path
+			.getFileName()))
+		    found.add(path.toString());
+		return true;
+	    }
+	});
+	return found.toArray(new String[found.size()]);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified boolean array. The string representation consists of a list of
-     * the array's elements, enclosed in square brackets ("[]"). Adjacent
-     * elements are separated by the characters ", " (a comma followed by a
-     * space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Find the files and directories below a directory whose names match a
+     * glob pattern, see {@link fileFind}.
+     * 
+     * @param root
+     *            The directory to search.
+     * @param glob
+     *            The pattern to match.
+     * @param maxDepth
+     *            How many levels below the root to search, where 1 is only
+     *            what's directly in the root and 0 finds nothing. Use -1 for
+     *            no limit.
+     * @return The paths that match, each beginning with the root.
      */
-    public String arrayToString(boolean[] a) {
-	return Arrays.toString(a);
+    public String[] fileFind(String root, String glob, int maxDepth) {
+	return fileFind(root, glob, maxDepth, false);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified byte array. The string representation consists of a list of the
-     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
-     * are separated by the characters ", " (a comma followed by a space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Go through every file and directory below a directory, handing each
+     * one to a visitor as it's found, for example:
+     * 
+     * <pre>
+     * fileWalk("C:\\temp", new PathVisitor() {
+     *     public boolean visit(Path path, BasicFileAttributes attributes) {
+     * 	if (attributes.lastModifiedTime().toMillis() < cutoff)
+     * 	    fileDelete(path.toString());
+     * 	return true;
+     *     }
+     * });
+     * </pre>
+     * 
+     * Symbolic links are visited but not followed, and directories that
+     * can't be read are skipped.
+     * 
+     * @param root
+     *            The directory to walk.
+     * @param visitor
+     *            What to do with each file and directory.
      */
-    public String arrayToString(byte[] a) {
-	return Arrays.toString(a);
+    public void fileWalk(String root, PathVisitor visitor) {
+	fileWalk(root, visitor, false);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified char array. The string representation consists of a list of the
-     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
-     * are separated by the characters ", " (a comma followed by a space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Go through every file and directory below a directory, see
+     * {@link fileWalk}. A parallel walk lists several directories at once,
+     * which is much faster for large trees, especially on network drives.
+     * The visitor is then called from several threads at once and in no
+     * particular order, though a directory is always visited before what's
+     * in it.
+     * 
+     * @param root
+     *            The directory to walk.
+     * @param visitor
+     *            What to do with each file and directory.
+     * @param parallel
+     *            Whether to list several directories at once.
      */
-    public String arrayToString(char[] a) {
-	return Arrays.toString(a);
+    public void fileWalk(String root, PathVisitor visitor, boolean parallel) {
+	walkFiles(Paths.get(root), -1, parallel, visitor);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified double array. The string representation consists of a list of
-     * the array's elements, enclosed in square brackets ("[]"). Adjacent
-     * elements are separated by the characters ", " (a comma followed by a
-     * space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
-     */
-    public String arrayToString(double[] a) {
-	return Arrays.toString(a);
-    }
+     * Wait for a file or directory to exist. This is much cheaper than
+     * calling {@link fileExists} and {@link sleep} in a loop, since the system
+     * says when the directory it's in changes. Called from a
+     * {@link fileOnChange} or {@link dirWatch} listener, it checks a few times
+     * a second instead, since the thread it's on is the one that would hear
+     * about the file.
+     * 
+     * @param fPath
+     *            Path of the file to wait for.
+     * @param timeoutMs
+     *            The longest time in milliseconds to wait. A timeout of 0 or
+     *            less waits for as long as it takes.
+     * @return True if the file exists, false if the timeout ran out first.
+     */
+    public boolean fileWaitFor(String fPath, int timeoutMs) {
+	final Path target = Paths.get(fPath).toAbsolutePath().normalize();
+	if (Files.exists(target))
+	    return true;
 
-    /**
-     * This method returns a string representation of the contents of the
-     * specified float array. The string representation consists of a list of
-     * the array's elements, enclosed in square brackets ("[]"). Adjacent
-     * elements are separated by the characters ", " (a comma followed by a
-     * space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
-     */
-    public String arrayToString(float[] a) {
-	return Arrays.toString(a);
-    }
+	Thread current = Thread.currentThread();
+	if (current == fileWatchThread || current == fileWatchPollThread) {
+	    long deadline = System.nanoTime() + timeoutMs * 1000000L;
+	    try {
+		while (!Files.exists(target)) {
+		    if (timeoutMs > 0 && System.nanoTime() - deadline >= 0)
+			return false;
+		    Thread.sleep(FILE_WATCH_POLL_INTERVAL);
+		}
+		return true;
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return false;
+	    }
+	}
 
-    /**
-     * This method returns a string representation of the contents of the
-     * specified int array. The string representation consists of a list of the
-     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
-     * are separated by the characters ", " (a comma followed by a space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
-     */
-    public String arrayToString(int[] a) {
-	return Arrays.toString(a);
+	final CountDownLatch appeared = new CountDownLatch(1);
+	FileWatch watch = startFileWatch(target.getParent(), false, null,
+		new FileChangeListener() {
+		    public void changed(String path, String change) {
+			if (Files.exists(target))
+			    appeared.countDown();
+		    }
+		});
+	try {
+	    /* it may have been created while the watch was starting */
+	    if (Files.exists(target))
+		return true;
+	    if (timeoutMs <= 0) {
+		appeared.await();
+		return true;
+	    }
+	    return appeared.await(timeoutMs, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return false;
+	} finally {
+	    watch.cancel(false);
+	}
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified long array. The string representation consists of a list of the
-     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
-     * are separated by the characters ", " (a comma followed by a space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Call a listener whenever a file in a directory is created, modified or
+     * deleted, for example:
+     * 
+     * <pre>
+     * fileOnChange("C:\\exports", "*.csv", new FileChangeListener() {
+     *     public void changed(String path, String change) {
+     * 	if (change.equals("created"))
+     * 	    print("new export " + path);
+     *     }
+     * });
+     * </pre>
+     * 
+     * The system says when the directory changes where it can. Where it
+     * can't, or the directory is deleted while being watched, all such
+     * directories are checked together from one thread four times a second.
+     * Listeners are called one at a time from a single thread, so a slow
+     * listener delays the others.
+     * 
+     * @param dir
+     *            The directory to watch. It doesn't have to exist yet.
+     * @param glob
+     *            A pattern the names of files have to match to be reported,
+     *            such as "*.csv", see {@link fileFind}.
+     * @param listener
+     *            What to call for each change. If it throws an exception it
+     *            won't be called again.
+     * @return A Future that can be used to stop watching.
      */
-    public String arrayToString(long[] a) {
-	return Arrays.toString(a);
+    public Future<?> fileOnChange(String dir, String glob, FileChangeListener listener) {
+	return startFileWatch(Paths.get(dir).toAbsolutePath().normalize(),
+		false, FileSystems.getDefault().getPathMatcher("glob:" + glob),
+		listener);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified short array. The string representation consists of a list of
-     * the array's elements, enclosed in square brackets ("[]"). Adjacent
-     * elements are separated by the characters ", " (a comma followed by a
-     * space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Call a listener whenever anything in a directory or any directory below
+     * it is created, modified or deleted, see {@link fileOnChange}.
+     * Directories created later are watched too.
+     * 
+     * @param dir
+     *            The directory to watch. It doesn't have to exist yet.
+     * @param listener
+     *            What to call for each change. If it throws an exception it
+     *            won't be called again.
+     * @return A Future that can be used to stop watching.
      */
-    public String arrayToString(short[] a) {
-	return Arrays.toString(a);
+    public Future<?> dirWatch(String dir, FileChangeListener listener) {
+	return startFileWatch(Paths.get(dir).toAbsolutePath().normalize(),
+		true, null, listener);
     }
 
     /**
-     * This method returns a string representation of the contents of the
-     * specified String array. The string representation consists of a list of
-     * the array's elements, enclosed in square brackets ("[]"). Adjacent
-     * elements are separated by the characters ", " (a comma followed by a
-     * space).
-     *
-     * @param a
-     *            - The array whose string representation to return.
-     * @return A string representation of a.
+     * Put a string in the system clipboard. On Ubuntu Linux the way the
+     * clipboard is handled only allows information in the clipboard to be
+     * accessable while the application that put it there is running.
+     * 
+     * @param s
+     *            String data to put in the clip board.
      */
-    public String arrayToString(String[] a) {
-	return Arrays.toString(a);
+    public void clipboardPut(String s) {
+	StringSelection stringSelection = new StringSelection(s);
+	Clipboard clpbrd = Toolkit.getDefaultToolkit().getSystemClipboard();
+	clpbrd.setContents(stringSelection, null);
     }
 
     /**
-     * This method returns true if the two specified arrays of booleans are
-     * equal to one another.Two arrays are equal if they contain the same
-     * elements in the same order.Two array references are considered equal if
-     * both are null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Get the contents of the clip board (as string).
+     * 
+     * @return The clip board contents as a string. Returns null if the data
+     *         inside the clip board cannot be read to a string.
      */
-    public boolean arrayEquals(boolean[] a, boolean[] a2) {
-	return Arrays.equals(a, a2);
+    public String clipboardGet() {
+	Toolkit toolkit = Toolkit.getDefaultToolkit();
+	Clipboard clipboard = toolkit.getSystemClipboard();
+	String result;
+	try {
+	    result = (String) clipboard.getData(DataFlavor.stringFlavor);
+	    return result;
+	} catch (Exception e) {
+	    return null;
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of bytes are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order. Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Get the value of a flagged argument. So if the program is executed like
+     * java program -v --file aFile.txt -o outFile.txt getFlaggedArg(args,
+     * "-f|--file") would return aFile.txt.
+     * 
+     * @param args
+     *            The String[] args from the main function. Pass them in by just
+     *            saying args.
+     * @param flag
+     *            The flags to get values from, separated by | like -f|--file.
+     * @return The argument directly after the detected flag.
      */
-    public boolean arrayEquals(byte[] a, byte[] a2) {
-	return Arrays.equals(a, a2);
+    public String getFlaggedArg(String[] args, String flag) {
+	ArrayList<String> flags = new ArrayList<String>();
+	if (flag.contains("|")) {
+	    /* we need to user [|] because .split() takes a regex value */
+	    for (String f : flag.split("[|]"))
+		flags.add(f.trim());
+	} else {
+	    flags.add(flag.trim());
+	}
+	for (int i = 0; i < args.length; i++) {
+	    if (flags.contains(args[i])) {
+		if (i == args.length - 1)
+		    return "";
+		else
+		    return args[i + 1];
+	    }
+	}
+	return "";
     }
 
     /**
-     * This method returns true if the two specified arrays of chars are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
+     * Check if a flag is present within the command line arguments.
+     * 
+     * @param args
+     *            The String[] args from the main function. Pass them in by just
+     *            saying args.
+     * @param flag
+     *            The flag(s) to check for, separate possible values with a pipe
+     *            | For instance -h|--help could match either one.
+     * @return True or false based on whether the flag is present.
+     */
+    public boolean isFlagged(String[] args, String flag) {
+	ArrayList<String> flags = new ArrayList<String>();
+	if (flag.contains("|")) {
+	    /* we need to user [|] because .split() takes a regex value */
+	    for (String f : flag.split("[|]"))
+		flags.add(f.trim());
+	} else {
+	    flags.add(flag.trim());
+	}
+	for (int i = 0; i < args.length; i++) {
+	    if (flags.contains(args[i]))
+		return true;
+	}
+	return false;
+    }
+
+    /**
+     * Send a HTTP GET request to a URL.
+     * 
+     * @param url
+     *            The URL to query, including the get parameters.
+     * @return Page response as HTML.
+     */
+    public String httpGet(String url) {
+	try {
+	    URL obj = new URL(url);
+	    HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+
+	    // optional default is GET
+	    con.setRequestMethod("GET");
+
+	    // add request header
+	    con.setRequestProperty("User-Agent", "Mozilla/5.0");
+
+	    BufferedReader in = new BufferedReader(new InputStreamReader(
+		    con.getInputStream()));
+	    String inputLine;
+	    StringBuffer response = new StringBuffer();
+
+	    while ((inputLine = in.readLine()) != null) {
+		response.append(inputLine);
+	    }
+	    in.close();
+
+	    return response.toString();
+	} catch (Exception e) {
+	    e.printStackTrace();
+	    return "";
+	}
+
+    }
+
+    /**
+     * Send a HTTP POST request to a given URL with the specified parameters.
+     * 
+     * @param postUrl
+     *            URL to send the post request to.
+     * @param parameters
+     *            Post parameters to send to URL. Parameters must be defined in
+     *            a two dimesional array like [ [key, value], [key, value],
+     *            [key, value] ].
+     * @return Page response as HTML.
+     */
+    public String httpPost(String postUrl, String[][] parameters) {
+	try {
+	    URL url = new URL(postUrl);
+	    Map<String, Object> params = new LinkedHashMap<>();
+	    for (String[] param : parameters) {
+		params.put(param[0], param[1]);
+	    }
+	    StringBuilder postData = new StringBuilder();
+	    for (Map.Entry<String, Object> param : params.entrySet()) {
+		if (postData.length() != 0)
+		    postData.append('&');
+		postData.append(URLEncoder.encode(param.getKey(), "UTF-8"));
+		postData.append('=');
+		postData.append(URLEncoder.encode(
+			String.valueOf(param.getValue()), "UTF-8"));
+	    }
+	    byte[] postDataBytes = postData.toString().getBytes("UTF-8");
+	    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+	    conn.setRequestMethod("POST");
+	    conn.setRequestProperty("Content-Type",
+		    "application/x-www-form-urlencoded");
+	    conn.setRequestProperty("Content-Length",
+		    String.valueOf(postDataBytes.length));
+	    conn.setDoOutput(true);
+	    conn.getOutputStream().write(postDataBytes);
+	    Reader in = new BufferedReader(new InputStreamReader(
+		    conn.getInputStream(), "UTF-8"));
+	    int ch;
+	    String response = "";
+	    while ((ch = in.read()) >= 0)
+		response = response + String.valueOf((char) ch);
+	    return response;
+	} catch (Exception e) {
+	    return "Error";
+	}
+    }
+
+    /**
+     * Get the source of a web page as HTML.
+     * 
+     * @param url
+     *            The page to fetch.
+     * @return The page source (HTML) as a string.
+     */
+    public String getPage(String url) {
+	try {
+	    // get URL content
+	    URL page = new URL(url);
+	    URLConnection conn = page.openConnection();
+	    // open the stream and put it into BufferedReader
+	    BufferedReader br = new BufferedReader(new InputStreamReader(
+		    conn.getInputStream()));
+	    String inputLine;
+	    String pageData = "";
+	    while ((inputLine = br.readLine()) != null) {
+		pageData = pageData + inputLine + "\n";
+	    }
+	    br.close();
+	    /* get rid of the last newline we added on */
+	    return pageData.substring(0, pageData.length() - 1);
+	} catch (Exception e) {
+	    return "Error";
+	}
+    }
+
+    /**
+     * Join a string array into a string with a delimeter.
+     * 
+     * @param joinString
+     *            The delimeter with which to join the string array.
+     * @param strArray
+     *            The array to join.
+     * @return The array as a string with the delimeter between each index.
+     */
+    public String join(String joinString, String[] strArray) {
+	String joined = "";
+	for (String s : strArray)
+	    joined = joined + s + joinString;
+	return joined.substring(0, joined.length() - joinString.length());
+    }
+
+    /*
+     * Define the private, internally used functions that support the public
+     * functions
+     */
+
+    /**
+     * Build the table used by {@link keyAt} to find the virtual key code of
+     * each typeable ASCII character.
+     * 
+     * @return table of key codes indexed by character
+     */
+    private int[] buildKeyTable() {
+	int[] table = new int[128];
+
+	/* letters, with capitals typed by holding shift */
+	for (char c = 'a'; c <= 'z'; c++) {
+	    table[c] = KeyEvent.VK_A + (c - 'a');
+	    table[Character.toUpperCase(c)] = KEY_SHIFTED | table[c];
+	}
+
+	/* digits, and the symbols typed by holding shift over them */
+	String shiftedDigits = ")!@#$%^&*(";
+	for (char c = '0'; c <= '9'; c++) {
+	    table[c] = KeyEvent.VK_0 + (c - '0');
+	    table[shiftedDigits.charAt(c - '0')] = KEY_SHIFTED | table[c];
+	}
+
+	/* the rest of the punctuation, along with its shifted partner */
+	String plain = "`-=[]\\;',./";
+	String shifted = "~_+{}|:\"<>?";
+	int[] codes = { KeyEvent.VK_BACK_QUOTE, KeyEvent.VK_MINUS,
+		KeyEvent.VK_EQUALS, KeyEvent.VK_OPEN_BRACKET,
+		KeyEvent.VK_CLOSE_BRACKET, KeyEvent.VK_BACK_SLASH,
+		KeyEvent.VK_SEMICOLON, KeyEvent.VK_QUOTE, KeyEvent.VK_COMMA,
+		KeyEvent.VK_PERIOD, KeyEvent.VK_SLASH };
+	for (int i = 0; i < codes.length; i++) {
+	    table[plain.charAt(i)] = codes[i];
+	    table[shifted.charAt(i)] = KEY_SHIFTED | codes[i];
+	}
+
+	/* whitespace */
+	table[' '] = KeyEvent.VK_SPACE;
+	table['\t'] = KeyEvent.VK_TAB;
+	table['\n'] = KeyEvent.VK_ENTER;
+	table['\b'] = KeyEvent.VK_BACK_SPACE;
+	return table;
+    }
+
+    /**
+     * Get the virtual key code of a special key like {CTRL} or {ENTER}.
+     * 
+     * @param name
+     *            the name of the key, without the braces
+     * @return the virtual key code, or 0 if there isn't a key by that name
+     */
+    private int specialKeyCode(String name) {
+	switch (name) {
+	case "ENTER":
+	    return KeyEvent.VK_ENTER;
+	case "TAB":
+	    return KeyEvent.VK_TAB;
+	case "WIN":
+	    return KeyEvent.VK_WINDOWS;
+	case "SHIFT":
+	    return KeyEvent.VK_SHIFT;
+	case "DELETE":
+	    return KeyEvent.VK_DELETE;
+	case "CTRL":
+	    return KeyEvent.VK_CONTROL;
+	case "ALT":
+	    return KeyEvent.VK_ALT;
+	case "ESC":
+	    return KeyEvent.VK_ESCAPE;
+	case "APPLE":
+	    return KeyEvent.VK_META;
+	case "HOME":
+	    return KeyEvent.VK_HOME;
+	case "END":
+	    return KeyEvent.VK_END;
+	case "LEFT":
+	    return KeyEvent.VK_LEFT;
+	case "RIGHT":
+	    return KeyEvent.VK_RIGHT;
+	case "UP":
+	    return KeyEvent.VK_UP;
+	case "DOWN":
+	    return KeyEvent.VK_DOWN;
+	case "CAPS":
+	    return KeyEvent.VK_CAPS_LOCK;
+	case "BACKSPACE":
+	    return KeyEvent.VK_BACK_SPACE;
+	}
+
+	/* function keys F1 through F24 */
+	if (name.length() > 1 && name.charAt(0) == 'F'
+		&& name.charAt(1) >= '1' && name.charAt(1) <= '9') {
+	    try {
+		int n = Integer.parseInt(name.substring(1));
+		if (n <= 12)
+		    return KeyEvent.VK_F1 + n - 1;
+		if (n <= 24)
+		    return KeyEvent.VK_F13 + n - 13;
+	    } catch (NumberFormatException e) {
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * Find the key at a position in a string. The key is either a single
+     * character or a special key like {CTRL} or {F5}.
+     * 
+     * @param str
+     *            the string to look in
+     * @param index
+     *            the position of the key
+     * @return the key's virtual key code, combined with KEY_SHIFTED if shift is
+     *         needed to type it, or 0 if there isn't a key that can be typed
+     */
+    private int keyAt(String str, int index) {
+	if (index >= str.length())
+	    return 0;
+	char c = str.charAt(index);
+
+	/* check for a special key */
+	if (c == '{') {
+	    int close = str.indexOf('}', index);
+	    if (close > index + 1) {
+		int special = specialKeyCode(str.substring(index + 1, close));
+		if (special != 0)
+		    return special;
+	    }
+	}
+
+	/* otherwise it's a normal character */
+	int[] table = keyTable;
+	if (table == null)
+	    keyTable = table = buildKeyTable();
+	if (c < table.length)
+	    return table[c];
+	return 0;
+    }
+
+    /**
+     * Compile a string into a keystroke program that {@link send} can play
+     * back without looking anything up. Each op in the program is
+     * KEYSTROKE_PRESS or KEYSTROKE_RELEASE combined with a virtual key code,
+     * or KEYSTROKE_DELAY, which marks the pause after each key. Shift is only
+     * pressed and released when it changes between keys, so a run of capitals
+     * is typed under a single hold of shift.
+     * 
+     * @param str
+     *            the string to compile, which may contain special keys
+     * @return the compiled keystroke program
+     */
+    private int[] compileKeystrokes(String str) {
+	/* each key needs at most four ops, plus one to let go of shift */
+	int[] program = new int[str.length() * 4 + 1];
+	int length = 0;
+	boolean shiftHeld = false;
+
+	int i = 0;
+	while (i < str.length()) {
+	    int key = keyAt(str, i);
+	    if (key == 0)
+		throw new IllegalArgumentException("Cannot type character "
+			+ str.charAt(i));
+
+	    /* press or release shift if this key needs it changed */
+	    boolean shifted = (key & KEY_SHIFTED) != 0;
+	    if (shifted != shiftHeld) {
+		program[length++] = (shifted ? KEYSTROKE_PRESS
+			: KEYSTROKE_RELEASE) | KeyEvent.VK_SHIFT;
+		shiftHeld = shifted;
+	    }
+
+	    /* type the key and pause */
+	    program[length++] = KEYSTROKE_PRESS | (key & 0xFFFF);
+	    program[length++] = KEYSTROKE_RELEASE | (key & 0xFFFF);
+	    program[length++] = KEYSTROKE_DELAY;
+
+	    /* a { that doesn't need shift is the start of a special key */
+	    if (str.charAt(i) == '{' && !shifted)
+		i = str.indexOf('}', i) + 1;
+	    else
+		i++;
+	}
+	if (shiftHeld)
+	    program[length++] = KEYSTROKE_RELEASE | KeyEvent.VK_SHIFT;
+
+	return Arrays.copyOf(program, length);
+    }
+
+    /**
+     * Get the compiled keystroke program for a string, compiling it only if it
+     * isn't already in the cache of recently sent strings.
+     * 
+     * @param str
+     *            the string that's being sent
+     * @return the compiled keystroke program
+     */
+    private int[] getKeystrokeProgram(String str) {
+	synchronized (keystrokeCache) {
+	    int[] program = keystrokeCache.get(str);
+	    if (program == null) {
+		program = compileKeystrokes(str);
+		if (str.length() <= KEYSTROKE_CACHE_MAX_LENGTH)
+		    keystrokeCache.put(str, program);
+
+		/* forget the least recently used program if there's too many */
+		if (keystrokeCache.size() > KEYSTROKE_CACHE_SIZE) {
+		    Iterator<String> eldest = keystrokeCache.keySet()
+			    .iterator();
+		    eldest.next();
+		    eldest.remove();
+		}
+	    }
+	    return program;
+	}
+    }
+
+    /**
+     * Sleep until a deadline, measured against {@link System#nanoTime}. Steps
+     * that sleep until a deadline relative to a fixed start don't drift the
+     * way repeated fixed sleeps do.
+     * 
+     * @param deadline
+     *            the value of System.nanoTime() to wake at
+     */
+    private void sleepUntil(long deadline) {
+	long remaining;
+	while ((remaining = deadline - System.nanoTime()) > 0) {
+	    /* stop sleeping if the thread is interrupted */
+	    if (Thread.currentThread().isInterrupted())
+		return;
+
+	    /*
+	     * park while there's plenty of time left, then spin for the last
+	     * stretch since parking can overshoot by about that much
+	     */
+	    if (remaining > SLEEP_SPIN_NANOS)
+		LockSupport.parkNanos(remaining - SLEEP_SPIN_NANOS);
+	    else
+		Thread.yield();
+	}
+    }
+
+    /**
+     * Get the timer used by {@link every} and {@link after}, starting it the
+     * first time it's needed. The timer runs on a single daemon thread, so it
+     * won't keep the program running on its own.
+     * 
+     * @return the timer
+     */
+    private ScheduledExecutorService getTimer() {
+	ScheduledExecutorService t = timer;
+	if (t == null) {
+	    synchronized (timerLock) {
+		t = timer;
+		if (t == null) {
+		    t = newDaemonScheduler("Javauto timer");
+		    timer = t;
+		}
+	    }
+	}
+	return t;
+    }
+
+    /**
+     * Get the poller that blocking functions check things on, starting it the
+     * first time it's needed. Like the timer it runs on a single daemon
+     * thread, but it never runs script code, so it can't be held up by the
+     * task waiting on it.
+     * 
+     * @return the poller
+     */
+    private ScheduledExecutorService getPoller() {
+	ScheduledExecutorService p = poller;
+	if (p == null) {
+	    synchronized (timerLock) {
+		p = poller;
+		if (p == null) {
+		    p = newDaemonScheduler("Javauto poller");
+		    poller = p;
+		}
+	    }
+	}
+	return p;
+    }
+
+    /**
+     * Create an executor that runs tasks on a single daemon thread.
+     * 
+     * @param name
+     *            the name of the thread
+     * @return the executor
+     */
+    private ScheduledExecutorService newDaemonScheduler(final String name) {
+	return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, name);
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+    }
+
+    /**
+     * Get the shared append handle for a file, opening it if it isn't open.
+     * 
+     * @param fPath
+     *            the path of the file
+     * @param held
+     *            whether the handle is being given to the script, which
+     *            stops it being closed for being idle or least recently used
+     * @return the handle
+     */
+    private BufferedAppender openFileAppender(String fPath, boolean held) {
+	String key = Paths.get(fPath).toAbsolutePath().normalize().toString();
+	synchronized (fileAppenders) {
+	    BufferedAppender appender = fileAppenders.get(key);
+
+	    /* start a new file if the old one was deleted or moved away */
+	    if (appender != null && !new File(key).exists())
+		appender.close();
+	    if (appender == null || appender.closed) {
+		try {
+		    appender = new BufferedAppender(key);
+		} catch (IOException e) {
+		    throw new RuntimeException(e);
+		}
+		closeLeastRecentAppender();
+		fileAppenders.put(key, appender);
+		if (!held)
+		    appender.scheduleIdleCheck(FILE_APPEND_IDLE_MS);
+		if (fileAppendersHook == null) {
+		    fileAppendersHook = new Thread(new Runnable() {
+			public void run() {
+			    List<BufferedAppender> open;
+			    synchronized (fileAppenders) {
+				open = new ArrayList<BufferedAppender>(
+					fileAppenders.values());
+			    }
+			    for (BufferedAppender appender : open) {
+				try {
+				    appender.close();
+				} catch (RuntimeException e) {
+				}
+			    }
+			}
+		    }, "Javauto file appenders");
+		    Runtime.getRuntime().addShutdownHook(fileAppendersHook);
+		}
+	    }
+	    appender.held |= held;
+	    appender.lastUsed = System.nanoTime();
+	    return appender;
+	}
+    }
+
+    /**
+     * Close the least recently used handle that {@link fileAppend} opened if
+     * there are FILE_APPEND_MAX_OPEN open, to make room for another. Must be
+     * called holding the lock on fileAppenders.
+     */
+    private void closeLeastRecentAppender() {
+	if (fileAppenders.size() < FILE_APPEND_MAX_OPEN)
+	    return;
+	for (BufferedAppender appender : fileAppenders.values()) {
+	    if (!appender.held) {
+		try {
+		    appender.close();
+		} catch (RuntimeException e) {
+		    /* fileAppend already wrote everything out */
+		}
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Get the open {@link fileOpenAppend} handle for a file.
+     * 
+     * @param fPath
+     *            the path of the file
+     * @return the handle, or null if the file isn't open for appending
+     */
+    private BufferedAppender getFileAppender(String fPath) {
+	synchronized (fileAppenders) {
+	    if (fileAppenders.isEmpty())
+		return null;
+	    return fileAppenders.get(Paths.get(fPath).toAbsolutePath()
+		    .normalize().toString());
+	}
+    }
+
+    /**
+     * Get the open {@link fileOpenAppend} handles for a file, or for every
+     * file below a directory.
+     * 
+     * @param path
+     *            the file or directory
+     * @return the handles, which may be empty
+     */
+    private List<BufferedAppender> getFileAppenders(Path path) {
+	Path root = path.toAbsolutePath().normalize();
+	List<BufferedAppender> found = new ArrayList<BufferedAppender>();
+	synchronized (fileAppenders) {
+	    for (Map.Entry<String, BufferedAppender> entry : fileAppenders
+		    .entrySet()) {
+		if (Paths.get(entry.getKey()).startsWith(root))
+		    found.add(entry.getValue());
+	    }
+	}
+	return found;
+    }
+
+    /**
+     * Write out anything buffered for a file, or for every file below a
+     * directory, before it's copied.
+     * 
+     * @param path
+     *            the file or directory
+     */
+    private void flushFileAppenders(Path path) {
+	for (BufferedAppender appender : getFileAppenders(path)) {
+	    try {
+		appender.flush();
+	    } catch (RuntimeException e) {
+		/* the copy gets whatever made it to the file */
+	    }
+	}
+    }
+
+    /**
+     * Close the handles for a file, or for every file below a directory,
+     * before it's moved or overwritten.
+     * 
+     * @param path
+     *            the file or directory
+     */
+    private void closeFileAppenders(Path path) {
+	for (BufferedAppender appender : getFileAppenders(path)) {
+	    try {
+		appender.close();
+	    } catch (RuntimeException e) {
+		/* it's closed even if its buffer couldn't be written */
+	    }
+	}
+    }
+
+    /**
+     * Copy a file with {@link FileChannel#transferTo}, which lets the system
+     * copy the data without it passing through the program.
+     * 
+     * @param from
+     *            the file to copy
+     * @param to
+     *            the path of the copy, which is overwritten if it exists
+     */
+    private void copyFile(Path from, Path to) throws IOException {
+	/* truncating the destination would destroy the source first */
+	if (Files.exists(to) && Files.isSameFile(from, to))
+	    return;
+
+	FileChannel in = FileChannel.open(from);
+	try {
+	    FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE,
+		    StandardOpenOption.WRITE,
+		    StandardOpenOption.TRUNCATE_EXISTING);
+	    try {
+		long size = in.size();
+		long position = 0;
+		while (position < size) {
+		    long copied = in.transferTo(position, size - position, out);
+
+		    /* stop if the file got shorter while it was being copied */
+		    if (copied == 0 && position >= in.size())
+			break;
+		    position += copied;
+		}
+	    } finally {
+		out.close();
+	    }
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Walk the tree below a directory for {@link fileWalk} and
+     * {@link fileFind}.
+     * 
+     * @param root
+     *            the directory to walk, which isn't visited itself
+     * @param maxDepth
+     *            how many levels below the root to walk, or -1 for no limit.
+     *            A depth of 0 visits nothing.
+     * @param parallel
+     *            whether to list directories on several threads at once
+     * @param visitor
+     *            what to do with each file and directory
+     */
+    private void walkFiles(final Path root, int maxDepth, boolean parallel, final PathVisitor visitor) {
+	if (!Files.isDirectory(root))
+	    throw new RuntimeException(new NotDirectoryException(root
+		    .toString()));
+	if (maxDepth < 0)
+	    maxDepth = Integer.MAX_VALUE;
+
+	/* walkFileTree would visit the root itself */
+	if (maxDepth == 0)
+	    return;
+
+	if (parallel) {
+	    ForkJoinPool pool = new ForkJoinPool(FILE_WALK_THREADS);
+	    try {
+		pool.invoke(new DirectoryWalk(root, 0, maxDepth, visitor));
+	    } finally {
+		pool.shutdownNow();
+	    }
+	    return;
+	}
+
+	try {
+	    Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class),
+		    maxDepth, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path dir,
+				BasicFileAttributes attributes) {
+			    if (dir.equals(root)
+				    || visitor.visit(dir, attributes))
+				return FileVisitResult.CONTINUE;
+			    return FileVisitResult.SKIP_SUBTREE;
+			}
+
+			public FileVisitResult visitFile(Path file,
+				BasicFileAttributes attributes) {
+			    visitor.visit(file, attributes);
+			    return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file,
+				IOException e) {
+			    return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult postVisitDirectory(Path dir,
+				IOException e) {
+			    return FileVisitResult.CONTINUE;
+			}
+		    });
+	} catch (IOException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    /**
+     * Start a watch for {@link fileOnChange}, {@link dirWatch} or
+     * {@link fileWaitFor}. The directory is watched by the system if it can
+     * be, and polled otherwise.
+     * 
+     * @param root
+     *            the absolute path of the directory to watch
+     * @param recursive
+     *            whether to watch the directories below it too
+     * @param matcher
+     *            what file names have to match to be reported, or null for
+     *            every name
+     * @param listener
+     *            what to call for each change
+     * @return the watch, which has been added to fileWatches
+     */
+    private FileWatch startFileWatch(Path root, boolean recursive, PathMatcher matcher, FileChangeListener listener) {
+	FileWatch watch = new FileWatch(root, recursive, matcher, listener);
+	synchronized (fileWatches) {
+	    boolean watched = false;
+	    try {
+		watched = Files.isDirectory(root)
+			&& watchDirectories(root, recursive);
+	    } catch (IOException e) {
+		/* such as when the system is out of watches */
+	    }
+
+	    if (!watched)
+		pollFileWatch(watch);
+	    fileWatches.add(watch);
+	}
+	return watch;
+    }
+
+    /**
+     * Check a watch by polling from now on, starting the poll if it isn't
+     * running. Must be called holding fileWatches.
+     * 
+     * @param watch
+     *            the watch to poll
+     */
+    private void pollFileWatch(FileWatch watch) {
+	watch.snapshot = snapshotFiles(watch.root, watch.recursive);
+	watch.polled = true;
+	if (fileWatchPoll == null) {
+	    if (fileWatchPoller == null)
+		fileWatchPoller = newDaemonScheduler("Javauto file poller");
+	    fileWatchPoll = fileWatchPoller.scheduleWithFixedDelay(
+		    new Runnable() {
+			public void run() {
+			    pollFileWatches();
+			}
+		    }, FILE_WATCH_POLL_INTERVAL, FILE_WATCH_POLL_INTERVAL,
+		    TimeUnit.MILLISECONDS);
+	}
+    }
+
+    /**
+     * Stop polling if no watch is polled any more. Must be called holding
+     * fileWatches.
+     */
+    private void stopUnneededPoll() {
+	boolean polling = false;
+	for (FileWatch watch : fileWatches)
+	    polling |= watch.polled;
+	if (!polling && fileWatchPoll != null) {
+	    fileWatchPoll.cancel(false);
+	    fileWatchPoll = null;
+	}
+    }
+
+    /**
+     * Stop a watch, and stop watching any directories only it needed.
+     * 
+     * @param watch
+     *            the watch to stop
+     * @return false if the watch had already stopped
+     */
+    private boolean stopFileWatch(FileWatch watch) {
+	synchronized (fileWatches) {
+	    if (!fileWatches.remove(watch))
+		return false;
+	    watch.stopped.countDown();
+	    stopUnneededPoll();
+
+	    Iterator<Map.Entry<Path, WatchKey>> keys = fileWatchKeys.entrySet()
+		    .iterator();
+	    while (keys.hasNext()) {
+		Map.Entry<Path, WatchKey> key = keys.next();
+		boolean needed = false;
+		for (FileWatch other : fileWatches)
+		    needed |= !other.polled && other.covers(key.getKey());
+		if (!needed) {
+		    key.getValue().cancel();
+		    keys.remove();
+		}
+	    }
+	    return true;
+	}
+    }
+
+    /**
+     * Have the watch service watch a directory, starting the service if it
+     * hasn't been already. Must be called holding fileWatches.
+     * 
+     * @param dir
+     *            the directory to watch
+     * @param recursive
+     *            whether to watch the directories below it too
+     * @return false if the system can't watch directories itself
+     * @throws IOException
+     *             if a directory can't be watched
+     */
+    private boolean watchDirectories(Path dir, boolean recursive) throws IOException {
+	if (fileWatchUnavailable)
+	    return false;
+	if (fileWatchService == null) {
+	    final WatchService service;
+	    try {
+		service = dir.getFileSystem().newWatchService();
+	    } catch (UnsupportedOperationException e) {
+		fileWatchUnavailable = true;
+		return false;
+	    }
+
+	    /*
+	     * some systems only have the JDK's own polling service, which is
+	     * far slower to notice changes than polling here. It isn't public,
+	     * so this is only a guess from its name (sun.nio.fs.
+	     * PollingWatchService); a service it misses still works, just
+	     * slowly, and one it wrongly catches is polled here instead.
+	     */
+	    if (service.getClass().getSimpleName().startsWith("Polling")) {
+		service.close();
+		fileWatchUnavailable = true;
+		return false;
+	    }
+
+	    Thread thread = new Thread(new Runnable() {
+		public void run() {
+		    dispatchFileWatches(service);
+		}
+	    }, "Javauto file watcher");
+	    thread.setDaemon(true);
+	    thread.start();
+	    fileWatchThread = thread;
+	    fileWatchService = service;
+	}
+
+	if (!recursive) {
+	    watchDirectory(dir);
+	    return true;
+	}
+	Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+	    public FileVisitResult preVisitDirectory(Path subdir,
+		    BasicFileAttributes attributes) throws IOException {
+		watchDirectory(subdir);
+		return FileVisitResult.CONTINUE;
+	    }
+
+	    public FileVisitResult visitFileFailed(Path file, IOException e) {
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+	return true;
+    }
+
+    /**
+     * Register a single directory with the watch service, if it isn't
+     * already. Must be called holding fileWatches.
+     * 
+     * @param dir
+     *            the directory to watch
+     */
+    private void watchDirectory(Path dir) throws IOException {
+	if (!fileWatchKeys.containsKey(dir))
+	    fileWatchKeys.put(dir, dir.register(fileWatchService,
+		    StandardWatchEventKinds.ENTRY_CREATE,
+		    StandardWatchEventKinds.ENTRY_DELETE,
+		    StandardWatchEventKinds.ENTRY_MODIFY));
+    }
+
+    /**
+     * Hand the changes the watch service reports to the watches they're for,
+     * until the service is closed. This runs on its own thread.
+     * 
+     * @param service
+     *            the watch service
+     */
+    private void dispatchFileWatches(WatchService service) {
+	while (true) {
+	    WatchKey key;
+	    try {
+		key = service.take();
+	    } catch (InterruptedException e) {
+		return;
+	    } catch (ClosedWatchServiceException e) {
+		return;
+	    }
+
+	    Path dir = (Path) key.watchable();
+	    FileWatch[] watches;
+	    synchronized (fileWatches) {
+		watches = fileWatches
+			.toArray(new FileWatch[fileWatches.size()]);
+	    }
+	    for (WatchEvent<?> event : key.pollEvents()) {
+		WatchEvent.Kind<?> kind = event.kind();
+
+		/* events were lost, so anything in the directory could have */
+		if (kind == StandardWatchEventKinds.OVERFLOW) {
+		    for (FileWatch watch : watches) {
+			if (!watch.polled && watch.covers(dir))
+			    watch.fire(dir, "overflow");
+		    }
+		    continue;
+		}
+
+		Path path = dir.resolve((Path) event.context());
+		String change = "modified";
+		if (kind == StandardWatchEventKinds.ENTRY_CREATE)
+		    change = "created";
+		else if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+		    change = "deleted";
+		for (FileWatch watch : watches) {
+		    if (!watch.polled && watch.covers(dir))
+			watch.fire(path, change);
+		}
+
+		/* watch new directories, and report what's already in them */
+		if (change.equals("created")
+			&& Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+		    List<FileWatch> recursive = new ArrayList<FileWatch>();
+		    for (FileWatch watch : watches) {
+			if (!watch.polled && watch.recursive
+				&& watch.covers(path))
+			    recursive.add(watch);
+		    }
+		    if (!recursive.isEmpty())
+			watchNewDirectory(path, recursive);
+		}
+	    }
+
+	    /*
+	     * the directory is gone or can't be watched any more. A watched
+	     * subdirectory is watched again if it's recreated, but nothing
+	     * would notice the root of a watch coming back, so poll it instead
+	     */
+	    if (!key.reset()) {
+		synchronized (fileWatches) {
+		    if (fileWatchKeys.get(dir) == key)
+			fileWatchKeys.remove(dir);
+		    for (FileWatch watch : fileWatches) {
+			if (!watch.polled && watch.root.equals(dir))
+			    pollFileWatch(watch);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Watch a directory created within a recursive watch, and report anything
+     * that was created in it before it was being watched.
+     * 
+     * @param dir
+     *            the new directory
+     * @param watches
+     *            the recursive watches that cover it
+     */
+    private void watchNewDirectory(Path dir, List<FileWatch> watches) {
+	try {
+	    synchronized (fileWatches) {
+		watchDirectories(dir, true);
+	    }
+	} catch (IOException e) {
+	    return;
+	}
+	for (Path path : snapshotFiles(dir, true).keySet()) {
+	    for (FileWatch watch : watches)
+		watch.fire(path, "created");
+	}
+    }
+
+    /**
+     * Check the watches that the system can't watch by comparing what's in
+     * their directories with what was there last time. This runs on the
+     * file poller. A watch whose directory has appeared since is handed to
+     * the watch service, after one last check for what it missed.
+     */
+    private void pollFileWatches() {
+	fileWatchPollThread = Thread.currentThread();
+	List<FileWatch> polled = new ArrayList<FileWatch>();
+	synchronized (fileWatches) {
+	    for (FileWatch watch : fileWatches) {
+		if (watch.polled)
+		    polled.add(watch);
+	    }
+	}
+
+	for (FileWatch watch : polled) {
+	    if (Files.isDirectory(watch.root)) {
+		synchronized (fileWatches) {
+		    try {
+			if (fileWatches.contains(watch) && watchDirectories(
+				watch.root, watch.recursive))
+			    watch.polled = false;
+		    } catch (IOException e) {
+			/* keep polling it */
+		    }
+		}
+	    }
+
+	    Map<Path, Long> before = watch.snapshot;
+	    Map<Path, Long> after = snapshotFiles(watch.root, watch.recursive);
+	    for (Map.Entry<Path, Long> entry : after.entrySet()) {
+		Long last = before.get(entry.getKey());
+		if (last == null)
+		    watch.fire(entry.getKey(), "created");
+		else if (!last.equals(entry.getValue()))
+		    watch.fire(entry.getKey(), "modified");
+	    }
+	    for (Path path : before.keySet()) {
+		if (!after.containsKey(path))
+		    watch.fire(path, "deleted");
+	    }
+	    watch.snapshot = after;
+	}
+
+	synchronized (fileWatches) {
+	    stopUnneededPoll();
+	}
+    }
+
+    /**
+     * Note what's in a directory for a polled watch.
+     * 
+     * @param root
+     *            the directory, which may not exist
+     * @param recursive
+     *            whether to include what's in the directories below it
+     * @return the path of each file and directory with a value that changes
+     *         when its modified time or size does
+     */
+    private Map<Path, Long> snapshotFiles(final Path root, boolean recursive) {
+	final Map<Path, Long> snapshot = new HashMap<Path, Long>();
+	if (!Files.isDirectory(root))
+	    return snapshot;
+	try {
+	    Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class),
+		    recursive ? Integer.MAX_VALUE : 1,
+		    new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path dir,
+				BasicFileAttributes attributes) {
+			    if (!dir.equals(root))
+				visitFile(dir, attributes);
+			    return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFile(Path file,
+				BasicFileAttributes attributes) {
+			    snapshot.put(file, attributes.lastModifiedTime()
+				    .toMillis() * 31 + attributes.size());
+			    return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file,
+				IOException e) {
+			    return FileVisitResult.CONTINUE;
+			}
+		    });
+	} catch (IOException e) {
+	    /* it's reported as empty, like a directory that doesn't exist */
+	}
+	return snapshot;
+    }
+
+    /**
+     * Get a frame's pixels as a RasterFrame. Frames from this class already
+     * are one, any other kind is copied through its image.
+     */
+    private RasterFrame toRasterFrame(ScreenFrame frame) {
+	if (frame instanceof RasterFrame)
+	    return (RasterFrame) frame;
+	return new RasterFrame(frame.toImage(), frame.getX(), frame.getY(),
+		frame.getTime());
+    }
+
+    /**
+     * Get a matcher for pixels within a shade of a color, using the cheaper
+     * exact comparison when the shade is 0.
+     * 
+     * @throws IllegalArgumentException
+     *             if the shade isn't from 0 to 255
+     */
+    private PixelMatcher shadeMatcher(int colorInt, int shade) {
+	if (shade == 0)
+	    return new ExactMatcher(colorInt);
+	return new ShadeMatcher(colorInt, shade);
+    }
+
+    /**
+     * Get the area of the screen between two corners, including both corners.
+     * The corners can be given in any order.
+     * 
+     * @return the area as a rectangle
+     */
+    private Rectangle screenArea(int x1, int y1, int x2, int y2) {
+	return new Rectangle(Math.min(x1, x2), Math.min(y1, y2),
+		Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    /**
+     * Get the latest frame from the background capture, if it covers an area
+     * and isn't too old.
+     * 
+     * @param area
+     *            the area of the screen that will be read
+     * @return the frame, or null if there isn't a suitable one
+     */
+    private RasterFrame getCapturedFrame(Rectangle area) {
+	RasterFrame frame = capturedFrame;
+	if (frame == null
+		|| System.nanoTime() - frame.getTime() > capturedFrameMaxAge
+		|| !frame.contains(area.x, area.y)
+		|| !frame.contains(area.x + area.width - 1, area.y
+			+ area.height - 1))
+	    return null;
+	return frame;
+    }
+
+    /**
+     * Get a frame covering an area of the screen, from the background capture
+     * if it has a suitable one or from a new capture otherwise.
+     * 
+     * @param area
+     *            the area of the screen that will be read
+     * @return a frame containing the area
+     */
+    private RasterFrame grabFrame(Rectangle area) {
+	RasterFrame frame = getCapturedFrame(area);
+	if (frame != null)
+	    return frame;
+	long time = System.nanoTime();
+	return new RasterFrame(getInputBackend().createScreenCapture(area),
+		area.x, area.y, time);
+    }
+
+    /**
+     * Get a frame covering exactly an area of the screen. A frame from the
+     * background capture usually covers more than the area, so it's cut down
+     * to a region of it, which shares its pixels rather than copying them.
+     * 
+     * @param area
+     *            the area of the screen to get
+     * @return a frame of just the area
+     */
+    private RasterFrame grabRegion(Rectangle area) {
+	RasterFrame frame = grabFrame(area);
+	if (frame.getX() == area.x && frame.getY() == area.y
+		&& frame.getWidth() == area.width
+		&& frame.getHeight() == area.height)
+	    return frame;
+	return frame.region(area.x, area.y, area.x + area.width - 1, area.y
+		+ area.height - 1);
+    }
+
+    /**
+     * Find the first match in an area, in row-major order. Every xStep-th
+     * position of every yStep-th row is checked, counting from the top left
+     * of the area. Large searches are split into stripes of rows which are
+     * searched in parallel.
+     * 
+     * @param scanner
+     *            finds matches within a row
+     * @param area
+     *            the positions to check
+     * @return the coordinates of the match as [x, y], or [-1, -1] if there
+     *         isn't one
+     */
+    private int[] searchFrame(RowScanner scanner, Rectangle area, int xStep, int yStep) {
+	int left = area.x;
+	int right = area.x + area.width - 1;
+	int rows = (area.height + yStep - 1) / yStep;
+
+	/* small searches aren't worth handing out to other threads */
+	long work = (long) rows * area.width / xStep * scanner.getCost();
+	if (work < PARALLEL_SEARCH_MIN_PIXELS) {
+	    for (int row = 0; row < rows; row++) {
+		int y = area.y + row * yStep;
+		int x = scanner.findInRow(y, left, right, xStep);
+		if (x != -1)
+		    return new int[] { x, y };
+	    }
+	    return new int[] { -1, -1 };
+	}
+
+	/* otherwise the first row with a match wins */
+	RowSearch search = new RowSearch(scanner, area, xStep, yStep, 0, rows,
+		new AtomicInteger(rows), new int[rows]);
+	ForkJoinPool.commonPool().invoke(search);
+	int row = search.firstRow.get();
+	if (row == rows)
+	    return new int[] { -1, -1 };
+	return new int[] { search.matchX[row], area.y + row * yStep };
+    }
+
+    /**
+     * Find the first matching pixel on the screen, reading it as set by
+     * {@link setSearchCapture}. In strips, each strip is a whole number of
+     * yStep rows tall so that the rows searched are the same as they would be
+     * for the whole area.
+     * 
+     * @param area
+     *            the area of the screen to search
+     * @return the coordinates of the match as [x, y], or [-1, -1] if there
+     *         isn't one
+     */
+    private int[] searchScreen(PixelMatcher matcher, Rectangle area, int xStep, int yStep) {
+	RasterFrame screen = getCapturedFrame(area);
+	String order = searchOrder;
+	if (!order.equals("row-major")) {
+	    if (screen == null)
+		screen = grabFrame(area);
+	    if (order.equals("column-major"))
+		return searchColumns(new PixelScan(screen, matcher), area,
+			xStep, yStep);
+	    return searchRings(screen, matcher, area, area.x
+		    + (area.width - 1) / 2 / xStep * xStep, area.y
+		    + (area.height - 1) / 2 / yStep * yStep, xStep, yStep);
+	}
+	if (screen == null && searchCapture.equals("strips")) {
+	    int rows = Math.max(SEARCH_STRIP_PIXELS / area.width / yStep, 1)
+		    * yStep;
+	    int bottom = area.y + area.height;
+	    for (int top = area.y; top < bottom; top += rows) {
+		Rectangle strip = new Rectangle(area.x, top, area.width,
+			Math.min(rows, bottom - top));
+		RasterFrame frame = new RasterFrame(getInputBackend()
+			.createScreenCapture(strip), strip.x, strip.y,
+			System.nanoTime());
+		int[] match = searchFrame(new PixelScan(frame, matcher), strip,
+			xStep, yStep);
+		if (match[0] != -1)
+		    return match;
+	    }
+	    return new int[] { -1, -1 };
+	}
+
+	if (screen == null)
+	    screen = grabFrame(area);
+	return searchFrame(new PixelScan(screen, matcher), area, xStep, yStep);
+    }
+
+    /**
+     * Find the first match in an area in column-major order, checking every
+     * xStep-th column and every yStep-th row counting from the top left. The
+     * area is still read a row at a time, which is much quicker than going
+     * down each column, but once a match is found the rest of the rows are
+     * only searched to its left.
+     * 
+     * @return the coordinates of the match as [x, y], or [-1, -1] if there
+     *         isn't one
+     */
+    private int[] searchColumns(RowScanner scanner, Rectangle area, int xStep, int yStep) {
+	int[] match = { -1, -1 };
+	int right = area.x + area.width - 1;
+	for (int y = area.y; y < area.y + area.height && right >= area.x; y += yStep) {
+	    int x = scanner.findInRow(y, area.x, right, xStep);
+	    if (x != -1) {
+		match = new int[] { x, y };
+		right = x - 1;
+	    }
+	}
+	return match;
+    }
+
+    /**
+     * Find the match nearest to a point by searching in square rings around
+     * it, one ring at a time. Only positions that are a whole number of steps
+     * from the point are checked. If a ring has more than one match the one
+     * closest in a straight line wins, then the first in row-major order.
+     * 
+     * @param area
+     *            the positions that may be checked, which must be inside the
+     *            frame
+     * @param x
+     *            X value of the point to search around
+     * @param y
+     *            Y value of the point to search around
+     * @return the coordinates of the match as [x, y], or [-1, -1] if there
+     *         isn't one
+     */
+    private int[] searchRings(RasterFrame frame, PixelMatcher matcher, Rectangle area, int x, int y, int xStep, int yStep) {
+	int left = area.x;
+	int top = area.y;
+	int right = area.x + area.width - 1;
+	int bottom = area.y + area.height - 1;
+
+	/* the furthest ring that has any positions in the area */
+	int rings = Math.max(Math.max((x - left) / xStep, (right - x) / xStep),
+		Math.max((y - top) / yStep, (bottom - y) / yStep));
+
+	for (int ring = 0; ring <= rings; ring++) {
+	    int[] match = { -1, -1 };
+	    long nearest = Long.MAX_VALUE;
+	    for (int j = -ring; j <= ring; j++) {
+		int py = y + j * yStep;
+		if (py < top || py > bottom)
+		    continue;
+		int base = frame.offset + (py - frame.y) * frame.stride
+			- frame.x;
+
+		/*
+		 * the top and bottom rows of the ring are whole, the rows
+		 * between only have their two ends
+		 */
+		int iStep = j == -ring || j == ring ? 1 : Math.max(2 * ring, 1);
+		for (int i = -ring; i <= ring; i += iStep) {
+		    int px = x + i * xStep;
+		    if (px < left || px > right
+			    || !matcher.matches(frame.pixels[base + px]))
+			continue;
+		    long distance = (long) (i * xStep) * (i * xStep)
+			    + (long) (j * yStep) * (j * yStep);
+		    if (distance < nearest) {
+			nearest = distance;
+			match = new int[] { px, py };
+		    }
+		}
+	    }
+	    if (match[0] != -1)
+		return match;
+	}
+	return new int[] { -1, -1 };
+    }
+
+    /**
+     * Get a matcher for a set of colors, reusing a recent one if it was made
+     * for the same colors. Small sets are kept in a hash table, larger ones in
+     * a bitmap of every color.
+     * 
+     * @param colors
+     *            the colors to match, the alpha is ignored
+     * @return the matcher
+     */
+    private ColorSetMatcher getColorSetMatcher(int[] colors) {
+	synchronized (colorSetMatchers) {
+	    for (int i = 0; i < colorSetMatchers.size(); i++) {
+		ColorSetMatcher matcher = colorSetMatchers.get(i);
+		if (Arrays.equals(matcher.colors, colors)) {
+		    colorSetMatchers.remove(i);
+		    colorSetMatchers.add(0, matcher);
+		    return matcher;
+		}
+	    }
+	}
+
+	/* build it outside the lock, the bitmap takes a while to clear */
+	ColorSetMatcher matcher;
+	if (colors.length <= COLOR_TABLE_MAX_COLORS)
+	    matcher = new ColorTableMatcher(colors);
+	else
+	    matcher = new ColorBitmapMatcher(colors);
+	synchronized (colorSetMatchers) {
+	    colorSetMatchers.add(0, matcher);
+	    if (colorSetMatchers.size() > COLOR_SET_CACHE_SIZE)
+		colorSetMatchers.remove(colorSetMatchers.size() - 1);
+	}
+	return matcher;
+    }
+
+    /**
+     * Get an image for {@link imageSearch}, decoding it only if it isn't in the
+     * cache or its file has changed since it was decoded.
+     * 
+     * @param path
+     *            the image file
+     * @return the decoded image
+     */
+    private ImageTemplate getImageTemplate(String path) throws IOException {
+	File file = new File(path).getAbsoluteFile();
+	String key = file.getPath();
+	long modified = file.lastModified();
+	synchronized (imageTemplateCache) {
+	    ImageTemplate template = imageTemplateCache.get(key);
+	    if (template != null && template.modified == modified)
+		return template;
+	}
+
+	/* decode outside the lock so other searches aren't held up */
+	BufferedImage image = readImage(file);
+	ImageTemplate template = new ImageTemplate(image, modified);
+
+	synchronized (imageTemplateCache) {
+	    imageTemplateCache.put(key, template);
+
+	    /* forget the least recently used image if there's too many */
+	    if (imageTemplateCache.size() > IMAGE_TEMPLATE_CACHE_SIZE) {
+		Iterator<String> eldest = imageTemplateCache.keySet()
+			.iterator();
+		eldest.next();
+		eldest.remove();
+	    }
+	}
+	return template;
+    }
+
+    /**
+     * Read an image file, decoding QOI files ourselves and anything else with
+     * ImageIO.
+     * 
+     * @param file
+     *            the image file
+     * @return the image
+     */
+    private BufferedImage readImage(File file) throws IOException {
+	if (file.getName().toLowerCase().endsWith(".qoi"))
+	    return decodeQoi(Files.readAllBytes(file.toPath()));
+	BufferedImage image = ImageIO.read(file);
+	if (image == null)
+	    throw new IOException("Cannot read image " + file);
+	return image;
+    }
+
+    /**
+     * Get the image format a file should be written in from its extension.
+     * 
+     * @param fileName
+     *            the file to write
+     * @return "png", "bmp", "qoi" or "raw", or null if the extension isn't one
+     *         of them
+     */
+    private String imageFormat(String fileName) {
+	String format = fileName.substring(fileName.lastIndexOf('.') + 1)
+		.toLowerCase();
+	if (Arrays.asList("png", "bmp", "qoi", "raw").contains(format))
+	    return format;
+	return null;
+    }
+
+    /**
+     * Get the encoder used by {@link screenShotAsync}, starting it the first
+     * time it's needed. It runs on a single thread that lets the program
+     * exit once every screenshot has been written and it's been idle for a
+     * second.
+     * 
+     * @return the encoder
+     */
+    private ThreadPoolExecutor getScreenShotEncoder() {
+	ThreadPoolExecutor encoder = screenShotEncoder;
+	if (encoder == null) {
+	    synchronized (screenShotEncoderLock) {
+		encoder = screenShotEncoder;
+		if (encoder == null) {
+		    encoder = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+			    new ArrayBlockingQueue<Runnable>(
+				    SCREENSHOT_QUEUE_SIZE),
+			    new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+				    return new Thread(r,
+					    "Javauto screenshot encoder");
+				}
+			    }, new ThreadPoolExecutor.CallerRunsPolicy());
+		    encoder.allowCoreThreadTimeOut(true);
+		    screenShotEncoder = encoder;
+		}
+	    }
+	}
+	return encoder;
+    }
+
+    /**
+     * Encode a frame and write it to a file.
+     * 
+     * @param format
+     *            "png", "bmp", "qoi" or "raw"
+     * @param compression
+     *            the PNG compression level (0-9), or -1 for the default
+     */
+    private void writeScreenShot(RasterFrame frame, File file, String format, int compression) throws IOException {
+	if (format.equals("qoi") || format.equals("raw")) {
+	    OutputStream out = new FileOutputStream(file);
+	    try {
+		if (format.equals("qoi"))
+		    encodeQoi(frame, out);
+		else
+		    encodeRaw(frame, out);
+	    } finally {
+		out.close();
+	    }
+	    return;
+	}
+
+	BufferedImage image = frame.toImage();
+	ImageWriter writer = ImageIO.getImageWritersByFormatName(format)
+		.next();
+	ImageWriteParam param = writer.getDefaultWriteParam();
+	if (format.equals("png") && compression >= 0
+		&& param.canWriteCompressed()) {
+	    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+	    param.setCompressionQuality(1 - compression / 9f);
+	}
+
+	/* an image output stream doesn't cut short an existing file */
+	file.delete();
+	ImageOutputStream out = ImageIO.createImageOutputStream(file);
+	try {
+	    writer.setOutput(out);
+	    writer.write(null, new IIOImage(image, null, null), param);
+	} finally {
+	    out.close();
+	    writer.dispose();
+	}
+    }
+
+    /**
+     * Write a frame's pixels as 3 bytes each (red, green, blue), row by row.
+     */
+    private void encodeRaw(RasterFrame frame, OutputStream out) throws IOException {
+	byte[] row = new byte[frame.getWidth() * 3];
+	for (int y = 0; y < frame.getHeight(); y++) {
+	    int start = frame.offset + y * frame.stride;
+	    for (int x = 0; x < frame.getWidth(); x++) {
+		int pixel = frame.pixels[start + x];
+		row[x * 3] = (byte) (pixel >> 16);
+		row[x * 3 + 1] = (byte) (pixel >> 8);
+		row[x * 3 + 2] = (byte) pixel;
+	    }
+	    out.write(row);
+	}
+    }
+
+    /**
+     * Write a frame in the QOI ("Quite OK Image") format. Each pixel is
+     * written as the shortest of: a run of the last pixel, a reference to one
+     * of the 64 most recently seen colors, a small difference from the last
+     * pixel, or the full color. See https://qoiformat.org for the details.
+     */
+    private void encodeQoi(RasterFrame frame, OutputStream out) throws IOException {
+	int width = frame.getWidth();
+	int height = frame.getHeight();
+	byte[] buffer = new byte[1 << 16];
+	int length = 0;
+
+	/* header: magic, width, height, 3 channels, sRGB */
+	byte[] header = { 'q', 'o', 'i', 'f', (byte) (width >> 24),
+		(byte) (width >> 16), (byte) (width >> 8), (byte) width,
+		(byte) (height >> 24), (byte) (height >> 16),
+		(byte) (height >> 8), (byte) height, 3, 0 };
+	out.write(header);
+
+	int[] seen = new int[64];
+	int previous = 0xFF000000;
+	int run = 0;
+	for (int y = 0; y < height; y++) {
+	    int start = frame.offset + y * frame.stride;
+	    for (int x = 0; x < width; x++) {
+		int pixel = 0xFF000000 | frame.pixels[start + x];
+
+		/* make sure there's room for the longest op and a run */
+		if (length > buffer.length - 8) {
+		    out.write(buffer, 0, length);
+		    length = 0;
+		}
+
+		if (pixel == previous) {
+		    run++;
+		    if (run == 62) {
+			buffer[length++] = (byte) (0xC0 | (run - 1));
+			run = 0;
+		    }
+		    continue;
+		}
+		if (run > 0) {
+		    buffer[length++] = (byte) (0xC0 | (run - 1));
+		    run = 0;
+		}
+
+		int red = (pixel >> 16) & 0xFF;
+		int green = (pixel >> 8) & 0xFF;
+		int blue = pixel & 0xFF;
+		int index = (red * 3 + green * 5 + blue * 7 + 255 * 11) & 63;
+		if (seen[index] == pixel) {
+		    buffer[length++] = (byte) index;
+		} else {
+		    seen[index] = pixel;
+
+		    /* differences wrap around, as they're stored in bytes */
+		    int dr = (byte) (red - ((previous >> 16) & 0xFF));
+		    int dg = (byte) (green - ((previous >> 8) & 0xFF));
+		    int db = (byte) (blue - (previous & 0xFF));
+		    if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2
+			    && db <= 1) {
+			buffer[length++] = (byte) (0x40 | (dr + 2) << 4
+				| (dg + 2) << 2 | (db + 2));
+		    } else if (dg >= -32 && dg <= 31 && dr - dg >= -8
+			    && dr - dg <= 7 && db - dg >= -8 && db - dg <= 7) {
+			buffer[length++] = (byte) (0x80 | (dg + 32));
+			buffer[length++] = (byte) ((dr - dg + 8) << 4 | (db
+				- dg + 8));
+		    } else {
+			buffer[length++] = (byte) 0xFE;
+			buffer[length++] = (byte) red;
+			buffer[length++] = (byte) green;
+			buffer[length++] = (byte) blue;
+		    }
+		}
+		previous = pixel;
+	    }
+	}
+	if (run > 0)
+	    buffer[length++] = (byte) (0xC0 | (run - 1));
+
+	/* end marker */
+	out.write(buffer, 0, length);
+	out.write(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 });
+    }
+
+    /**
+     * Decode an image in the QOI format, see {@link encodeQoi}.
+     * 
+     * @param data
+     *            the contents of a QOI file
+     * @return the image
+     */
+    private BufferedImage decodeQoi(byte[] data) throws IOException {
+	if (data.length < 14 || data[0] != 'q' || data[1] != 'o'
+		|| data[2] != 'i' || data[3] != 'f')
+	    throw new IOException("Not a QOI image");
+	ByteBuffer header = ByteBuffer.wrap(data, 4, 10);
+	int width = header.getInt();
+	int height = header.getInt();
+	boolean alpha = header.get() == 4;
+
+	int[] pixels = new int[width * height];
+	int[] seen = new int[64];
+	int pixel = 0xFF000000;
+	int position = 14;
+	int run = 0;
+	for (int i = 0; i < pixels.length; i++) {
+	    if (run > 0) {
+		run--;
+	    } else if (position < data.length) {
+		int op = data[position++] & 0xFF;
+		if (op == 0xFE) {
+		    pixel = (pixel & 0xFF000000)
+			    | (data[position] & 0xFF) << 16
+			    | (data[position + 1] & 0xFF) << 8
+			    | (data[position + 2] & 0xFF);
+		    position += 3;
+		} else if (op == 0xFF) {
+		    pixel = (data[position + 3] & 0xFF) << 24
+			    | (data[position] & 0xFF) << 16
+			    | (data[position + 1] & 0xFF) << 8
+			    | (data[position + 2] & 0xFF);
+		    position += 4;
+		} else if ((op & 0xC0) == 0x00) {
+		    pixel = seen[op];
+		} else if ((op & 0xC0) == 0x40) {
+		    pixel = addToChannels(pixel, ((op >> 4) & 3) - 2,
+			    ((op >> 2) & 3) - 2, (op & 3) - 2);
+		} else if ((op & 0xC0) == 0x80) {
+		    int dg = (op & 0x3F) - 32;
+		    int next = data[position++] & 0xFF;
+		    pixel = addToChannels(pixel, dg - 8 + (next >> 4), dg, dg
+			    - 8 + (next & 0x0F));
+		} else {
+		    run = op & 0x3F;
+		}
+	    }
+	    int a = pixel >>> 24;
+	    int r = (pixel >> 16) & 0xFF;
+	    int g = (pixel >> 8) & 0xFF;
+	    int b = pixel & 0xFF;
+	    seen[(r * 3 + g * 5 + b * 7 + a * 11) & 63] = pixel;
+	    pixels[i] = pixel;
+	}
+
+	BufferedImage image = new BufferedImage(width, height,
+		alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+	image.setRGB(0, 0, width, height, pixels, 0, width);
+	return image;
+    }
+
+    /**
+     * Add to each of the red, green and blue values of a color, wrapping
+     * around within each byte.
+     */
+    private int addToChannels(int pixel, int red, int green, int blue) {
+	return (pixel & 0xFF000000)
+		| ((((pixel >> 16) & 0xFF) + red) & 0xFF) << 16
+		| ((((pixel >> 8) & 0xFF) + green) & 0xFF) << 8
+		| (((pixel & 0xFF) + blue) & 0xFF);
+    }
+
+    /**
+     * Hand a wait to the poller and block until it finishes or times out.
+     * 
+     * @param wait
+     *            the wait, with its target set
+     * @param frame
+     *            a frame covering the wait's area to check it against first
+     * @param timeoutMs
+     *            the timeout, or 0 or less to wait for as long as it takes
+     * @return whether the wait finished before the timeout
+     */
+    private boolean waitForScreen(ScreenWait wait, RasterFrame frame, int timeoutMs) {
+	/* there's no need to involve the poller if it's already done */
+	if (wait.poll(frame) == ScreenWait.DONE)
+	    return true;
+
+	synchronized (screenWaits) {
+	    screenWaits.add(wait);
+	    screenWaitInterval = SCREEN_WAIT_MIN_INTERVAL;
+	    if (!screenWaitScheduled) {
+		screenWaitScheduled = true;
+		scheduleScreenWaits(SCREEN_WAIT_MIN_INTERVAL);
+	    }
+	}
+
+	try {
+	    if (timeoutMs <= 0) {
+		wait.done.await();
+		return true;
+	    }
+	    return wait.done.await(timeoutMs, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return false;
+	} finally {
+	    synchronized (screenWaits) {
+		screenWaits.remove(wait);
+	    }
+	}
+    }
+
+    /**
+     * Schedule the next check of the waits in screenWaits on the poller.
+     * 
+     * @param delay
+     *            the time in milliseconds until the check
+     */
+    private void scheduleScreenWaits(int delay) {
+	getPoller().schedule(new Runnable() {
+	    public void run() {
+		checkScreenWaits();
+	    }
+	}, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check every wait in screenWaits against one capture covering all of
+     * them, then schedule the next check if any are left.
+     */
+    private void checkScreenWaits() {
+	ScreenWait[] waits;
+	synchronized (screenWaits) {
+	    if (screenWaits.isEmpty()) {
+		screenWaitScheduled = false;
+		return;
+	    }
+	    waits = screenWaits.toArray(new ScreenWait[screenWaits.size()]);
+	}
+
+	/* capture the smallest area that covers every wait */
+	Rectangle area = new Rectangle(waits[0].area);
+	for (ScreenWait wait : waits)
+	    area.add(wait.area);
+
+	boolean changed = false;
+	try {
+	    RasterFrame frame = grabFrame(area);
+	    for (ScreenWait wait : waits) {
+		int result = wait.poll(frame);
+		if (result == ScreenWait.DONE)
+		    wait.done.countDown();
+		else if (result == ScreenWait.CHANGED)
+		    changed = true;
+	    }
+	} catch (RuntimeException e) {
+	    /* if the screen can't be read just try again later */
+	}
+
+	synchronized (screenWaits) {
+	    for (ScreenWait wait : waits) {
+		if (wait.done.getCount() == 0)
+		    screenWaits.remove(wait);
+	    }
+
+	    /* check again soon if something changed, and back off if not */
+	    if (changed)
+		screenWaitInterval = SCREEN_WAIT_MIN_INTERVAL;
+	    else
+		screenWaitInterval = Math.min(screenWaitInterval * 2,
+			SCREEN_WAIT_MAX_INTERVAL);
+	    if (screenWaits.isEmpty())
+		screenWaitScheduled = false;
+	    else
+		scheduleScreenWaits(screenWaitInterval);
+	}
+    }
+
+    /**
+     * Get the backend used for mouse, keyboard and screen access, creating the
+     * default Robot based backend the first time it's needed.
+     * 
+     * @return the current input backend
+     */
+    private InputBackend getInputBackend() {
+	InputBackend backend = inputBackend;
+	if (backend == null) {
+	    synchronized (inputBackendLock) {
+		backend = inputBackend;
+		if (backend == null) {
+		    backend = new RobotInputBackend();
+		    inputBackend = backend;
+		}
+	    }
+	}
+	return backend;
+    }
+
+    /**
+     * Terminates the currently running Java Virtual Machine. The argument
+     * serves as a status code. This code can be used by Windows or the DOS
+     * variable %ERRORLEVEL%. On *nix to check the exit code we can simply print
+     * the $? special variable in bash. This variable will print the exit code
+     * of the last run command.
+     * 
+     * @param code
+     *            - Integer that sets the script's return code. Exit code is
+     *            <ul>
+     *            <li>0 when execution went fine</li>
+     *            <li>1, -1, whatever != 0 when some error occurred</li>
+     *            </ul>
+     * 
+     * @return
+     */
+    public void exit(final int code) {
+	System.exit(code);
+    }
+
+    /**
+     * Terminates the currently running Java Virtual Machine with exit code 0
+     * (Scripts normally set a exit status code of 0 if the script executed
+     * properly).
+     */
+    public void exit() {
+	System.exit(0);
+    }
+
+    /**
+     * Returns a fixed-size list backed by the specified Array.
+     * 
+     * @param array
+     *            - This is the Array of strings by which the list will be
+     *            backed.
+     * @return This method returns a list view of the specified Array.
+     */
+    public List<String> arrayAsList(final String[] array) {
+	return Arrays.asList(array);
+    }
+
+    /**
+     * This method searches the specified Array of bytes for the specified value
+     * using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(byte[] a, byte key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of chars for the specified value
+     * using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(char[] a, char key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of doubles for the specified
+     * value using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(double[] a, double key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of floats for the specified
+     * value using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(float[] a, float key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of ints for the specified value
+     * using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(int[] a, int key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of longs for the specified value
+     * using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(long[] a, long key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method searches the specified Array of shorts for the specified
+     * value using the binary search algorithm.
+     * 
+     * @param a
+     *            - This is the Array to be searched.
+     * @param key
+     *            - This is the value to be searched for.
+     * @return The index of the search key, if it is contained in the Array,
+     *         else it returns (-(insertion point) - 1). The insertion point is
+     *         the point at which the key would be inserted into the Array: the
+     *         index of the first element greater than the key, or a.length if
+     *         all elements in the Array are less than the specified key.
+     */
+    public int arrayBinarySearch(short[] a, short key) {
+	Arrays.sort(a);
+	return Arrays.binarySearch(a, key);
+    }
+
+    /**
+     * This method copies the specified Array, truncating or padding with false
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original Array and the copy, the two Arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain false. Such indices will exist if
+     * and only if the specified length is greater than that of the original
+     * Array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return A copy of the original array, truncated or padded with false
+     *         elements to obtain the specified length.
+     */
+    public boolean[] arrayCopyOf(boolean[] original, int newLength) {
+	boolean[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain (byte) 0.Such indices will exist
+     * if and only if the specified length is greater than that of the original
+     * array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return A copy of the original array, truncated or padded with false
+     *         elements to obtain the specified length.
+     */
+    public byte[] arrayCopyOf(byte[] original, int newLength) {
+	byte[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with null
+     * characters (if necessary) so the copy has the specified length. For all
+     * indices that are valid in both the original array and the copy, the two
+     * arrays will contain identical values. For any indices that are valid in
+     * the copy but not the original, the copy will contain '\\u000'.Such
+     * indices will exist if and only if the specified length is greater than
+     * that of the original array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return A copy of the original array, truncated or padded with null
+     *         characters to obtain the specified length.
+     */
+    public char[] arrayCopyOf(char[] original, int newLength) {
+	char[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain 0d. Such indices will exist if
+     * and only if the specified length is greater than that of the original
+     * array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return A copy of the original Array, truncated or padded with zeros to
+     *         obtain the specified length.
+     */
+    public double[] arrayCopyOf(double[] original, int newLength) {
+	double[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain 0f.Such indices will exist if and
+     * only if the specified length is greater than that of the original array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return
+     */
+    public float[] arrayCopyOf(float[] original, int newLength) {
+	float[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain 0.Such indices will exist if and
+     * only if the specified length is greater than that of the original array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return
+     */
+    public int[] arrayCopyOf(int[] original, int newLength) {
+	int[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain 0L. Such indices will exist if
+     * and only if the specified length is greater than that of the original
+     * array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return
+     */
+    public long[] arrayCopyOf(long[] original, int newLength) {
+	long[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method copies the specified array, truncating or padding with zeros
+     * (if necessary) so the copy has the specified length. For all indices that
+     * are valid in both the original array and the copy, the two arrays will
+     * contain identical values. For any indices that are valid in the copy but
+     * not the original, the copy will contain (short)0. Such indices will exist
+     * if and only if the specified length is greater than that of the original
+     * array.
+     * 
+     * @param original
+     *            - The Array to be copied.
+     * @param newLength
+     *            - The length of the copy to be returned.
+     * @return A copy of the original array, truncated or padded with zeros to
+     *         obtain the specified length.
+     */
+    public short[] arrayCopyOf(short[] original, int newLength) {
+	short[] arr;
+	try {
+	    arr = Arrays.copyOf(original, newLength);
+	    return arr;
+	} catch (NegativeArraySizeException e) {
+	    throw new RuntimeException("The new length cannot be negative."
+		    + e.getMessage());
+	}
+    }
+
+    /**
+     * This method sorts the specified array of bytes into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public byte[] arraySort(byte[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of chars into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public char[] arraySort(char[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of doubles into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public double[] arraySort(double[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of floats into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public float[] arraySort(float[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of ints into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public int[] arraySort(int[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of longs into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public long[] arraySort(long[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method sorts the specified array of shorts into ascending numerical
+     * order.
+     * 
+     * @param a
+     *            - The array to be sorted.
+     * @return The sorted array.
+     */
+    public short[] arraySort(short[] a) {
+	Arrays.sort(a);
+	return a;
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified boolean array. The string representation consists of a list of
+     * the array's elements, enclosed in square brackets ("[]"). Adjacent
+     * elements are separated by the characters ", " (a comma followed by a
+     * space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(boolean[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified byte array. The string representation consists of a list of the
+     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
+     * are separated by the characters ", " (a comma followed by a space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(byte[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified char array. The string representation consists of a list of the
+     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
+     * are separated by the characters ", " (a comma followed by a space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(char[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified double array. The string representation consists of a list of
+     * the array's elements, enclosed in square brackets ("[]"). Adjacent
+     * elements are separated by the characters ", " (a comma followed by a
+     * space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(double[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified float array. The string representation consists of a list of
+     * the array's elements, enclosed in square brackets ("[]"). Adjacent
+     * elements are separated by the characters ", " (a comma followed by a
+     * space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(float[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified int array. The string representation consists of a list of the
+     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
+     * are separated by the characters ", " (a comma followed by a space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(int[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified long array. The string representation consists of a list of the
+     * array's elements, enclosed in square brackets ("[]"). Adjacent elements
+     * are separated by the characters ", " (a comma followed by a space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(long[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified short array. The string representation consists of a list of
+     * the array's elements, enclosed in square brackets ("[]"). Adjacent
+     * elements are separated by the characters ", " (a comma followed by a
+     * space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(short[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns a string representation of the contents of the
+     * specified String array. The string representation consists of a list of
+     * the array's elements, enclosed in square brackets ("[]"). Adjacent
+     * elements are separated by the characters ", " (a comma followed by a
+     * space).
+     *
+     * @param a
+     *            - The array whose string representation to return.
+     * @return A string representation of a.
+     */
+    public String arrayToString(String[] a) {
+	return Arrays.toString(a);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of booleans are
+     * equal to one another.Two arrays are equal if they contain the same
+     * elements in the same order.Two array references are considered equal if
+     * both are null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(boolean[] a, boolean[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of bytes are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order. Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(byte[] a, byte[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of chars are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(char[] a, char[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of doubles are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(double[] a, double[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of floats are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(float[] a, float[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of ints are equal to
+     * one another.Two arrays are equal if they contain the same elements in the
+     * same order.Two array references are considered equal if both are null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(int[] a, int[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of longs are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(long[] a, long[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of shorts are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
+     *
+     * @param a
+     *            - The array to be tested for equality.
+     * @param a2
+     *            - The other array to be tested for equality.
+     * @return true if the two arrays are equal, otherwise returns false
+     */
+    public boolean arrayEquals(short[] a, short[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * This method returns true if the two specified arrays of strings are equal
+     * to one another.Two arrays are equal if they contain the same elements in
+     * the same order.Two array references are considered equal if both are
+     * null.
      *
      * @param a
      *            - The array to be tested for equality.
@@ -3837,221 +6872,2259 @@ public class Javauto {
      *            - The other array to be tested for equality.
      * @return true if the two arrays are equal, otherwise returns false
      */
-    public boolean arrayEquals(char[] a, char[] a2) {
-	return Arrays.equals(a, a2);
+    public boolean arrayEquals(String[] a, String[] a2) {
+	return Arrays.equals(a, a2);
+    }
+
+    /**
+     * Retrieves an environment variable.
+     *
+     * @param var
+     *            - Name of the environment variable to get such as "JAVA_HOME"
+     *            or "PATH".
+     * @return The value of the environment variable specified by variable, or
+     *         an empty String if the environment variable is not found.
+     */
+    public String getEnv(String var) {
+	String value = "";
+	if (!var.isEmpty()) {
+	    value = System.getenv(var);
+	}
+	return value;
+    }
+
+    /**
+     * Retrieve all environment variables along with their values.
+     *
+     * @return All environment variables along with their values. For example:
+     *         "Var1=Value, Var2=Value"
+     */
+    public String getEnv() {
+	Map<String, String> env = System.getenv();
+	return Arrays.toString(env.entrySet().toArray());
+    }
+
+    /**
+     * Sends the contents of an array of strings to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(String[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of bytes to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(byte[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of booleans to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(boolean[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of chars to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(char[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of doubles to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(double[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of floats to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(float[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of ints to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(int[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of longs to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(long[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Sends the contents of an array of shorts to the clipboard.
+     *
+     * @param a
+     *            - Array to copy to clipboard.
+     */
+    public void arrayToClip(short[] a) {
+	clipboardPut(arrayToString(a));
+    }
+
+    /**
+     * Generates mouse and keyboard events and reads the screen on behalf of
+     * Javauto. The method names match those of {@link Robot}. A custom
+     * backend can be installed with {@link setInputBackend}.
+     */
+    public interface InputBackend {
+	void mouseMove(int x, int y);
+
+	/**
+	 * @return where the mouse cursor is now
+	 */
+	Point getMousePosition();
+
+	void mousePress(int buttons);
+
+	void mouseRelease(int buttons);
+
+	void mouseWheel(int wheelAmt);
+
+	void keyPress(int keycode);
+
+	void keyRelease(int keycode);
+
+	/**
+	 * @return the color of the pixel as an integer, like
+	 *         {@link Color#getRGB}
+	 */
+	int getPixelColor(int x, int y);
+
+	BufferedImage createScreenCapture(Rectangle screenRect);
+
+	/**
+	 * @return the number of mouse and keyboard events issued so far
+	 */
+	long getEventCount();
+
+	/**
+	 * @return the number of screen captures and pixel reads issued so far
+	 */
+	long getCaptureCount();
+    }
+
+    /**
+     * The default {@link InputBackend}. A {@link Robot} is created for each
+     * screen the first time that screen is used and is then kept, since
+     * creating one is far more expensive than the events it sends. Robot's
+     * methods are synchronized so the robots can be shared between threads.
+     */
+    private class RobotInputBackend implements InputBackend {
+	/* the robot for each screen, created on first use */
+	private final Map<GraphicsDevice, Robot> robots;
+
+	/* every screen along with its bounds on the virtual desktop */
+	private final GraphicsDevice defaultScreen;
+	private final GraphicsDevice[] screens;
+	private final Rectangle[] screenBounds;
+
+	/* how many events and captures have been issued */
+	private final AtomicLong eventCount = new AtomicLong();
+	private final AtomicLong captureCount = new AtomicLong();
+
+	RobotInputBackend() {
+	    robots = new HashMap<GraphicsDevice, Robot>();
+	    GraphicsEnvironment env = GraphicsEnvironment
+		    .getLocalGraphicsEnvironment();
+	    defaultScreen = env.getDefaultScreenDevice();
+	    screens = env.getScreenDevices();
+	    screenBounds = new Rectangle[screens.length];
+	    for (int i = 0; i < screens.length; i++)
+		screenBounds[i] = screens[i].getDefaultConfiguration()
+			.getBounds();
+	}
+
+	/**
+	 * Get the robot for a screen, creating it if this is the first time
+	 * the screen has been used.
+	 */
+	private Robot getRobot(GraphicsDevice screen) {
+	    synchronized (robots) {
+		Robot r = robots.get(screen);
+		if (r == null) {
+		    try {
+			r = new Robot(screen);
+		    } catch (AWTException e) {
+			throw new RuntimeException(e);
+		    }
+		    robots.put(screen, r);
+		}
+		return r;
+	    }
+	}
+
+	/**
+	 * Get the robot for the screen containing a point, falling back on
+	 * the default screen.
+	 */
+	private Robot getRobot(int x, int y) {
+	    for (int i = 0; i < screens.length; i++) {
+		if (screenBounds[i].contains(x, y))
+		    return getRobot(screens[i]);
+	    }
+	    return getRobot(defaultScreen);
+	}
+
+	public void mouseMove(int x, int y) {
+	    getRobot(x, y).mouseMove(x, y);
+	    eventCount.incrementAndGet();
+	}
+
+	public Point getMousePosition() {
+	    return MouseInfo.getPointerInfo().getLocation();
+	}
+
+	public void mousePress(int buttons) {
+	    getRobot(defaultScreen).mousePress(buttons);
+	    eventCount.incrementAndGet();
+	}
+
+	public void mouseRelease(int buttons) {
+	    getRobot(defaultScreen).mouseRelease(buttons);
+	    eventCount.incrementAndGet();
+	}
+
+	public void mouseWheel(int wheelAmt) {
+	    getRobot(defaultScreen).mouseWheel(wheelAmt);
+	    eventCount.incrementAndGet();
+	}
+
+	public void keyPress(int keycode) {
+	    getRobot(defaultScreen).keyPress(keycode);
+	    eventCount.incrementAndGet();
+	}
+
+	public void keyRelease(int keycode) {
+	    getRobot(defaultScreen).keyRelease(keycode);
+	    eventCount.incrementAndGet();
+	}
+
+	public int getPixelColor(int x, int y) {
+	    captureCount.incrementAndGet();
+	    return getRobot(x, y).getPixelColor(x, y).getRGB();
+	}
+
+	public BufferedImage createScreenCapture(Rectangle screenRect) {
+	    captureCount.incrementAndGet();
+	    return getRobot(screenRect.x, screenRect.y).createScreenCapture(
+		    screenRect);
+	}
+
+	public long getEventCount() {
+	    return eventCount.get();
+	}
+
+	public long getCaptureCount() {
+	    return captureCount.get();
+	}
+    }
+
+    /**
+     * A capture of part of the screen that doesn't change once it's taken.
+     * Coordinates are screen coordinates, so the frame's top left pixel is at
+     * ({@link #getX}, {@link #getY}) rather than (0, 0).
+     */
+    public interface ScreenFrame {
+	/**
+	 * @return the X value of the frame's top left pixel on the screen
+	 */
+	int getX();
+
+	/**
+	 * @return the Y value of the frame's top left pixel on the screen
+	 */
+	int getY();
+
+	int getWidth();
+
+	int getHeight();
+
+	/**
+	 * @return the value of {@link System#nanoTime} when the frame was taken
+	 */
+	long getTime();
+
+	/**
+	 * @return whether the frame contains the pixel at (x, y)
+	 */
+	boolean contains(int x, int y);
+
+	/**
+	 * @return the color of the pixel at (x, y) as an integer, like
+	 *         {@link pixelGetColor}
+	 */
+	int getColor(int x, int y);
+
+	/**
+	 * @param points
+	 *            the pixels to read, each as {x, y}
+	 * @return the color of each pixel, in the same order as points
+	 */
+	int[] getColors(int[][] points);
+
+	/**
+	 * Get part of the frame as a frame of its own. No pixels are copied.
+	 * 
+	 * @return the area between the two corners, including both corners
+	 */
+	ScreenFrame region(int x1, int y1, int x2, int y2);
+
+	/**
+	 * @return a checksum of every pixel in the frame, see
+	 *         {@link pixelChecksum}
+	 */
+	long getChecksum();
+
+	/**
+	 * @return a copy of the frame as an image
+	 */
+	BufferedImage toImage();
+    }
+
+    /**
+     * A {@link ScreenFrame} that reads its pixels straight from an int array,
+     * taken from the capture's raster where possible so that nothing is
+     * copied.
+     */
+    private class RasterFrame implements ScreenFrame {
+	/* the size of the square tiles the frame is hashed in */
+	static final int TILE_SIZE = 32;
+
+	/* the pixels, as 0xRRGGBB, with each row stride ints after the last */
+	private final int[] pixels;
+	private final int offset;
+	private final int stride;
+
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int height;
+	private final long time;
+
+	/* the hash of each tile, in row-major order, once it's been needed */
+	private volatile long[] tileHashes;
+
+	/**
+	 * Create a frame from a screen capture. The capture must not be changed
+	 * afterwards, since its pixels may be shared.
+	 */
+	RasterFrame(BufferedImage image, int x, int y, long time) {
+	    this.x = x;
+	    this.y = y;
+	    this.width = image.getWidth();
+	    this.height = image.getHeight();
+	    this.time = time;
+	    this.offset = 0;
+	    this.stride = width;
+
+	    /* use the capture's own pixel array if it's laid out like ours */
+	    if ((image.getType() == BufferedImage.TYPE_INT_RGB || image
+		    .getType() == BufferedImage.TYPE_INT_ARGB)
+		    && image.getRaster().getParent() == null
+		    && image.getRaster().getDataBuffer() instanceof DataBufferInt)
+		this.pixels = ((DataBufferInt) image.getRaster()
+			.getDataBuffer()).getData();
+	    else
+		this.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * Create a frame that shares another frame's pixels.
+	 */
+	RasterFrame(int[] pixels, int offset, int stride, int x, int y,
+		int width, int height, long time) {
+	    this.pixels = pixels;
+	    this.offset = offset;
+	    this.stride = stride;
+	    this.x = x;
+	    this.y = y;
+	    this.width = width;
+	    this.height = height;
+	    this.time = time;
+	}
+
+	public int getX() {
+	    return x;
+	}
+
+	public int getY() {
+	    return y;
+	}
+
+	public int getWidth() {
+	    return width;
+	}
+
+	public int getHeight() {
+	    return height;
+	}
+
+	public long getTime() {
+	    return time;
+	}
+
+	public boolean contains(int x, int y) {
+	    return x >= this.x && y >= this.y && x < this.x + width
+		    && y < this.y + height;
+	}
+
+	public int getColor(int x, int y) {
+	    if (!contains(x, y))
+		throw new IllegalArgumentException("Pixel " + x + "," + y
+			+ " is outside the frame");
+	    return 0xFF000000 | pixels[offset + (y - this.y) * stride
+		    + (x - this.x)];
+	}
+
+	/**
+	 * Find the first matching pixel in a row, checking every xStep-th pixel
+	 * from left up to and including right.
+	 * 
+	 * @return the X value of the pixel, or -1 if there isn't one
+	 */
+	int findInRow(PixelMatcher matcher, int y, int left, int right,
+		int xStep) {
+	    return matcher.findInRow(pixels, offset + (y - this.y) * stride
+		    - this.x, left, right, xStep);
+	}
+
+	public int[] getColors(int[][] points) {
+	    int[] colors = new int[points.length];
+	    for (int i = 0; i < points.length; i++)
+		colors[i] = getColor(points[i][0], points[i][1]);
+	    return colors;
+	}
+
+	public RasterFrame region(int x1, int y1, int x2, int y2) {
+	    int left = Math.min(x1, x2);
+	    int top = Math.min(y1, y2);
+	    int right = Math.max(x1, x2);
+	    int bottom = Math.max(y1, y2);
+	    if (!contains(left, top) || !contains(right, bottom))
+		throw new IllegalArgumentException("Region " + x1 + "," + y1
+			+ " to " + x2 + "," + y2 + " is outside the frame");
+	    return new RasterFrame(pixels, offset + (top - y) * stride
+		    + (left - x), stride, left, top, right - left + 1, bottom
+		    - top + 1, time);
+	}
+
+	public long getChecksum() {
+	    long checksum = 0xCBF29CE484222325L ^ ((long) width << 32 | height);
+	    for (long hash : getTileHashes())
+		checksum = (checksum ^ hash) * 0x100000001B3L;
+	    return checksum;
+	}
+
+	/**
+	 * @return the number of tiles across the frame
+	 */
+	int getTileColumns() {
+	    return (width + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	/**
+	 * Get the hash of each tile of the frame, hashing the tiles in parallel
+	 * the first time.
+	 * 
+	 * @return the hashes in row-major order
+	 */
+	long[] getTileHashes() {
+	    long[] hashes = tileHashes;
+	    if (hashes == null) {
+		final int columns = getTileColumns();
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		hashes = new long[columns * rows];
+		Arrays.parallelSetAll(hashes, new IntToLongFunction() {
+		    public long applyAsLong(int tile) {
+			return hashTile(tile % columns * TILE_SIZE, tile
+				/ columns * TILE_SIZE);
+		    }
+		});
+		tileHashes = hashes;
+	    }
+	    return hashes;
+	}
+
+	/**
+	 * Hash the pixels of the tile whose top left is at (left, top) within
+	 * the frame, using FNV-1a.
+	 */
+	private long hashTile(int left, int top) {
+	    int right = Math.min(left + TILE_SIZE, width);
+	    int bottom = Math.min(top + TILE_SIZE, height);
+	    long hash = 0xCBF29CE484222325L;
+	    for (int y = top; y < bottom; y++) {
+		int start = offset + y * stride;
+		for (int i = start + left; i < start + right; i++)
+		    hash = (hash ^ (pixels[i] & 0xFFFFFF)) * 0x100000001B3L;
+	    }
+	    return hash;
+	}
+
+	public BufferedImage toImage() {
+	    BufferedImage image = new BufferedImage(width, height,
+		    BufferedImage.TYPE_INT_RGB);
+	    image.setRGB(0, 0, width, height, pixels, offset, stride);
+	    return image;
+	}
+    }
+
+    /**
+     * Writes the recording file for {@link recordStart}. The file starts with
+     * a header:
+     * 
+     * <pre>
+     * "JREC", version, x, y, width, height, tile size, keyframe interval
+     * </pre>
+     * 
+     * as ints, followed by one record per frame:
+     * 
+     * <pre>
+     * keyframe (byte), time in ms (long), data length, deflated length, data
+     * </pre>
+     * 
+     * The data lists the tiles that changed since the last frame (every tile
+     * for a keyframe), each as its tile number then its pixels xor-ed with the
+     * last frame's, row by row. Since unchanged pixels xor to zero the pixels
+     * are stored as runs: a count of zeros, a count of other values, then
+     * those values as 3 bytes each. Counts are written 7 bits to a byte, low
+     * bits first, with the top bit set on all but the last byte. The data is
+     * then deflated. When the recording is stopped the offset of each record
+     * is written after the last one, followed by the offset of that index
+     * (long), the number of frames and "JIDX".
+     */
+    private class RecordingWriter {
+	private final DataOutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final int keyframeInterval;
+
+	/* where the next record will go, and where each one went */
+	private long position;
+	private long[] offsets = new long[1024];
+	private int frames;
+
+	/* the last frame written and when the first was taken */
+	private RasterFrame last;
+	private long start;
+
+	/* reused between frames */
+	private byte[] data = new byte[1 << 16];
+	private byte[] packed = new byte[1 << 16];
+	private final int[] tile = new int[RasterFrame.TILE_SIZE
+		* RasterFrame.TILE_SIZE];
+	private int length;
+
+	RecordingWriter(File file, Rectangle area, int keyframeInterval)
+		throws IOException {
+	    this.keyframeInterval = keyframeInterval;
+	    out = new DataOutputStream(new BufferedOutputStream(
+		    new FileOutputStream(file), 1 << 16));
+	    out.writeBytes("JREC");
+	    out.writeInt(1);
+	    out.writeInt(area.x);
+	    out.writeInt(area.y);
+	    out.writeInt(area.width);
+	    out.writeInt(area.height);
+	    out.writeInt(RasterFrame.TILE_SIZE);
+	    out.writeInt(keyframeInterval);
+	    position = 32;
+	}
+
+	/**
+	 * Add a frame to the recording. Frames must all be the same size.
+	 */
+	void write(RasterFrame frame) throws IOException {
+	    boolean key = frames % keyframeInterval == 0;
+	    if (frames == 0)
+		start = frame.getTime();
+
+	    /* only tiles whose hash changed need comparing */
+	    long[] hashes = frame.getTileHashes();
+	    long[] lastHashes = key ? null : last.getTileHashes();
+	    length = 0;
+	    for (int t = 0; t < hashes.length; t++) {
+		if (key || hashes[t] != lastHashes[t])
+		    writeTile(frame, key ? null : last, t);
+	    }
+
+	    int packedLength = 0;
+	    if (length > 0) {
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		while (!deflater.finished()) {
+		    if (packedLength == packed.length)
+			packed = Arrays.copyOf(packed, packed.length * 2);
+		    packedLength += deflater.deflate(packed, packedLength,
+			    packed.length - packedLength);
+		}
+	    }
+
+	    if (frames == offsets.length)
+		offsets = Arrays.copyOf(offsets, frames * 2);
+	    offsets[frames++] = position;
+	    out.writeBoolean(key);
+	    out.writeLong((frame.getTime() - start) / 1000000);
+	    out.writeInt(length);
+	    out.writeInt(packedLength);
+	    out.write(packed, 0, packedLength);
+	    out.flush();
+	    position += 17 + packedLength;
+	    last = frame;
+	}
+
+	/**
+	 * Add a tile's pixels xor-ed with the previous frame's (or as they are
+	 * if there isn't one) to the frame's data.
+	 */
+	private void writeTile(RasterFrame frame, RasterFrame previous, int t) {
+	    int size = RasterFrame.TILE_SIZE;
+	    int left = t % frame.getTileColumns() * size;
+	    int top = t / frame.getTileColumns() * size;
+	    int right = Math.min(left + size, frame.getWidth());
+	    int bottom = Math.min(top + size, frame.getHeight());
+
+	    int count = 0;
+	    for (int y = top; y < bottom; y++) {
+		int i = frame.offset + y * frame.stride;
+		int j = previous == null ? 0 : previous.offset + y
+			* previous.stride;
+		for (int x = left; x < right; x++) {
+		    int pixel = frame.pixels[i + x];
+		    if (previous != null)
+			pixel ^= previous.pixels[j + x];
+		    tile[count++] = pixel & 0xFFFFFF;
+		}
+	    }
+
+	    /* the most a tile can take is a run pair and 3 bytes per pixel */
+	    if (length + 10 + count * 9 > data.length)
+		data = Arrays.copyOf(data, Math.max(data.length * 2, length
+			+ 10 + count * 9));
+	    writeCount(t);
+	    int i = 0;
+	    while (i < count) {
+		int zeros = i;
+		while (zeros < count && tile[zeros] == 0)
+		    zeros++;
+		int values = zeros;
+		while (values < count && tile[values] != 0)
+		    values++;
+		writeCount(zeros - i);
+		writeCount(values - zeros);
+		for (int v = zeros; v < values; v++) {
+		    data[length++] = (byte) (tile[v] >> 16);
+		    data[length++] = (byte) (tile[v] >> 8);
+		    data[length++] = (byte) tile[v];
+		}
+		i = values;
+	    }
+	}
+
+	private void writeCount(int count) {
+	    while (count >= 0x80) {
+		data[length++] = (byte) (count | 0x80);
+		count >>>= 7;
+	    }
+	    data[length++] = (byte) count;
+	}
+
+	/**
+	 * Write the index and close the file.
+	 */
+	void close() throws IOException {
+	    try {
+		for (int i = 0; i < frames; i++)
+		    out.writeLong(offsets[i]);
+		out.writeLong(position);
+		out.writeInt(frames);
+		out.writeBytes("JIDX");
+	    } finally {
+		out.close();
+		deflater.end();
+	    }
+	}
+    }
+
+    /**
+     * Reads the recording files written by {@link RecordingWriter}.
+     */
+    private class RecordingReader {
+	private final RandomAccessFile file;
+	private final int x, y, width, height, tileSize, keyframeInterval;
+
+	/* the offset of each frame's record */
+	private long[] offsets;
+	private int frames;
+
+	/* the data of the tile being read and where we are in it */
+	private byte[] data;
+	private int position;
+
+	RecordingReader(File path) throws IOException {
+	    file = new RandomAccessFile(path, "r");
+	    try {
+		byte[] magic = new byte[4];
+		file.readFully(magic);
+		if (!new String(magic, "US-ASCII").equals("JREC")
+			|| file.readInt() != 1)
+		    throw new IOException(path + " is not a recording");
+		x = file.readInt();
+		y = file.readInt();
+		width = file.readInt();
+		height = file.readInt();
+		tileSize = file.readInt();
+		keyframeInterval = file.readInt();
+		readIndex();
+	    } catch (IOException e) {
+		file.close();
+		throw e;
+	    }
+	}
+
+	/**
+	 * Read the index from the end of the file, or if the recording wasn't
+	 * stopped find the records by reading through the file.
+	 */
+	private void readIndex() throws IOException {
+	    long end = file.length();
+	    if (end >= 32 + 16) {
+		file.seek(end - 16);
+		long index = file.readLong();
+		int count = file.readInt();
+		byte[] magic = new byte[4];
+		file.readFully(magic);
+		if (new String(magic, "US-ASCII").equals("JIDX")
+			&& index + count * 8L == end - 16) {
+		    file.seek(index);
+		    offsets = new long[count];
+		    for (int i = 0; i < count; i++)
+			offsets[i] = file.readLong();
+		    frames = count;
+		    return;
+		}
+	    }
+
+	    /* stop at the first record that was only partly written */
+	    offsets = new long[1024];
+	    long offset = 32;
+	    while (offset + 17 <= end) {
+		file.seek(offset + 13);
+		long next = offset + 17 + file.readInt();
+		if (next > end)
+		    break;
+		if (frames == offsets.length)
+		    offsets = Arrays.copyOf(offsets, frames * 2);
+		offsets[frames++] = offset;
+		offset = next;
+	    }
+	}
+
+	int getFrameCount() {
+	    return frames;
+	}
+
+	/**
+	 * Rebuild a frame by starting from the keyframe before it and applying
+	 * each frame's changes in turn.
+	 * 
+	 * @return the frame, whose time is in milliseconds since the recording
+	 *         started
+	 */
+	RasterFrame getFrame(int index) throws IOException {
+	    if (index < 0 || index >= frames)
+		throw new IllegalArgumentException("Frame " + index
+			+ " is not in the recording, which has " + frames
+			+ " frames");
+	    int[] pixels = new int[width * height];
+	    long time = 0;
+	    Inflater inflater = new Inflater();
+	    try {
+		for (int i = index / keyframeInterval * keyframeInterval; i <= index; i++) {
+		    file.seek(offsets[i] + 1);
+		    time = file.readLong();
+		    data = new byte[file.readInt()];
+		    byte[] packed = new byte[file.readInt()];
+		    file.readFully(packed);
+		    if (data.length == 0)
+			continue;
+		    inflater.reset();
+		    inflater.setInput(packed);
+		    try {
+			inflater.inflate(data);
+		    } catch (DataFormatException e) {
+			throw new IOException("Frame " + i + " is corrupt", e);
+		    }
+		    applyChanges(pixels);
+		}
+	    } finally {
+		inflater.end();
+	    }
+	    return new RasterFrame(pixels, 0, width, x, y, width, height, time);
+	}
+
+	/**
+	 * Xor the tiles in data into the pixels.
+	 */
+	private void applyChanges(int[] pixels) {
+	    int columns = (width + tileSize - 1) / tileSize;
+	    position = 0;
+	    while (position < data.length) {
+		int t = readCount();
+		int left = t % columns * tileSize;
+		int top = t / columns * tileSize;
+		int tileWidth = Math.min(left + tileSize, width) - left;
+		int count = tileWidth * (Math.min(top + tileSize, height) - top);
+
+		int i = 0;
+		while (i < count) {
+		    i += readCount();
+		    int values = readCount();
+		    for (int v = 0; v < values; v++, i++) {
+			int p = (top + i / tileWidth) * width + left + i
+				% tileWidth;
+			pixels[p] ^= (data[position] & 0xFF) << 16
+				| (data[position + 1] & 0xFF) << 8
+				| (data[position + 2] & 0xFF);
+			position += 3;
+		    }
+		}
+	    }
+	}
+
+	private int readCount() {
+	    int count = 0;
+	    for (int shift = 0;; shift += 7) {
+		int b = data[position++];
+		count |= (b & 0x7F) << shift;
+		if (b >= 0)
+		    return count;
+	    }
+	}
+
+	void close() throws IOException {
+	    file.close();
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of doubles are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Decides whether a pixel is one that a search is looking for.
      */
-    public boolean arrayEquals(double[] a, double[] a2) {
-	return Arrays.equals(a, a2);
+    private interface PixelMatcher {
+	/**
+	 * @param pixel
+	 *            the pixel's color as 0xRRGGBB, the top byte is ignored
+	 */
+	boolean matches(int pixel);
+
+	/**
+	 * Find the first matching pixel in a row, checking every xStep-th
+	 * pixel from left up to and including right. Each matcher has its own
+	 * copy of the loop, so the check for each pixel is a direct call that
+	 * can be inlined rather than one through this interface.
+	 * 
+	 * @param row
+	 *            the index in pixels of the row's pixel at X value 0
+	 * @return the X value of the pixel, or -1 if there isn't one
+	 */
+	int findInRow(int[] pixels, int row, int left, int right, int xStep);
+    }
+
+    /**
+     * Matches pixels within a shade of a color. Each channel's bounds are
+     * worked out up front, and are checked by or-ing the differences, which
+     * are only all non-negative when every channel is in bounds. Red is
+     * checked on its own first, since most pixels on a screen are rejected by
+     * it and a branch that's nearly always taken costs next to nothing.
+     */
+    private class ShadeMatcher implements PixelMatcher {
+	private final int redLow, redHigh;
+	private final int greenLow, greenHigh;
+	private final int blueLow, blueHigh;
+
+	ShadeMatcher(int colorInt, int shade) {
+	    if (shade < 0 || shade > 255)
+		throw new IllegalArgumentException(
+			"Shade must be from 0 to 255, not " + shade);
+	    int red = (colorInt >> 16) & 0xFF;
+	    int green = (colorInt >> 8) & 0xFF;
+	    int blue = colorInt & 0xFF;
+	    redLow = Math.max(red - shade, 0);
+	    redHigh = Math.min(red + shade, 255);
+	    greenLow = Math.max(green - shade, 0);
+	    greenHigh = Math.min(green + shade, 255);
+	    blueLow = Math.max(blue - shade, 0);
+	    blueHigh = Math.min(blue + shade, 255);
+	}
+
+	public boolean matches(int pixel) {
+	    int red = (pixel >> 16) & 0xFF;
+	    if (((red - redLow) | (redHigh - red)) < 0)
+		return false;
+	    int green = (pixel >> 8) & 0xFF;
+	    int blue = pixel & 0xFF;
+	    int bounds = (green - greenLow) | (greenHigh - green)
+		    | (blue - blueLow) | (blueHigh - blue);
+	    return bounds >= 0;
+	}
+
+	public int findInRow(int[] pixels, int row, int left, int right,
+		int xStep) {
+	    for (int x = left; x <= right; x += xStep) {
+		if (matches(pixels[row + x]))
+		    return x;
+	    }
+	    return -1;
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of floats are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Matches pixels that are exactly one color, which is what a shade of 0
+     * asks for. Comparing the whole color is cheaper than checking each
+     * channel's bounds.
      */
-    public boolean arrayEquals(float[] a, float[] a2) {
-	return Arrays.equals(a, a2);
+    private class ExactMatcher implements PixelMatcher {
+	private final int rgb;
+
+	ExactMatcher(int colorInt) {
+	    rgb = colorInt & 0xFFFFFF;
+	}
+
+	public boolean matches(int pixel) {
+	    return (pixel & 0xFFFFFF) == rgb;
+	}
+
+	public int findInRow(int[] pixels, int row, int left, int right,
+		int xStep) {
+	    for (int x = left; x <= right; x += xStep) {
+		if (matches(pixels[row + x]))
+		    return x;
+	    }
+	    return -1;
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of ints are equal to
-     * one another.Two arrays are equal if they contain the same elements in the
-     * same order.Two array references are considered equal if both are null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Matches pixels that are any of a set of colors, see
+     * {@link getColorSetMatcher}.
      */
-    public boolean arrayEquals(int[] a, int[] a2) {
-	return Arrays.equals(a, a2);
+    private abstract class ColorSetMatcher implements PixelMatcher {
+	/* the colors the matcher was made for */
+	final int[] colors;
+
+	ColorSetMatcher(int[] colors) {
+	    this.colors = colors.clone();
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of longs are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
+     * Matches pixels that are any of a small set of colors. The colors are
+     * kept in an open addressing hash table at least four times the size of
+     * the set, so nearly every pixel that isn't in the set lands on an empty
+     * slot and is rejected after one read. The table is small enough to stay
+     * in the cache.
+     */
+    private class ColorTableMatcher extends ColorSetMatcher {
+	/* each 0xRRGGBB color at its hash or the next free slot after it */
+	private final int[] table;
+	private final int mask;
+	private final int shift;
+
+	ColorTableMatcher(int[] colors) {
+	    super(colors);
+	    int bits = Math.max(4,
+		    32 - Integer.numberOfLeadingZeros(colors.length * 4));
+	    table = new int[1 << bits];
+	    mask = table.length - 1;
+	    shift = 32 - bits;
+
+	    /* no 0xRRGGBB color is -1, so it marks an empty slot */
+	    Arrays.fill(table, -1);
+	    for (int color : colors) {
+		int rgb = color & 0xFFFFFF;
+		int i = (rgb * 0x9E3779B9) >>> shift;
+		while (table[i] != -1 && table[i] != rgb)
+		    i = (i + 1) & mask;
+		table[i] = rgb;
+	    }
+	}
+
+	public boolean matches(int pixel) {
+	    int rgb = pixel & 0xFFFFFF;
+	    for (int i = (rgb * 0x9E3779B9) >>> shift;; i = (i + 1) & mask) {
+		int entry = table[i];
+		if (entry == rgb)
+		    return true;
+		if (entry == -1)
+		    return false;
+	    }
+	}
+
+	public int findInRow(int[] pixels, int row, int left, int right,
+		int xStep) {
+	    for (int x = left; x <= right; x += xStep) {
+		if (matches(pixels[row + x]))
+		    return x;
+	    }
+	    return -1;
+	}
+    }
+
+    /**
+     * Matches pixels that are any of a large set of colors. Membership is a
+     * lookup in a bitmap with one bit for each of the 2^24 colors, so checking
+     * a pixel costs the same however many colors are in the set.
      */
-    public boolean arrayEquals(long[] a, long[] a2) {
-	return Arrays.equals(a, a2);
+    private class ColorBitmapMatcher extends ColorSetMatcher {
+	/* one bit for each 0xRRGGBB color, set if it's in the set */
+	private final long[] bits = new long[1 << 18];
+
+	ColorBitmapMatcher(int[] colors) {
+	    super(colors);
+	    for (int color : colors) {
+		int rgb = color & 0xFFFFFF;
+		bits[rgb >>> 6] |= 1L << rgb;
+	    }
+	}
+
+	public boolean matches(int pixel) {
+	    int rgb = pixel & 0xFFFFFF;
+	    return (bits[rgb >>> 6] & (1L << rgb)) != 0;
+	}
+
+	public int findInRow(int[] pixels, int row, int left, int right,
+		int xStep) {
+	    for (int x = left; x <= right; x += xStep) {
+		if (matches(pixels[row + x]))
+		    return x;
+	    }
+	    return -1;
+	}
+    }
+
+    /**
+     * Where each color is in a snapshot of the screen, built by
+     * {@link screenIndex}. Positions are screen coordinates and are found in
+     * row-major order, like {@link pixelSearch}.
+     */
+    public interface ColorIndex {
+	/**
+	 * @return the snapshot the index was built from
+	 */
+	ScreenFrame getFrame();
+
+	/**
+	 * @return how many different colors there are in the snapshot
+	 */
+	int getColorCount();
+
+	/**
+	 * @param color
+	 *            the color to look for, the alpha is ignored
+	 * @return how many pixels are the color
+	 */
+	int count(int color);
+
+	/**
+	 * Find the first pixel that is a color.
+	 * 
+	 * @param color
+	 *            the color to look for, the alpha is ignored
+	 * @return the coordinates as [x, y], or [-1, -1] if no pixel is the
+	 *         color
+	 */
+	int[] find(int color);
+
+	/**
+	 * Find the first pixel that is a color within part of the snapshot.
+	 * 
+	 * @param color
+	 *            the color to look for, the alpha is ignored
+	 * @return the coordinates as [x, y], or [-1, -1] if no pixel in the
+	 *         area is the color
+	 */
+	int[] find(int color, int x1, int y1, int x2, int y2);
+
+	/**
+	 * Find every pixel that is a color.
+	 * 
+	 * @param color
+	 *            the color to look for, the alpha is ignored
+	 * @return the coordinates of each pixel as [x, y]
+	 */
+	int[][] findAll(int color);
+    }
+
+    /**
+     * A {@link ColorIndex} that groups the position of every pixel by color
+     * in one array, with a {@link ColorTable} giving where each color's group
+     * starts and how long it is. It's built in two parallel passes over
+     * chunks of rows: the first counts each chunk's colors, which tells each
+     * chunk where to write its positions in each color's group, and the second
+     * writes them. Since the chunks are in order, so is each group.
+     */
+    private class PixelIndex implements ColorIndex {
+	/* about how many pixels each chunk of rows holds */
+	static final int CHUNK_PIXELS = 1 << 16;
+
+	private final RasterFrame frame;
+	private final long maxAge;
+	private final ColorTable table;
+
+	/* where each slot of the table's group starts in positions */
+	private final int[] starts;
+
+	/* each pixel's (y * width + x) within the frame, grouped by color */
+	private final int[] positions;
+
+	PixelIndex(final RasterFrame frame, long maxAge) {
+	    this.frame = frame;
+	    this.maxAge = maxAge;
+	    final int width = frame.getWidth();
+	    final int height = frame.getHeight();
+	    final int rows = Math.max(CHUNK_PIXELS / width, 1);
+	    final int chunks = (height + rows - 1) / rows;
+
+	    /* count the colors of each chunk */
+	    final ColorTable[] counts = new ColorTable[chunks];
+	    Arrays.parallelSetAll(counts, new IntFunction<ColorTable>() {
+		public ColorTable apply(int chunk) {
+		    ColorTable counted = new ColorTable();
+		    int last = -1;
+		    int slot = -1;
+		    int bottom = Math.min(chunk * rows + rows, height);
+		    for (int y = chunk * rows; y < bottom; y++) {
+			int start = frame.offset + y * frame.stride;
+			for (int i = start; i < start + width; i++) {
+			    int rgb = frame.pixels[i] & 0xFFFFFF;
+			    if (rgb != last) {
+				slot = counted.add(rgb);
+				last = rgb;
+			    }
+			    counted.counts[slot]++;
+			}
+		    }
+		    return counted;
+		}
+	    });
+
+	    /* total them up and lay out each color's group */
+	    table = new ColorTable();
+	    for (ColorTable counted : counts) {
+		for (int s = 0; s < counted.colors.length; s++) {
+		    if (counted.colors[s] != -1) {
+			int slot = table.add(counted.colors[s]);
+			table.counts[slot] += counted.counts[s];
+		    }
+		}
+	    }
+	    starts = new int[table.colors.length];
+	    int total = 0;
+	    for (int s = 0; s < starts.length; s++) {
+		starts[s] = total;
+		total += table.counts[s];
+	    }
+
+	    /* find where each chunk starts writing within each group */
+	    int[] next = starts.clone();
+	    final int[][] cursors = new int[chunks][];
+	    for (int chunk = 0; chunk < chunks; chunk++) {
+		ColorTable counted = counts[chunk];
+		cursors[chunk] = new int[counted.colors.length];
+		for (int s = 0; s < counted.colors.length; s++) {
+		    if (counted.colors[s] != -1) {
+			int slot = table.find(counted.colors[s]);
+			cursors[chunk][s] = next[slot];
+			next[slot] += counted.counts[s];
+		    }
+		}
+	    }
+
+	    /* then write the positions */
+	    positions = new int[width * height];
+	    IntStream.range(0, chunks).parallel().forEach(new IntConsumer() {
+		public void accept(int chunk) {
+		    ColorTable counted = counts[chunk];
+		    int[] cursor = cursors[chunk];
+		    int last = -1;
+		    int slot = -1;
+		    int bottom = Math.min(chunk * rows + rows, height);
+		    for (int y = chunk * rows; y < bottom; y++) {
+			int start = frame.offset + y * frame.stride;
+			for (int x = 0; x < width; x++) {
+			    int rgb = frame.pixels[start + x] & 0xFFFFFF;
+			    if (rgb != last) {
+				slot = counted.find(rgb);
+				last = rgb;
+			    }
+			    positions[cursor[slot]++] = y * width + x;
+			}
+		    }
+		}
+	    });
+	}
+
+	/**
+	 * @return true if the index is fresh and the area is inside it
+	 */
+	boolean covers(Rectangle area) {
+	    return System.nanoTime() - frame.getTime() <= maxAge
+		    && frame.contains(area.x, area.y)
+		    && frame.contains(area.x + area.width - 1, area.y
+			    + area.height - 1);
+	}
+
+	public ScreenFrame getFrame() {
+	    return frame;
+	}
+
+	public int getColorCount() {
+	    return table.size;
+	}
+
+	public int count(int color) {
+	    int slot = table.find(color & 0xFFFFFF);
+	    return slot == -1 ? 0 : table.counts[slot];
+	}
+
+	public int[] find(int color) {
+	    int slot = table.find(color & 0xFFFFFF);
+	    if (slot == -1)
+		return new int[] { -1, -1 };
+	    return toPoint(positions[starts[slot]]);
+	}
+
+	public int[] find(int color, int x1, int y1, int x2, int y2) {
+	    int left = Math.min(x1, x2) - frame.getX();
+	    int right = Math.max(x1, x2) - frame.getX();
+	    int top = Math.min(y1, y2) - frame.getY();
+	    int bottom = Math.max(y1, y2) - frame.getY();
+	    int slot = table.find(color & 0xFFFFFF);
+	    if (slot == -1)
+		return new int[] { -1, -1 };
+
+	    /* skip the pixels above the area, then go through the rest */
+	    int width = frame.getWidth();
+	    int end = starts[slot] + table.counts[slot];
+	    int i = Arrays.binarySearch(positions, starts[slot], end, top
+		    * width + left);
+	    for (i = i < 0 ? -i - 1 : i; i < end; i++) {
+		int y = positions[i] / width;
+		int x = positions[i] % width;
+		if (y > bottom)
+		    break;
+		if (x >= left && x <= right)
+		    return toPoint(positions[i]);
+	    }
+	    return new int[] { -1, -1 };
+	}
+
+	public int[][] findAll(int color) {
+	    int slot = table.find(color & 0xFFFFFF);
+	    if (slot == -1)
+		return new int[0][];
+	    int[][] points = new int[table.counts[slot]][];
+	    for (int i = 0; i < points.length; i++)
+		points[i] = toPoint(positions[starts[slot] + i]);
+	    return points;
+	}
+
+	private int[] toPoint(int position) {
+	    return new int[] { frame.getX() + position % frame.getWidth(),
+		    frame.getY() + position / frame.getWidth() };
+	}
+    }
+
+    /**
+     * An open addressing hash table from 0xRRGGBB colors to counts, with
+     * linear probing. The table grows to keep at most half its slots full.
+     */
+    private class ColorTable {
+	/* the color in each slot, or -1 if the slot is empty */
+	int[] colors;
+	int[] counts;
+	int size;
+	private int shift;
+
+	ColorTable() {
+	    colors = new int[1 << 10];
+	    counts = new int[1 << 10];
+	    Arrays.fill(colors, -1);
+	    shift = 32 - 10;
+	}
+
+	/**
+	 * @return the slot holding a color, or -1 if it isn't in the table
+	 */
+	int find(int rgb) {
+	    int mask = colors.length - 1;
+	    for (int slot = rgb * 0x9E3779B9 >>> shift;; slot = slot + 1
+		    & mask) {
+		if (colors[slot] == rgb)
+		    return slot;
+		if (colors[slot] == -1)
+		    return -1;
+	    }
+	}
+
+	/**
+	 * Add a color with a count of 0 if it isn't already in the table.
+	 * Adding a color can move the others to different slots.
+	 * 
+	 * @return the slot holding the color
+	 */
+	int add(int rgb) {
+	    int mask = colors.length - 1;
+	    int slot = rgb * 0x9E3779B9 >>> shift;
+	    while (colors[slot] != -1) {
+		if (colors[slot] == rgb)
+		    return slot;
+		slot = slot + 1 & mask;
+	    }
+	    if ((size + 1) * 2 > colors.length) {
+		grow();
+		return add(rgb);
+	    }
+	    colors[slot] = rgb;
+	    size++;
+	    return slot;
+	}
+
+	private void grow() {
+	    int[] oldColors = colors;
+	    int[] oldCounts = counts;
+	    colors = new int[oldColors.length * 2];
+	    counts = new int[oldColors.length * 2];
+	    Arrays.fill(colors, -1);
+	    shift--;
+	    size = 0;
+	    for (int s = 0; s < oldColors.length; s++) {
+		if (oldColors[s] != -1) {
+		    int slot = add(oldColors[s]);
+		    counts[slot] = oldCounts[s];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Finds matches within a row of positions for {@link searchFrame}.
+     */
+    private interface RowScanner {
+	/**
+	 * Find the first match in a row, checking every xStep-th position from
+	 * left up to and including right.
+	 * 
+	 * @return the X value of the match, or -1 if there isn't one
+	 */
+	int findInRow(int y, int left, int right, int xStep);
+
+	/**
+	 * @return roughly how many pixels are read to check one position
+	 */
+	int getCost();
+    }
+
+    /**
+     * Scans a frame for single pixels that a {@link PixelMatcher} accepts.
+     */
+    private class PixelScan implements RowScanner {
+	private final RasterFrame frame;
+	private final PixelMatcher matcher;
+
+	PixelScan(RasterFrame frame, PixelMatcher matcher) {
+	    this.frame = frame;
+	    this.matcher = matcher;
+	}
+
+	public int findInRow(int y, int left, int right, int xStep) {
+	    return frame.findInRow(matcher, y, left, right, xStep);
+	}
+
+	public int getCost() {
+	    return 1;
+	}
+    }
+
+    /**
+     * An image decoded for {@link imageSearch}. Its opaque pixels are kept as
+     * a list of points ordered coarse to fine: first every 8th pixel of every
+     * 8th row, then the pixels added by halving that spacing, and so on down
+     * to every pixel. Checking points in this order spreads the first few
+     * checks across the whole image, so most places it doesn't match are
+     * rejected after reading only a handful of pixels.
+     */
+    private class ImageTemplate {
+	final int width;
+	final int height;
+	final long modified;
+
+	/* each point's offset from the top left and its color as 0xRRGGBB */
+	final int[] pointX;
+	final int[] pointY;
+	final int[] pointColor;
+
+	ImageTemplate(BufferedImage image, long modified) {
+	    this.width = image.getWidth();
+	    this.height = image.getHeight();
+	    this.modified = modified;
+	    int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+	    int[] xs = new int[pixels.length];
+	    int[] ys = new int[pixels.length];
+	    int[] colors = new int[pixels.length];
+	    boolean[] added = new boolean[pixels.length];
+	    int count = 0;
+	    for (int spacing = 8; spacing >= 1; spacing /= 2) {
+		for (int y = 0; y < height; y += spacing) {
+		    for (int x = 0; x < width; x += spacing) {
+			int i = y * width + x;
+
+			/* skip pixels already added and see-through ones */
+			if (added[i] || (pixels[i] >>> 24) == 0)
+			    continue;
+			added[i] = true;
+			xs[count] = x;
+			ys[count] = y;
+			colors[count] = pixels[i] & 0xFFFFFF;
+			count++;
+		    }
+		}
+	    }
+	    pointX = Arrays.copyOf(xs, count);
+	    pointY = Arrays.copyOf(ys, count);
+	    pointColor = Arrays.copyOf(colors, count);
+	}
+    }
+
+    /**
+     * Scans a frame for the places where an {@link ImageTemplate} matches.
+     */
+    private class TemplateScan implements RowScanner {
+	private final RasterFrame frame;
+	private final ImageTemplate template;
+	private final int tolerance;
+
+	/* each template point's offset into the frame's pixels */
+	private final int[] pointOffset;
+
+	TemplateScan(RasterFrame frame, ImageTemplate template, int tolerance) {
+	    this.frame = frame;
+	    this.template = template;
+	    this.tolerance = tolerance;
+	    pointOffset = new int[template.pointX.length];
+	    for (int i = 0; i < pointOffset.length; i++)
+		pointOffset[i] = template.pointY[i] * frame.stride
+			+ template.pointX[i];
+	}
+
+	public int findInRow(int y, int left, int right, int xStep) {
+	    int base = frame.offset + (y - frame.y) * frame.stride - frame.x;
+	    for (int x = left; x <= right; x += xStep) {
+		if (matchesAt(base + x))
+		    return x;
+	    }
+	    return -1;
+	}
+
+	public int getCost() {
+	    return Math.max(template.pointX.length, 1);
+	}
+
+	/**
+	 * @param start
+	 *            the index in the frame's pixels of the template's top left
+	 * @return whether every point of the template matches
+	 */
+	private boolean matchesAt(int start) {
+	    int[] pixels = frame.pixels;
+	    int[] colors = template.pointColor;
+	    for (int i = 0; i < colors.length; i++) {
+		int pixel = pixels[start + pointOffset[i]];
+		if (tolerance == 0) {
+		    if (((pixel ^ colors[i]) & 0xFFFFFF) != 0)
+			return false;
+		    continue;
+		}
+		int red = ((pixel >> 16) & 0xFF) - (colors[i] >> 16);
+		int green = ((pixel >> 8) & 0xFF) - ((colors[i] >> 8) & 0xFF);
+		int blue = (pixel & 0xFF) - (colors[i] & 0xFF);
+		int bounds = (tolerance - red) | (tolerance + red)
+			| (tolerance - green) | (tolerance + green)
+			| (tolerance - blue) | (tolerance + blue);
+		if (bounds < 0)
+		    return false;
+	    }
+	    return true;
+	}
     }
 
     /**
-     * This method returns true if the two specified arrays of shorts are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
-     */
-    public boolean arrayEquals(short[] a, short[] a2) {
-	return Arrays.equals(a, a2);
-    }
+     * Finds a signature for {@link signatureSearch}. Its pixels are sorted
+     * from the rarest color to the most common, going by a sample of the
+     * frame, so that the rarest (the anchor) is what's searched for and the
+     * rest are checked in the order most likely to rule a position out.
+     */
+    private class SignatureScan implements RowScanner {
+	/* about how many pixels of the frame are sampled */
+	static final int SAMPLES = 4096;
+
+	private final RasterFrame frame;
+
+	/* each pixel's offsets and matcher, rarest first */
+	private final int[] offsetX;
+	private final int[] offsetY;
+	private final ShadeMatcher[] matchers;
+
+	SignatureScan(RasterFrame frame, int[][] signature, int tolerance) {
+	    this.frame = frame;
+	    int n = signature.length;
+	    ShadeMatcher[] unsorted = new ShadeMatcher[n];
+	    final int[] hits = new int[n];
+	    long pixels = (long) frame.getWidth() * frame.getHeight();
+	    long step = Math.max(pixels / SAMPLES, 1);
+	    for (int p = 0; p < n; p++) {
+		unsorted[p] = new ShadeMatcher(signature[p][2], tolerance);
+		for (long i = 0; i < pixels; i += step) {
+		    int x = (int) (i % frame.getWidth());
+		    int y = (int) (i / frame.getWidth());
+		    if (unsorted[p].matches(frame.pixels[frame.offset + y
+			    * frame.stride + x]))
+			hits[p]++;
+		}
+	    }
 
-    /**
-     * This method returns true if the two specified arrays of strings are equal
-     * to one another.Two arrays are equal if they contain the same elements in
-     * the same order.Two array references are considered equal if both are
-     * null.
-     *
-     * @param a
-     *            - The array to be tested for equality.
-     * @param a2
-     *            - The other array to be tested for equality.
-     * @return true if the two arrays are equal, otherwise returns false
-     */
-    public boolean arrayEquals(String[] a, String[] a2) {
-	return Arrays.equals(a, a2);
+	    Integer[] order = new Integer[n];
+	    for (int p = 0; p < n; p++)
+		order[p] = p;
+	    Arrays.sort(order, new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+		    return Integer.compare(hits[a], hits[b]);
+		}
+	    });
+	    offsetX = new int[n];
+	    offsetY = new int[n];
+	    matchers = new ShadeMatcher[n];
+	    for (int p = 0; p < n; p++) {
+		offsetX[p] = signature[order[p]][0];
+		offsetY[p] = signature[order[p]][1];
+		matchers[p] = unsorted[order[p]];
+	    }
+	}
+
+	public int findInRow(int y, int left, int right, int xStep) {
+	    int anchorY = y + offsetY[0];
+	    for (int x = left; x <= right; x += xStep) {
+		/* jump to the next place the anchor matches */
+		int found = frame.findInRow(matchers[0], anchorY, x
+			+ offsetX[0], right + offsetX[0], xStep);
+		if (found == -1)
+		    return -1;
+		x = found - offsetX[0];
+		if (matchesAt(x, y))
+		    return x;
+	    }
+	    return -1;
+	}
+
+	public int getCost() {
+	    return 1;
+	}
+
+	/**
+	 * @return whether the pixels other than the anchor all match with the
+	 *         signature's point at (x, y)
+	 */
+	private boolean matchesAt(int x, int y) {
+	    int base = frame.offset + (y - frame.y) * frame.stride
+		    + (x - frame.x);
+	    for (int p = 1; p < matchers.length; p++) {
+		if (!matchers[p].matches(frame.pixels[base + offsetY[p]
+			* frame.stride + offsetX[p]]))
+		    return false;
+	    }
+	    return true;
+	}
     }
 
     /**
-     * Retrieves an environment variable.
-     *
-     * @param var
-     *            - Name of the environment variable to get such as "JAVA_HOME"
-     *            or "PATH".
-     * @return The value of the environment variable specified by variable, or
-     *         an empty String if the environment variable is not found.
+     * Follows something around the screen, made by {@link trackColor} or
+     * {@link trackImage}.
      */
-    public String getEnv(String var) {
-	String value = "";
-	if (!var.isEmpty()) {
-	    value = System.getenv(var);
+    public interface Tracker {
+	/**
+	 * Find where the thing being followed is now.
+	 * 
+	 * @return the coordinates as [x, y], or [-1, -1] if it isn't anywhere
+	 *         in the area, or [-3, -3] if there was an error searching
+	 */
+	int[] update();
+
+	/**
+	 * @return where the thing was last found as [x, y], or [-1, -1] if it
+	 *         hasn't been found yet
+	 */
+	int[] getPosition();
+
+	/**
+	 * @return true if the last update didn't find the thing, or there
+	 *         hasn't been an update yet
+	 */
+	boolean isLost();
+    }
+
+    /**
+     * A {@link Tracker} for either a color or an image. It expects the thing
+     * to keep moving at the speed it moved between the last two updates, and
+     * searches a window around where that puts it before falling back to the
+     * whole area. All searches read the screen the same way as the other
+     * searches, so a background capture is used if there is one.
+     */
+    private class PixelTracker implements Tracker {
+	/* what to look for, either a color or an image */
+	private final PixelMatcher matcher;
+	private final ImageTemplate template;
+	private final int tolerance;
+
+	/* the positions it can be at, which for an image are its top lefts */
+	private final Rectangle positions;
+	private final int radius;
+
+	/* where it was found the last two times and when, in nanoseconds */
+	private int x = -1, y = -1;
+	private long time;
+	private int lastX, lastY;
+	private long lastTime;
+	private boolean lost = true;
+
+	PixelTracker(PixelMatcher matcher, ImageTemplate template,
+		int tolerance, Rectangle area, int radius) {
+	    this.matcher = matcher;
+	    this.template = template;
+	    this.tolerance = tolerance;
+	    this.radius = radius;
+	    if (template == null)
+		positions = area;
+	    else
+		positions = new Rectangle(area.x, area.y, area.width
+			- template.width + 1, area.height - template.height + 1);
+	}
+
+	public synchronized int[] update() {
+	    if (positions.width <= 0 || positions.height <= 0) {
+		lost = true;
+		return new int[] { -1, -1 };
+	    }
+	    try {
+		long now = System.nanoTime();
+		int[] match = { -1, -1 };
+		if (!lost) {
+		    /* expect it to have kept moving the way it was */
+		    int expectedX = x;
+		    int expectedY = y;
+		    if (lastTime != 0) {
+			double moves = (double) (now - time) / (time - lastTime);
+			expectedX += (int) Math.round((x - lastX) * moves);
+			expectedY += (int) Math.round((y - lastY) * moves);
+		    }
+		    expectedX = Math.max(positions.x, Math.min(expectedX,
+			    positions.x + positions.width - 1));
+		    expectedY = Math.max(positions.y, Math.min(expectedY,
+			    positions.y + positions.height - 1));
+		    Rectangle window = positions.intersection(new Rectangle(
+			    expectedX - radius, expectedY - radius,
+			    2 * radius + 1, 2 * radius + 1));
+		    match = search(window, expectedX, expectedY);
+		}
+
+		/* it was found nearby, so we know how fast it's moving */
+		if (match[0] != -1) {
+		    lastX = x;
+		    lastY = y;
+		    lastTime = time;
+		} else {
+		    /* it's moved further than expected, or hasn't been found */
+		    if (template == null)
+			match = searchScreen(matcher, positions, 1, 1);
+		    else
+			match = search(positions, x, y);
+		    lastTime = 0;
+		}
+
+		lost = match[0] == -1;
+		if (!lost) {
+		    x = match[0];
+		    y = match[1];
+		    time = now;
+		}
+		return match;
+	    } catch (Exception e) {
+		int[] returnVal = { -3, -3 };
+		return returnVal;
+	    }
+	}
+
+	/**
+	 * Search some of the positions. A color is searched for nearest to a
+	 * point first, an image in row-major order.
+	 * 
+	 * @param x
+	 *            X value of the point
+	 * @param y
+	 *            Y value of the point
+	 */
+	private int[] search(Rectangle window, int x, int y) {
+	    if (template != null) {
+		Rectangle area = new Rectangle(window.x, window.y, window.width
+			+ template.width - 1, window.height + template.height
+			- 1);
+		return searchFrame(new TemplateScan(grabFrame(area), template,
+			tolerance), window, 1, 1);
+	    }
+	    return searchRings(grabFrame(window), matcher, window, x, y, 1, 1);
+	}
+
+	public synchronized int[] getPosition() {
+	    return new int[] { x, y };
+	}
+
+	public synchronized boolean isLost() {
+	    return lost;
 	}
-	return value;
     }
 
     /**
-     * Retrieve all environment variables along with their values.
-     *
-     * @return All environment variables along with their values. For example:
-     *         "Var1=Value, Var2=Value"
+     * The lines of a file, from {@link fileLines}. It can be used in a for
+     * loop, but only once, since the lines are read as it goes.
      */
-    public String getEnv() {
-	Map<String, String> env = System.getenv();
-	return Arrays.toString(env.entrySet().toArray());
+    public interface LineIterator extends Iterator<String>, Iterable<String>, Closeable {
+	/**
+	 * Close the file. This is done automatically after the last line.
+	 */
+	void close();
     }
 
     /**
-     * Sends the contents of an array of strings to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * A {@link LineIterator} that reads a line ahead so it knows whether
+     * there's another.
      */
-    public void arrayToClip(String[] a) {
-	clipboardPut(arrayToString(a));
+    private class FileLineIterator implements LineIterator {
+	private final BufferedReader reader;
+	private String next;
+	private boolean closed;
+
+	FileLineIterator(BufferedReader reader) {
+	    this.reader = reader;
+	}
+
+	public Iterator<String> iterator() {
+	    return this;
+	}
+
+	public boolean hasNext() {
+	    if (next == null && !closed) {
+		try {
+		    next = reader.readLine();
+		} catch (IOException e) {
+		    close();
+		    throw new RuntimeException(e);
+		}
+		if (next == null)
+		    close();
+	    }
+	    return next != null;
+	}
+
+	public String next() {
+	    if (!hasNext())
+		throw new NoSuchElementException();
+	    String line = next;
+	    next = null;
+	    return line;
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+	    if (closed)
+		return;
+	    closed = true;
+	    try {
+		reader.close();
+	    } catch (IOException e) {
+		throw new RuntimeException(e);
+	    }
+	}
     }
 
     /**
-     * Sends the contents of an array of bytes to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * A file open for appending, from {@link fileOpenAppend}.
      */
-    public void arrayToClip(byte[] a) {
-	clipboardPut(arrayToString(a));
+    public interface FileAppender extends Closeable {
+	/**
+	 * Add data to the end of the file. It may wait in a buffer for up to a
+	 * second before being written out.
+	 */
+	void write(String data);
+
+	/**
+	 * Write out anything still waiting in the buffer.
+	 */
+	void flush();
+
+	/**
+	 * Write out anything still waiting in the buffer and close the file.
+	 */
+	void close();
     }
 
     /**
-     * Sends the contents of an array of booleans to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * Something to do with each file and directory found by {@link fileWalk}.
      */
-    public void arrayToClip(boolean[] a) {
-	clipboardPut(arrayToString(a));
+    public interface PathVisitor {
+	/**
+	 * Visit a file or directory.
+	 * 
+	 * @param path
+	 *            the path of the file or directory
+	 * @param attributes
+	 *            its size, times and type
+	 * @return false to skip what's in a directory, otherwise true
+	 */
+	boolean visit(Path path, BasicFileAttributes attributes);
     }
 
     /**
-     * Sends the contents of an array of chars to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * Something to call when files change, for {@link fileOnChange} and
+     * {@link dirWatch}.
      */
-    public void arrayToClip(char[] a) {
-	clipboardPut(arrayToString(a));
+    public interface FileChangeListener {
+	/**
+	 * Called for each change.
+	 * 
+	 * @param path
+	 *            the full path of what changed
+	 * @param change
+	 *            "created", "modified" or "deleted", or "overflow" if too
+	 *            much changed at once to say what, in which case the path is
+	 *            of the directory it was in
+	 */
+	void changed(String path, String change);
     }
 
     /**
-     * Sends the contents of an array of doubles to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * A {@link FileAppender} that encodes writes straight into a direct
+     * buffer, which the channel writes from without copying it first.
      */
-    public void arrayToClip(double[] a) {
-	clipboardPut(arrayToString(a));
+    private class BufferedAppender implements FileAppender {
+	/* the absolute path the appender is stored under in fileAppenders */
+	private final String key;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer
+		.allocateDirect(FILE_APPEND_BUFFER_BYTES);
+	private final CharsetEncoder encoder = Charset.defaultCharset()
+		.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/* whether a timed flush is waiting to run */
+	private boolean flushScheduled;
+	volatile boolean closed;
+
+	/*
+	 * whether the script holds the handle, and when it was last opened by
+	 * System.nanoTime, both guarded by fileAppenders
+	 */
+	boolean held;
+	long lastUsed;
+
+	BufferedAppender(String key) throws IOException {
+	    this.key = key;
+	    channel = FileChannel.open(Paths.get(key),
+		    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		    StandardOpenOption.APPEND);
+	}
+
+	public synchronized void write(String data) {
+	    if (closed)
+		throw new IllegalStateException(key + " is closed");
+	    try {
+		CharBuffer in = CharBuffer.wrap(data);
+		while (encoder.encode(in, buffer, true).isOverflow())
+		    drain();
+		while (encoder.flush(buffer).isOverflow())
+		    drain();
+		encoder.reset();
+	    } catch (IOException e) {
+		throw new RuntimeException(e);
+	    }
+
+	    /* make sure what's left in the buffer doesn't wait too long */
+	    if (buffer.position() > 0 && !flushScheduled) {
+		flushScheduled = true;
+		getPoller().schedule(new Runnable() {
+		    public void run() {
+			synchronized (BufferedAppender.this) {
+			    flushScheduled = false;
+			    try {
+				if (!closed)
+				    drain();
+			    } catch (IOException e) {
+				/* it's left in the buffer to try again */
+			    }
+			}
+		    }
+		}, FILE_APPEND_MAX_AGE_MS, TimeUnit.MILLISECONDS);
+	    }
+	}
+
+	public synchronized void flush() {
+	    if (closed)
+		return;
+	    try {
+		drain();
+	    } catch (IOException e) {
+		throw new RuntimeException(e);
+	    }
+	}
+
+	public void close() {
+	    synchronized (fileAppenders) {
+		if (fileAppenders.get(key) == this)
+		    fileAppenders.remove(key);
+	    }
+	    synchronized (this) {
+		if (closed)
+		    return;
+		closed = true;
+		try {
+		    try {
+			drain();
+		    } finally {
+			channel.close();
+		    }
+		} catch (IOException e) {
+		    throw new RuntimeException(e);
+		}
+	    }
+	}
+
+	/**
+	 * Check whether the handle has gone unused for FILE_APPEND_IDLE_MS
+	 * after a delay, closing it if it has and checking again if not. Once
+	 * the script holds the handle it's left open.
+	 * 
+	 * @param delayMs
+	 *            the time in milliseconds until the check
+	 */
+	void scheduleIdleCheck(long delayMs) {
+	    getPoller().schedule(new Runnable() {
+		public void run() {
+		    long idleMs;
+		    synchronized (fileAppenders) {
+			if (closed || held)
+			    return;
+			idleMs = (System.nanoTime() - lastUsed) / 1000000L;
+			if (idleMs >= FILE_APPEND_IDLE_MS) {
+			    try {
+				close();
+			    } catch (RuntimeException e) {
+				/* fileAppend already wrote everything out */
+			    }
+			    return;
+			}
+		    }
+		    scheduleIdleCheck(FILE_APPEND_IDLE_MS - idleMs);
+		}
+	    }, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Write the buffer to the file, keeping anything that couldn't be
+	 * written.
+	 */
+	private void drain() throws IOException {
+	    buffer.flip();
+	    try {
+		while (buffer.hasRemaining())
+		    channel.write(buffer);
+	    } finally {
+		buffer.compact();
+	    }
+	}
     }
 
     /**
-     * Sends the contents of an array of floats to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * Walks a directory for a parallel {@link walkFiles}. Each directory is
+     * listed by its own task, which hands the directories in it to new tasks.
      */
-    public void arrayToClip(float[] a) {
-	clipboardPut(arrayToString(a));
+    private class DirectoryWalk extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private final Path dir;
+	private final int depth;
+	private final int maxDepth;
+	private final PathVisitor visitor;
+
+	DirectoryWalk(Path dir, int depth, int maxDepth, PathVisitor visitor) {
+	    this.dir = dir;
+	    this.depth = depth;
+	    this.maxDepth = maxDepth;
+	    this.visitor = visitor;
+	}
+
+	protected void compute() {
+	    final List<DirectoryWalk> walks = new ArrayList<DirectoryWalk>();
+	    try {
+		/* a depth of 1 lists the directory without going any deeper */
+		Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class),
+			1, new SimpleFileVisitor<Path>() {
+			    public FileVisitResult visitFile(Path file,
+				    BasicFileAttributes attributes) {
+				if (visitor.visit(file, attributes)
+					&& attributes.isDirectory()
+					&& depth + 1 < maxDepth)
+				    walks.add(new DirectoryWalk(file,
+					    depth + 1, maxDepth, visitor));
+				return FileVisitResult.CONTINUE;
+			    }
+
+			    public FileVisitResult visitFileFailed(Path file,
+				    IOException e) {
+				return FileVisitResult.CONTINUE;
+			    }
+
+			    public FileVisitResult postVisitDirectory(
+				    Path dir, IOException e) {
+				return FileVisitResult.CONTINUE;
+			    }
+			});
+	    } catch (IOException e) {
+		/* skipped, like an unreadable directory in a plain walk */
+	    }
+	    invokeAll(walks);
+	}
     }
 
     /**
-     * Sends the contents of an array of ints to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * A watch on a directory, from {@link startFileWatch}. Cancelling it
+     * stops the watch.
      */
-    public void arrayToClip(int[] a) {
-	clipboardPut(arrayToString(a));
+    private class FileWatch implements Future<Object> {
+	final Path root;
+	final boolean recursive;
+	final PathMatcher matcher;
+	final FileChangeListener listener;
+
+	/* whether it's polled, and what was there at the last poll if so */
+	boolean polled;
+	volatile Map<Path, Long> snapshot;
+
+	final CountDownLatch stopped = new CountDownLatch(1);
+
+	FileWatch(Path root, boolean recursive, PathMatcher matcher,
+		FileChangeListener listener) {
+	    this.root = root;
+	    this.recursive = recursive;
+	    this.matcher = matcher;
+	    this.listener = listener;
+	}
+
+	/**
+	 * @return whether changes in a directory are for this watch
+	 */
+	boolean covers(Path dir) {
+	    return dir.equals(root) || recursive && dir.startsWith(root);
+	}
+
+	/**
+	 * Tell the listener about a change, if the name matches. The watch is
+	 * stopped if the listener throws an exception.
+	 */
+	void fire(Path path, String change) {
+	    if (stopped.getCount() == 0)
+		return;
+	    if (matcher != null && !change.equals("overflow")
+		    && !matcher.matches(path.getFileName()))
+		return;
+	    try {
+		listener.changed(path.toString(), change);
+	    } catch (RuntimeException e) {
+		cancel(false);
+	    }
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    return stopFileWatch(this);
+	}
+
+	public boolean isCancelled() {
+	    return stopped.getCount() == 0;
+	}
+
+	public boolean isDone() {
+	    return isCancelled();
+	}
+
+	public Object get() throws InterruptedException {
+	    stopped.await();
+	    throw new CancellationException();
+	}
+
+	public Object get(long timeout, TimeUnit unit)
+		throws InterruptedException, TimeoutException {
+	    if (!stopped.await(timeout, unit))
+		throw new TimeoutException();
+	    throw new CancellationException();
+	}
     }
 
     /**
-     * Sends the contents of an array of longs to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * A wait for part of the screen to reach or leave some value, which is the
+     * color of a pixel for a single pixel area, or the checksum of a larger
+     * one.
      */
-    public void arrayToClip(long[] a) {
-	clipboardPut(arrayToString(a));
+    private class ScreenWait {
+	/* what poll() reports */
+	static final int WAITING = 0;
+	static final int CHANGED = 1;
+	static final int DONE = 2;
+
+	final Rectangle area;
+
+	/* whether the wait ends when the value is the target or isn't */
+	final boolean untilEqual;
+	long target;
+
+	/* the value seen the last time the wait was polled */
+	private long last;
+
+	final CountDownLatch done = new CountDownLatch(1);
+
+	ScreenWait(Rectangle area, boolean untilEqual, long target) {
+	    this.area = area;
+	    this.untilEqual = untilEqual;
+	    this.target = target;
+	    this.last = target;
+	}
+
+	/**
+	 * @return the value of the wait's area in a frame
+	 */
+	long read(RasterFrame frame) {
+	    if (area.width == 1 && area.height == 1)
+		return frame.getColor(area.x, area.y);
+	    return frame.region(area.x, area.y, area.x + area.width - 1,
+		    area.y + area.height - 1).getChecksum();
+	}
+
+	/**
+	 * Check the wait against a frame.
+	 * 
+	 * @return DONE if the wait is over, CHANGED if the value has changed
+	 *         since the last poll, or WAITING otherwise
+	 */
+	int poll(RasterFrame frame) {
+	    long value = read(frame);
+	    boolean changed = value != last;
+	    last = value;
+	    if ((value == target) == untilEqual)
+		return DONE;
+	    return changed ? CHANGED : WAITING;
+	}
     }
 
     /**
-     * Sends the contents of an array of shorts to the clipboard.
-     *
-     * @param a
-     *            - Array to copy to clipboard.
+     * Searches a range of rows for {@link searchFrame}, splitting it in half
+     * until each piece is a single stripe. Once a match is found, stripes
+     * below it stop early since they can't hold the first match.
      */
-    public void arrayToClip(short[] a) {
-	clipboardPut(arrayToString(a));
+    private class RowSearch extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/* the number of rows each stripe searches */
+	private static final int STRIPE_ROWS = 32;
+
+	private final RowScanner scanner;
+	private final Rectangle area;
+	private final int xStep;
+	private final int yStep;
+	private final int start;
+	private final int end;
+
+	/* the first row with a match, and the X value of the match in each row */
+	final AtomicInteger firstRow;
+	final int[] matchX;
+
+	RowSearch(RowScanner scanner, Rectangle area, int xStep, int yStep,
+		int start, int end, AtomicInteger firstRow, int[] matchX) {
+	    this.scanner = scanner;
+	    this.area = area;
+	    this.xStep = xStep;
+	    this.yStep = yStep;
+	    this.start = start;
+	    this.end = end;
+	    this.firstRow = firstRow;
+	    this.matchX = matchX;
+	}
+
+	protected void compute() {
+	    if (end - start > STRIPE_ROWS) {
+		int middle = (start + end) >>> 1;
+		invokeAll(new RowSearch(scanner, area, xStep, yStep, start,
+			middle, firstRow, matchX), new RowSearch(scanner, area,
+			xStep, yStep, middle, end, firstRow, matchX));
+		return;
+	    }
+
+	    for (int row = start; row < end && row < firstRow.get(); row++) {
+		int x = scanner.findInRow(area.y + row * yStep, area.x,
+			area.x + area.width - 1, xStep);
+		if (x != -1) {
+		    matchX[row] = x;
+
+		    /* keep whichever row is higher up */
+		    int first = firstRow.get();
+		    while (row < first && !firstRow.compareAndSet(first, row))
+			first = firstRow.get();
+		    return;
+		}
+	    }
+	}
     }
 
 }
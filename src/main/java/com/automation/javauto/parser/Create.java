@@ -743,6 +743,10 @@ public class Create {
 	    String[] parts = line.split("=")[0].split(" ");
 	    String name = parts[parts.length - 1].trim();
 
+	    /* declarations without a value end with the name */
+	    if (name.endsWith(";"))
+		name = name.substring(0, name.length() - 1);
+
 	    /* make class variables static */
 	    String[] lineParts = line.trim().split(" ");
 	    String modifiedLine = lineParts[0] + " static ";
@@ -1115,13 +1119,21 @@ public class Create {
      */
     private static String generateVariables() {
 	/* get raw file contents of the file containing our variables */
-	String[] variablesContents = resourceRead(javautoFile).split("\n");
+	String variablesFile = resourceRead(javautoFile);
+	String[] variablesContents = variablesFile.split("\n");
+	boolean[] topLevel = getTopLevelLines(variablesFile);
 
 	/* variable to store our generated class vars */
 	String classVars = "";
 
 	/* add each line that has a class varaible to our classVars */
-	for (String line : variablesContents) {
+	for (int i = 0; i < variablesContents.length; i++) {
+	    String line = variablesContents[i];
+
+	    /* members of nested classes aren't class variables */
+	    if (!topLevel[i])
+		continue;
+
 	    if ((line.trim().startsWith("public ") || line.trim().startsWith(
 		    "private "))
 		    && line.trim().endsWith(";"))
@@ -1147,9 +1159,16 @@ public class Create {
 
 	/* split into lines for evaluation */
 	String[] functionContentsLines = functionContents.split("\n");
+	boolean[] topLevel = getTopLevelLines(functionContents);
 
 	/* check each line and extract function names */
-	for (String line : functionContentsLines) {
+	for (int i = 0; i < functionContentsLines.length; i++) {
+	    String line = functionContentsLines[i];
+
+	    /* members of nested classes aren't javauto functions */
+	    if (!topLevel[i])
+		continue;
+
 	    /*
 	     * if the line is like "public *{" or "private *{" but isn't like
 	     * "public class"
@@ -1996,6 +2015,73 @@ public class Create {
 	return noLiterals;
     }
 
+    /**
+     * Work out which lines of a java source file sit directly inside the body
+     * of its outermost class. Members of nested classes and interfaces sit one
+     * level deeper, so checking this keeps them from being mistaken for
+     * javauto functions or class variables.
+     * 
+     * @param code
+     *            the java source to evaluate
+     * @return an array with one entry per line, true if that line starts at
+     *         the top level of the class body
+     */
+    private static boolean[] getTopLevelLines(String code) {
+	/* one flag for each line in the file */
+	boolean[] topLevel = new boolean[code.split("\n").length];
+
+	/* keep track of our brace depth and which line we're on */
+	char[] codeChars = code.toCharArray();
+	int depth = 0;
+	int line = 0;
+	int index = 0;
+	while (index < codeChars.length) {
+	    /* skip string and character literals */
+	    if (codeChars[index] == '"' || codeChars[index] == '\'') {
+		char quote = codeChars[index];
+		index++;
+		while (index < codeChars.length && codeChars[index] != quote) {
+		    if (codeChars[index] == '\\')
+			index++;
+		    index++;
+		}
+		index++;
+	    }
+
+	    /* skip // comments, stopping at the newline so it gets counted */
+	    else if (codeChars[index] == '/' && index + 1 < codeChars.length
+		    && codeChars[index + 1] == '/') {
+		while (index < codeChars.length && codeChars[index] != '\n')
+		    index++;
+	    }
+
+	    /* skip /* comments, counting any newlines inside of them */
+	    else if (codeChars[index] == '/' && index + 1 < codeChars.length
+		    && codeChars[index + 1] == '*') {
+		index += 2;
+		while (index + 1 < codeChars.length
+			&& !(codeChars[index] == '*' && codeChars[index + 1] == '/')) {
+		    if (codeChars[index] == '\n' && ++line < topLevel.length)
+			topLevel[line] = depth == 1;
+		    index++;
+		}
+		index += 2;
+	    }
+
+	    /* otherwise track braces and the start of each line */
+	    else {
+		if (codeChars[index] == '{')
+		    depth++;
+		else if (codeChars[index] == '}')
+		    depth--;
+		else if (codeChars[index] == '\n' && ++line < topLevel.length)
+		    topLevel[line] = depth == 1;
+		index++;
+	    }
+	}
+	return topLevel;
+    }
+
     /**
      * Reads file contents (from a resource inside the JAR) into string
      * 
@@ -5,17 +5,36 @@ import static org.assertj.core.api.StrictAssertions.fail;
 import static org.assertj.core.api.Assertions.*;
 
 import java.awt.MouseInfo;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
 
 import org.junit.Test;
 
 import com.automation.javauto.Javauto;
+import com.sun.management.ThreadMXBean;
 
 /**
  * Some test for the {@link Javauto} class.
@@ -126,7 +145,7 @@ public class JavautoTest {
     @Test
     public void testSleephouldBeReturnRuntimeExceptionWithInvalidTimeout() {
 	Javauto javauto = new Javauto();
-	int timeout = 600001;
+	int timeout = -1;
 
 	try {
 	    javauto.sleep(timeout);
@@ -136,6 +155,59 @@ public class JavautoTest {
 	}
     }
 
+    @Test
+    public void testSleepLongerThanOneMinuteIsAllowed() throws Exception {
+	final Javauto javauto = new Javauto();
+	Thread sleeper = new Thread(new Runnable() {
+	    public void run() {
+		javauto.sleep(600001);
+	    }
+	});
+	sleeper.start();
+	sleeper.join(100);
+	assertThat(sleeper.isAlive()).isTrue();
+	sleeper.interrupt();
+	sleeper.join(1000);
+	assertThat(sleeper.isAlive()).isFalse();
+    }
+
+    @Test
+    public void testSleepIsAccurate() {
+	Javauto javauto = new Javauto();
+	long start = System.nanoTime();
+	javauto.sleep(20);
+	long elapsed = System.nanoTime() - start;
+	/* a loaded machine can oversleep, but never undersleep */
+	assertThat(elapsed).isBetween(TimeUnit.MILLISECONDS.toNanos(20),
+		TimeUnit.MILLISECONDS.toNanos(120));
+    }
+
+    @Test
+    public void testAfter() throws Exception {
+	Javauto javauto = new Javauto();
+	final CountDownLatch ran = new CountDownLatch(1);
+	javauto.after(10, new Runnable() {
+	    public void run() {
+		ran.countDown();
+	    }
+	});
+	assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testEvery() throws Exception {
+	Javauto javauto = new Javauto();
+	final CountDownLatch ran = new CountDownLatch(5);
+	Future<?> task = javauto.every(10, new Runnable() {
+	    public void run() {
+		ran.countDown();
+	    }
+	});
+	assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+	task.cancel(false);
+	assertThat(task.isCancelled()).isTrue();
+    }
+
     @Test
     // Do not move your mouse :).
     public void testMouseMove() throws InterruptedException {
@@ -277,6 +349,1241 @@ public class JavautoTest {
 	assertThat(panel.getClickedButton()).isEqualToIgnoringCase("right");
     }
 
+    @Test
+    public void testSetInputBackend() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(10, 10);
+	javauto.setInputBackend(backend);
+
+	javauto.keyPress(KeyEvent.VK_A);
+	javauto.mouseScrollDown();
+	javauto.pixelGetColor(5, 5);
+
+	assertThat(backend.getEvents()).isEqualTo(
+		Arrays.asList("keyPress 65", "keyRelease 65", "mouseWheel 100"));
+	assertThat(javauto.getInputEventCount()).isEqualTo(3);
+	assertThat(javauto.getCaptureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSetMouseTrajectory() {
+	Javauto javauto = new Javauto();
+	assertThat(javauto.getMouseTrajectory()).isEqualTo("linear");
+	javauto.setMouseTrajectory("bezier");
+	assertThat(javauto.getMouseTrajectory()).isEqualTo("bezier");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMouseTrajectoryUnknown() {
+	Javauto javauto = new Javauto();
+	javauto.setMouseTrajectory("zigzag");
+    }
+
+    @Test
+    public void testMouseMoveTrajectories() {
+	for (String trajectory : new String[] { "linear", "eased", "bezier" }) {
+	    Javauto javauto = new Javauto();
+	    RecordingInputBackend backend = new RecordingInputBackend(10, 10);
+	    javauto.setInputBackend(backend);
+	    backend.mouseMove(10, 20);
+	    backend.getEvents().clear();
+	    backend.getEventTimes().clear();
+	    javauto.setSpeed(.5);
+	    javauto.setMouseTrajectory(trajectory);
+
+	    /* 70 pixels at half speed takes 125ms, in 15 steps of 8ms */
+	    long start = System.nanoTime();
+	    javauto.mouseMove(80, 20);
+	    long elapsed = System.nanoTime() - start;
+
+	    /* where each step should be, skipping steps that don't move */
+	    List<String> expected = new ArrayList<String>();
+	    List<Integer> expectedSteps = new ArrayList<Integer>();
+	    int xLast = 10;
+	    int yLast = 20;
+	    for (int i = 1; i <= 15; i++) {
+		double t = i / 15.0;
+		double along = trajectory.equals("linear") ? t : t * t
+			* (3 - 2 * t);
+		double aside = trajectory.equals("bezier") ? 3 * along
+			* (1 - along) : 0;
+		int x = (int) Math.round(10 + 70 * along);
+		int y = (int) Math.round(20 + 14 * aside);
+		if (x != xLast || y != yLast || i == 15) {
+		    expected.add("mouseMove " + x + " " + y);
+		    expectedSteps.add(i);
+		    xLast = x;
+		    yLast = y;
+		}
+	    }
+	    assertThat(backend.getEvents()).isEqualTo(expected);
+
+	    /* no step happens before it's due, and the move isn't slow */
+	    for (int i = 0; i < expectedSteps.size(); i++)
+		assertThat(backend.getEventTimes().get(i) - start)
+			.isGreaterThanOrEqualTo(
+				TimeUnit.MILLISECONDS.toNanos(125)
+					* expectedSteps.get(i) / 15);
+	    assertThat(elapsed).isLessThan(TimeUnit.MILLISECONDS.toNanos(225));
+	    assertThat(javauto.cursorGetPos()).isEqualTo(new int[] { 80, 20 });
+	}
+    }
+
+    @Test
+    public void testCaptureStartServesPixelsFromFrame() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(20, 20);
+	backend.getScreen().setRGB(5, 5, 0x123456);
+	javauto.setInputBackend(backend);
+
+	javauto.captureStart(0, 0, 19, 19, 50, 1000);
+	javauto.sleep(100);
+	long captures = javauto.getCaptureCount();
+	try {
+	    assertThat(javauto.pixelGetColor(5, 5)).isEqualTo(0xFF123456);
+	    assertThat(javauto.pixelGetColor(6, 5)).isEqualTo(0xFF000000);
+	    assertThat(javauto.getCaptureCount()).isLessThanOrEqualTo(
+		    captures + 1);
+	} finally {
+	    javauto.captureStop();
+	}
+    }
+
+    @Test
+    public void testScreenSnapshot() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(20, 20);
+	backend.getScreen().setRGB(5, 5, 0x123456);
+	backend.getScreen().setRGB(7, 8, 0x654321);
+	javauto.setInputBackend(backend);
+
+	Javauto.ScreenFrame snapshot = javauto.screenSnapshot(2, 3, 10, 10);
+	assertThat(javauto.getCaptureCount()).isEqualTo(1);
+	assertThat(snapshot.getWidth()).isEqualTo(9);
+	assertThat(snapshot.getHeight()).isEqualTo(8);
+	assertThat(snapshot.getColors(new int[][] { { 5, 5 }, { 7, 8 } }))
+		.isEqualTo(new int[] { 0xFF123456, 0xFF654321 });
+
+	Javauto.ScreenFrame region = snapshot.region(5, 5, 7, 8);
+	assertThat(region.getColor(7, 8)).isEqualTo(0xFF654321);
+	assertThat(region.contains(4, 5)).isFalse();
+	assertThat(javauto.getCaptureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPixelSearchFindsFirstMatchInRowMajorOrder() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(1200, 900);
+	backend.getScreen().setRGB(700, 850, 0x123456);
+	backend.getScreen().setRGB(300, 851, 0x123456);
+	backend.getScreen().setRGB(1100, 400, 0x123456);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 1199, 899)).isEqualTo(
+		new int[] { 1100, 400 });
+	assertThat(javauto.pixelSearch(0x123456, 0, 401, 1199, 899))
+		.isEqualTo(new int[] { 700, 850 });
+	assertThat(javauto.pixelSearch(0x123456, 1101, 0, 1199, 899))
+		.isEqualTo(new int[] { -1, -1 });
+    }
+
+    @Test
+    public void testPixelSearchSpeedStridesFromTopLeft() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(10, 40, 0x123456);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.pixelSearch(0x123456, 4, 0, 99, 99, 3)).isEqualTo(
+		new int[] { 10, 40 });
+	assertThat(javauto.pixelSearch(0x123456, 4, 1, 99, 99, 3)).isEqualTo(
+		new int[] { -1, -1 });
+    }
+
+    @Test
+    public void testPixelSearchWithShade() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(20, 30, 0x143258);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 99, 99, 1, 1))
+		.isEqualTo(new int[] { -1, -1 });
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 99, 99, 1, 2))
+		.isEqualTo(new int[] { 20, 30 });
+    }
+
+    @Test
+    public void testPixelSearchBadShadeIsAnError() {
+	Javauto javauto = new Javauto();
+	javauto.setInputBackend(new RecordingInputBackend(100, 100));
+
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 99, 99, 1, 256))
+		.isEqualTo(new int[] { -3, -3 });
+	assertThat(javauto.pixelSearchAll(0x123456, 0, 0, 99, 99, -1))
+		.isEqualTo(new int[] { -3, -3 });
+	assertThat(javauto.pixelCount(0x123456, 0, 0, 99, 99, 300)).isEqualTo(-3);
+	assertThat(javauto.pixelSearchNear(0x123456, 50, 50, 10, 256))
+		.isEqualTo(new int[] { -3, -3 });
+    }
+
+    @Test
+    public void testPixelSearchAllCountAndBoundingBox() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(70, 85, 0x123456);
+	backend.getScreen().setRGB(30, 86, 0x123456);
+	backend.getScreen().setRGB(90, 40, 0x123456);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.pixelSearchAll(0x123456, 0, 0, 99, 99)).isEqualTo(
+		new int[] { 90, 40, 70, 85, 30, 86 });
+	assertThat(javauto.pixelCount(0x123456, 0, 0, 99, 99)).isEqualTo(3);
+	assertThat(javauto.pixelBoundingBox(0x123456, 0, 0, 99, 99))
+		.isEqualTo(new int[] { 30, 40, 90, 86 });
+	assertThat(javauto.pixelBoundingBox(0x654321, 0, 0, 99, 99))
+		.isEqualTo(new int[] { -1, -1, -1, -1 });
+    }
+
+    @Test
+    public void testPixelSearchAny() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(70, 85, 0x123456);
+	backend.getScreen().setRGB(30, 60, 0xABCDEF);
+	javauto.setInputBackend(backend);
+
+	int[] colors = { 0x123456, 0x111111, 0xABCDEF };
+	assertThat(javauto.pixelSearchAny(colors, 0, 0, 99, 99)).isEqualTo(
+		new int[] { 30, 60 });
+	assertThat(javauto.pixelSearchAny(colors, 0, 61, 99, 99)).isEqualTo(
+		new int[] { 70, 85 });
+	assertThat(javauto.pixelSearchAny(new int[] { 0x222222 }, 0, 0, 99, 99))
+		.isEqualTo(new int[] { -1, -1 });
+    }
+
+    @Test
+    public void testPixelSearchAnyAlternatingAndLargeSets() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(70, 85, 0x123456);
+	backend.getScreen().setRGB(30, 60, 0xABCDEF);
+	javauto.setInputBackend(backend);
+
+	/* too many colors for a hash table, so they go in a bitmap */
+	int[] many = new int[5000];
+	for (int i = 0; i < many.length; i++)
+	    many[i] = 0x100000 + i * 7;
+	many[4321] = 0x123456;
+
+	int[] first = { 0xABCDEF };
+	int[] second = { 0x123456, 0x654321 };
+	for (int i = 0; i < 3; i++) {
+	    assertThat(javauto.pixelSearchAny(first, 0, 0, 99, 99)).isEqualTo(
+		    new int[] { 30, 60 });
+	    assertThat(javauto.pixelSearchAny(second, 0, 0, 99, 99))
+		    .isEqualTo(new int[] { 70, 85 });
+	    assertThat(javauto.pixelSearchAny(many, 0, 0, 99, 99)).isEqualTo(
+		    new int[] { 70, 85 });
+	}
+	assertThat(javauto.pixelSearchAny(new int[0], 0, 0, 99, 99))
+		.isEqualTo(new int[] { -1, -1 });
+    }
+
+    @Test
+    public void testImageSearch() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	BufferedImage template = new BufferedImage(4, 3,
+		BufferedImage.TYPE_INT_RGB);
+	for (int y = 0; y < 3; y++) {
+	    for (int x = 0; x < 4; x++) {
+		template.setRGB(x, y, 0x102030 * (x + y * 4 + 1));
+		backend.getScreen().setRGB(150 + x, 60 + y,
+			0x102030 * (x + y * 4 + 1));
+	    }
+	}
+	File file = File.createTempFile("template", ".png");
+	file.deleteOnExit();
+	ImageIO.write(template, "png", file);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.imageSearch(file.getPath(), 0, 0, 199, 99))
+		.isEqualTo(new int[] { 150, 60 });
+	assertThat(javauto.imageSearch(file.getPath(), 0, 0, 152, 99))
+		.isEqualTo(new int[] { -1, -1 });
+	assertThat(javauto.imageSearch(file.getPath() + ".missing", 0, 0,
+		199, 99)).isEqualTo(new int[] { -3, -3 });
+	assertThat(javauto.imageSearch(file.getPath(), 0, 0, 199, 99, 256))
+		.isEqualTo(new int[] { -3, -3 });
+    }
+
+    @Test
+    public void testWaitForPixel() {
+	Javauto javauto = new Javauto();
+	final RecordingInputBackend backend = new RecordingInputBackend(20,
+		20);
+	javauto.setInputBackend(backend);
+
+	javauto.after(50, new Runnable() {
+	    public void run() {
+		backend.getScreen().setRGB(5, 5, 0x123456);
+	    }
+	});
+	assertThat(javauto.waitForPixel(5, 5, 0x123456, 5000)).isTrue();
+	assertThat(javauto.waitForPixelChange(5, 5, 50)).isFalse();
+    }
+
+    @Test
+    public void testWaitForRegionChange() {
+	Javauto javauto = new Javauto();
+	final RecordingInputBackend backend = new RecordingInputBackend(20,
+		20);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.waitForRegionChange(0, 0, 9, 9, 200)).isFalse();
+	javauto.after(50, new Runnable() {
+	    public void run() {
+		backend.getScreen().setRGB(15, 15, 0x123456);
+	    }
+	});
+	assertThat(javauto.waitForRegionChange(10, 10, 19, 19, 5000))
+		.isTrue();
+    }
+
+    @Test
+    public void testWaitForRegionChangeFromTimerTask() throws Exception {
+	final Javauto javauto = new Javauto();
+	final RecordingInputBackend backend = new RecordingInputBackend(20,
+		20);
+	javauto.setInputBackend(backend);
+
+	/* the wait blocks the timer thread, so it must be polled elsewhere */
+	final AtomicBoolean changed = new AtomicBoolean();
+	Future<?> task = javauto.after(0, new Runnable() {
+	    public void run() {
+		changed.set(javauto.waitForRegionChange(0, 0, 19, 19, 5000));
+	    }
+	});
+	Thread.sleep(100);
+	backend.getScreen().setRGB(5, 5, 0x123456);
+	task.get(5, TimeUnit.SECONDS);
+	assertThat(changed.get()).isTrue();
+    }
+
+    @Test
+    public void testPixelChecksum() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	javauto.setInputBackend(backend);
+
+	long before = javauto.pixelChecksum(0, 0, 99, 99);
+	assertThat(javauto.pixelChecksum(0, 0, 99, 99)).isEqualTo(before);
+	backend.getScreen().setRGB(50, 50, 0x123456);
+	assertThat(javauto.pixelChecksum(0, 0, 99, 99)).isNotEqualTo(before);
+    }
+
+    @Test
+    public void testRegionDiff() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	javauto.setInputBackend(backend);
+
+	Javauto.ScreenFrame before = javauto.screenSnapshot(0, 0, 199, 99);
+	backend.getScreen().setRGB(5, 5, 0x123456);
+	backend.getScreen().setRGB(40, 5, 0x123456);
+	backend.getScreen().setRGB(199, 99, 0x123456);
+	Javauto.ScreenFrame after = javauto.screenSnapshot(0, 0, 199, 99);
+
+	assertThat(javauto.regionDiff(before, after)).isEqualTo(
+		new int[][] { { 0, 0, 63, 31 }, { 192, 96, 199, 99 } });
+	assertThat(javauto.regionDiff(after, after)).isEqualTo(new int[0][]);
+    }
+
+    @Test
+    public void testRegionDiffOfOtherFrames() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	javauto.setInputBackend(backend);
+
+	Javauto.ScreenFrame before = javauto.screenSnapshot(0, 0, 199, 99);
+	backend.getScreen().setRGB(100, 50, 0x123456);
+	Javauto.ScreenFrame after = new WrappedFrame(javauto.screenSnapshot(0,
+		0, 199, 99));
+
+	assertThat(javauto.regionDiff(before, after)).isEqualTo(
+		new int[][] { { 96, 32, 127, 63 } });
+    }
+
+    @Test
+    public void testScreenShotAsyncQoiRoundTrip() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 50);
+	for (int y = 0; y < 50; y++) {
+	    for (int x = 0; x < 100; x++) {
+		backend.getScreen().setRGB(x, y,
+			y < 20 ? 0x336699 : (x * 2) << 16 | (y * 5) << 8 | x ^ y);
+	    }
+	}
+	javauto.setInputBackend(backend);
+	File file = File.createTempFile("screenshot", ".qoi");
+	file.deleteOnExit();
+
+	Future<File> written = javauto.screenShotAsync(file.getPath(), 10, 5,
+		90, 45);
+	assertThat(written.get(5, TimeUnit.SECONDS)).isEqualTo(file);
+	BufferedImage image = javauto.imageRead(file.getPath());
+	assertThat(image.getWidth()).isEqualTo(80);
+	assertThat(image.getHeight()).isEqualTo(40);
+	for (int y = 0; y < 40; y++) {
+	    for (int x = 0; x < 80; x++) {
+		assertThat(image.getRGB(x, y)).isEqualTo(
+			backend.getScreen().getRGB(x + 10, y + 5));
+	    }
+	}
+    }
+
+    @Test
+    public void testScreenShotAsyncWhileCapturing() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(40, 30);
+	backend.getScreen().setRGB(12, 7, 0x123456);
+	javauto.setInputBackend(backend);
+	File file = File.createTempFile("screenshot", ".qoi");
+	file.deleteOnExit();
+
+	javauto.captureStart(0, 0, 39, 29, 50, 60000);
+	javauto.sleep(100);
+	try {
+	    javauto.screenShotAsync(file.getPath(), 10, 5, 20, 15).get(5,
+		    TimeUnit.SECONDS);
+	} finally {
+	    javauto.captureStop();
+	}
+	BufferedImage image = javauto.imageRead(file.getPath());
+	assertThat(image.getWidth()).isEqualTo(10);
+	assertThat(image.getHeight()).isEqualTo(10);
+	assertThat(image.getRGB(2, 2)).isEqualTo(0xFF123456);
+    }
+
+    @Test
+    public void testScreenShotAsyncFormats() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(20, 10);
+	backend.getScreen().setRGB(1, 0, 0x123456);
+	javauto.setInputBackend(backend);
+	javauto.setScreenShotCompression(1);
+	File png = File.createTempFile("screenshot", ".png");
+	File raw = File.createTempFile("screenshot", ".raw");
+	png.deleteOnExit();
+	raw.deleteOnExit();
+
+	javauto.screenShotAsync(png.getPath(), 0, 0, 20, 10).get();
+	javauto.screenShotAsync(raw.getPath(), 0, 0, 2, 1).get();
+	assertThat(ImageIO.read(png).getWidth()).isEqualTo(20);
+	assertThat(ImageIO.read(png).getRGB(1, 0)).isEqualTo(0xFF123456);
+	assertThat(Files.readAllBytes(raw.toPath())).isEqualTo(
+		new byte[] { 0, 0, 0, 0x12, 0x34, 0x56 });
+
+	/* an empty area is an error, like it is nothing for screenShot */
+	try {
+	    javauto.screenShotAsync(png.getPath(), 5, 5, 5, 9).get();
+	    fail("expected an error");
+	} catch (ExecutionException e) {
+	    assertThat(e.getCause()).isInstanceOf(IOException.class);
+	}
+    }
+
+    @Test
+    public void testRecordAndExtract() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 70);
+	backend.getScreen().setRGB(3, 4, 0x123456);
+	javauto.setInputBackend(backend);
+	File recording = File.createTempFile("recording", ".jrec");
+	File image = File.createTempFile("frame", ".png");
+	recording.deleteOnExit();
+	image.deleteOnExit();
+
+	javauto.recordStart(recording.getPath(), 0, 0, 99, 69, 50);
+	javauto.sleep(100);
+	backend.getScreen().setRGB(90, 60, 0xABCDEF);
+	javauto.sleep(100);
+	javauto.recordStop();
+
+	int frames = javauto.recordFrameCount(recording.getPath());
+	assertThat(frames).isGreaterThan(2);
+	javauto.recordExtract(recording.getPath(), 0, image.getPath());
+	BufferedImage first = ImageIO.read(image);
+	assertThat(first.getRGB(3, 4)).isEqualTo(0xFF123456);
+	assertThat(first.getRGB(90, 60)).isEqualTo(0xFF000000);
+	javauto.recordExtract(recording.getPath(), frames - 1, image.getPath());
+	BufferedImage last = ImageIO.read(image);
+	assertThat(last.getRGB(3, 4)).isEqualTo(0xFF123456);
+	assertThat(last.getRGB(90, 60)).isEqualTo(0xFFABCDEF);
+    }
+
+    @Test
+    public void testRecordWhileCapturing() throws Exception {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 70);
+	backend.getScreen().setRGB(12, 25, 0x123456);
+	javauto.setInputBackend(backend);
+	File recording = File.createTempFile("recording", ".jrec");
+	File image = File.createTempFile("frame", ".png");
+	recording.deleteOnExit();
+	image.deleteOnExit();
+
+	/* the recording only covers part of each captured frame */
+	javauto.captureStart(0, 0, 99, 69, 50, 60000);
+	try {
+	    javauto.sleep(100);
+	    javauto.recordStart(recording.getPath(), 10, 20, 49, 39, 50);
+	    javauto.sleep(100);
+	    javauto.recordStop();
+	} finally {
+	    javauto.captureStop();
+	}
+
+	assertThat(javauto.recordFrameCount(recording.getPath()))
+		.isGreaterThan(0);
+	javauto.recordExtract(recording.getPath(), 0, image.getPath());
+	BufferedImage first = ImageIO.read(image);
+	assertThat(first.getWidth()).isEqualTo(40);
+	assertThat(first.getHeight()).isEqualTo(20);
+	assertThat(first.getRGB(2, 5)).isEqualTo(0xFF123456);
+    }
+
+    @Test
+    public void testPixelSearchInStrips() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(1000, 2000);
+	backend.getScreen().setRGB(700, 3, 0x123456);
+	backend.getScreen().setRGB(20, 1500, 0x654321);
+	javauto.setInputBackend(backend);
+	javauto.setSearchCapture("strips");
+	assertThat(javauto.getSearchCapture()).isEqualTo("strips");
+
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 999, 1999)).isEqualTo(
+		new int[] { 700, 3 });
+	assertThat(backend.getCaptureCount()).isEqualTo(1);
+	assertThat(javauto.pixelSearch(0x654321, 0, 0, 999, 1999)).isEqualTo(
+		new int[] { 20, 1500 });
+	assertThat(javauto.pixelSearch(0x654321, 2, 0, 999, 1999, 5))
+		.isEqualTo(new int[] { 20, 1500 });
+	assertThat(javauto.pixelSearch(0xABCDEF, 0, 0, 999, 1999)).isEqualTo(
+		new int[] { -1, -1 });
+    }
+
+    @Test
+    public void testScreenIndex() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(300, 200);
+	for (int i = 0; i < 2000; i++)
+	    backend.getScreen().setRGB(i % 300, i / 300 * 30, 0x010101 * (i % 7));
+	backend.getScreen().setRGB(250, 150, 0x123456);
+	javauto.setInputBackend(backend);
+
+	Javauto.ColorIndex index = javauto.screenIndex(0, 0, 299, 199, 60000);
+	assertThat(index.getColorCount()).isEqualTo(8);
+	assertThat(index.count(0x123456)).isEqualTo(1);
+	assertThat(index.find(0x030303)).isEqualTo(new int[] { 3, 0 });
+	assertThat(index.find(0x030303, 100, 40, 299, 199)).isEqualTo(
+		new int[] { 103, 60 });
+	assertThat(index.findAll(0x123456)).isEqualTo(
+		new int[][] { { 250, 150 } });
+	assertThat(index.find(0xABCDEF)).isEqualTo(new int[] { -1, -1 });
+
+	/* pixelSearch answers from the index until the screen is read again */
+	long captures = backend.getCaptureCount();
+	assertThat(javauto.pixelSearch(0x123456, 200, 100, 299, 199))
+		.isEqualTo(new int[] { 250, 150 });
+	assertThat(backend.getCaptureCount()).isEqualTo(captures);
+    }
+
+    @Test
+    public void testScreenIndexWhileCapturing() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	backend.getScreen().setRGB(5, 5, 0x123456);
+	backend.getScreen().setRGB(60, 70, 0x123456);
+	javauto.setInputBackend(backend);
+
+	javauto.captureStart(0, 0, 99, 99, 50, 60000);
+	Javauto.ColorIndex index;
+	try {
+	    javauto.sleep(100);
+	    index = javauto.screenIndex(50, 50, 99, 99, 0);
+	} finally {
+	    javauto.captureStop();
+	}
+	assertThat(index.getFrame().getWidth()).isEqualTo(50);
+	assertThat(index.getColorCount()).isEqualTo(2);
+	assertThat(index.findAll(0x123456)).isEqualTo(
+		new int[][] { { 60, 70 } });
+    }
+
+    @Test
+    public void testSignatureSearch() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	int[][] signature = { { 0, 0, 0x3366CC }, { 40, 0, 0x3366CC },
+		{ 20, 8, 0xFFFFFF } };
+	/* a decoy missing one pixel, then the real thing */
+	backend.getScreen().setRGB(10, 10, 0x3366CC);
+	backend.getScreen().setRGB(50, 10, 0x3366CC);
+	for (int[] point : signature)
+	    backend.getScreen().setRGB(120 + point[0], 60 + point[1],
+		    point[2]);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.signatureSearch(signature, 0, 0, 199, 99))
+		.isEqualTo(new int[] { 120, 60 });
+	assertThat(javauto.signatureSearch(signature, 0, 0, 159, 99))
+		.isEqualTo(new int[] { -1, -1 });
+	signature[2][2] = 0xFAFAFA;
+	assertThat(javauto.signatureSearch(signature, 0, 0, 199, 99))
+		.isEqualTo(new int[] { -1, -1 });
+	assertThat(javauto.signatureSearch(signature, 0, 0, 199, 99, 5))
+		.isEqualTo(new int[] { 120, 60 });
+    }
+
+    @Test
+    public void testSignatureSearchWhileCapturing() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(100, 100);
+	int[][] signature = { { 0, 0, 0x3366CC }, { 5, 3, 0xFFFFFF } };
+	/* the same thing outside the area, where it mustn't be found */
+	for (int[] point : signature) {
+	    backend.getScreen().setRGB(10 + point[0], 10 + point[1],
+		    point[2]);
+	    backend.getScreen().setRGB(70 + point[0], 60 + point[1],
+		    point[2]);
+	}
+	javauto.setInputBackend(backend);
+
+	javauto.captureStart(0, 0, 99, 99, 50, 60000);
+	try {
+	    javauto.sleep(100);
+	    assertThat(javauto.signatureSearch(signature, 50, 50, 99, 99))
+		    .isEqualTo(new int[] { 70, 60 });
+	} finally {
+	    javauto.captureStop();
+	}
+    }
+
+    @Test
+    public void testSignatureSearchBadArgumentsAreErrors() {
+	Javauto javauto = new Javauto();
+	javauto.setInputBackend(new RecordingInputBackend(100, 100));
+	int[][] signature = { { 0, 0, 0x3366CC } };
+
+	assertThat(javauto.signatureSearch(signature, 0, 0, 99, 99, 256))
+		.isEqualTo(new int[] { -3, -3 });
+	assertThat(javauto.signatureSearch(new int[0][], 0, 0, 99, 99))
+		.isEqualTo(new int[] { -3, -3 });
+	assertThat(javauto.signatureSearch(new int[][] { { 0, 0 } }, 0, 0,
+		99, 99)).isEqualTo(new int[] { -3, -3 });
+    }
+
+    @Test
+    public void testPixelSearchNear() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	backend.getScreen().setRGB(10, 10, 0x123456);
+	backend.getScreen().setRGB(106, 50, 0x123456);
+	backend.getScreen().setRGB(100, 44, 0x123456);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.pixelSearchNear(0x123456, 100, 50, 20)).isEqualTo(
+		new int[] { 100, 44 });
+	assertThat(javauto.pixelSearchNear(0x123456, 105, 50, 20)).isEqualTo(
+		new int[] { 106, 50 });
+	assertThat(javauto.pixelSearchNear(0x123456, 150, 80, 20)).isEqualTo(
+		new int[] { -1, -1 });
+	assertThat(javauto.pixelSearchNear(0x123456, 0, 0, 10)).isEqualTo(
+		new int[] { 10, 10 });
+    }
+
+    @Test
+    public void testSetSearchOrder() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(200, 100);
+	backend.getScreen().setRGB(150, 5, 0x123456);
+	backend.getScreen().setRGB(5, 90, 0x123456);
+	backend.getScreen().setRGB(110, 60, 0x123456);
+	javauto.setInputBackend(backend);
+
+	assertThat(javauto.getSearchOrder()).isEqualTo("row-major");
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 199, 99)).isEqualTo(
+		new int[] { 150, 5 });
+	javauto.setSearchOrder("column-major");
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 199, 99)).isEqualTo(
+		new int[] { 5, 90 });
+	javauto.setSearchOrder("spiral");
+	assertThat(javauto.pixelSearch(0x123456, 0, 0, 199, 99)).isEqualTo(
+		new int[] { 110, 60 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetSearchOrderUnknown() {
+	Javauto javauto = new Javauto();
+	javauto.setSearchOrder("diagonal");
+    }
+
+    @Test
+    public void testTrackColor() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(400, 300);
+	javauto.setInputBackend(backend);
+	Javauto.Tracker tracker = javauto.trackColor(0x123456, 0, 0, 399, 299,
+		10);
+	assertThat(tracker.isLost()).isTrue();
+
+	/* a pixel moving steadily is followed */
+	for (int step = 0; step < 20; step++) {
+	    backend.getScreen().setRGB(10 + step * 8, 20 + step * 5, 0x123456);
+	    assertThat(tracker.update()).isEqualTo(
+		    new int[] { 10 + step * 8, 20 + step * 5 });
+	    backend.getScreen().setRGB(10 + step * 8, 20 + step * 5, 0);
+	}
+
+	/* one that jumps is found by searching everywhere */
+	backend.getScreen().setRGB(350, 10, 0x123456);
+	assertThat(tracker.update()).isEqualTo(new int[] { 350, 10 });
+	backend.getScreen().setRGB(350, 10, 0);
+	assertThat(tracker.update()).isEqualTo(new int[] { -1, -1 });
+	assertThat(tracker.isLost()).isTrue();
+	assertThat(tracker.getPosition()).isEqualTo(new int[] { 350, 10 });
+    }
+
+    @Test
+    public void testColorMath() {
+	Javauto javauto = new Javauto();
+	int[] rgb = new int[3];
+	assertThat(javauto.intGetRGB(0x80123456, rgb)).isSameAs(rgb)
+		.isEqualTo(new int[] { 0x12, 0x34, 0x56 });
+	assertThat(javauto.intGetRGB(0xFFFFFFFF)).isEqualTo(
+		new int[] { 255, 255, 255 });
+	assertThat(javauto.rgbGetInt(0x12, 0x34, 0x56)).isEqualTo(0xFF123456);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRgbGetIntOutOfRange() {
+	Javauto javauto = new Javauto();
+	javauto.rgbGetInt(0, 256, 0);
+    }
+
+    @Test
+    public void testHotCallsDoNotAllocate() {
+	final Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(20, 20);
+	javauto.setInputBackend(backend);
+	javauto.captureStart(0, 0, 19, 19, 50, 60000);
+	javauto.sleep(100);
+	final int[] rgb = new int[3];
+
+	assertThat(allocatedBytes(new Runnable() {
+	    public void run() {
+		javauto.intGetRGB(javauto.pixelGetColor(5, 5), rgb);
+		javauto.rgbGetInt(rgb[0], rgb[1], rgb[2]);
+	    }
+	}, 1000000)).isLessThan(1000000);
+	javauto.captureStop();
+    }
+
+    @Test
+    public void testCursorGetPosIntoArray() throws InterruptedException {
+	Javauto javauto = new Javauto();
+	int[] position = new int[2];
+	javauto.mouseMove(30, 25);
+	TimeUnit.SECONDS.sleep(1);
+
+	assertThat(javauto.cursorGetPos(position)).isSameAs(position)
+		.isEqualTo(new int[] { 30, 25 });
+    }
+
+    @Test
+    public void testFileReadCharset() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("read", ".txt");
+	file.deleteOnExit();
+	Files.write(file.toPath(), "caf\u00e9\r\nna\u00efve\n".getBytes("UTF-8"));
+
+	assertThat(javauto.fileRead(file.getPath(), "UTF-8")).isEqualTo(
+		"caf\u00e9\r\nna\u00efve\n");
+	assertThat(javauto.fileReadBytes(file.getPath())).isEqualTo(
+		Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testFileReadLargeAndUnsizedFiles() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("read", ".txt");
+	file.deleteOnExit();
+	StringBuilder text = new StringBuilder();
+	while (text.length() < 100000)
+	    text.append("line ").append(text.length()).append('\n');
+	Files.write(file.toPath(), text.toString().getBytes("UTF-8"));
+
+	assertThat(javauto.fileRead(file.getPath(), "UTF-8")).isEqualTo(
+		text.toString());
+
+	/* files in /proc report a size of 0 */
+	File status = new File("/proc/self/status");
+	if (status.isFile())
+	    assertThat(javauto.fileRead(status.getPath(), "UTF-8")).contains(
+		    "Name:");
+    }
+
+    @Test
+    public void testFileReadNormalizesLineEndings() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("read", ".txt");
+	file.deleteOnExit();
+	Files.write(file.toPath(), "one\r\ntwo\rthree\n".getBytes("US-ASCII"));
+
+	assertThat(javauto.fileRead(file.getPath())).isEqualTo(
+		"one\ntwo\nthree");
+	Files.write(file.toPath(), new byte[0]);
+	assertThat(javauto.fileRead(file.getPath())).isEqualTo("null");
+    }
+
+    @Test
+    public void testFileLines() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("lines", ".txt");
+	file.deleteOnExit();
+	Files.write(file.toPath(), "one\ntwo\r\n\nfour".getBytes("UTF-8"));
+
+	Javauto.LineIterator lines = javauto.fileLines(file.getPath(), "UTF-8");
+	List<String> read = new ArrayList<String>();
+	for (String line : lines)
+	    read.add(line);
+	assertThat(read).isEqualTo(Arrays.asList("one", "two", "", "four"));
+	assertThat(lines.hasNext()).isFalse();
+	lines.close();
+    }
+
+    @Test
+    public void testFileAppendKeepsFileOpen() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("append", ".txt");
+	file.deleteOnExit();
+
+	assertThat(javauto.fileAppend(file.getPath(), "one\n")).isTrue();
+	assertThat(javauto.fileAppend(file.getPath(), "two\n")).isTrue();
+	assertThat(new String(Files.readAllBytes(file.toPath()), "UTF-8"))
+		.isEqualTo("one\ntwo\n");
+
+	/* a deleted file is created again rather than written to unseen */
+	file.delete();
+	javauto.fileAppend(file.getPath(), "three");
+	assertThat(file.length()).isEqualTo(5);
+	javauto.fileClose(file.getPath());
+    }
+
+    @Test
+    public void testFileOpenAppendIsShared() throws Exception {
+	Javauto javauto = new Javauto();
+	File file = File.createTempFile("append", ".txt");
+	file.deleteOnExit();
+
+	Javauto.FileAppender appender = javauto.fileOpenAppend(file.getPath());
+	assertThat(javauto.fileOpenAppend(file.getAbsolutePath())).isSameAs(
+		appender);
+	appender.write("buffered");
+	assertThat(file.length()).isEqualTo(0);
+	assertThat(javauto.fileFlush(file.getPath())).isTrue();
+	assertThat(file.length()).isEqualTo(8);
+
+	appender.close();
+	assertThat(javauto.fileOpenAppend(file.getPath())).isNotSameAs(
+		appender);
+	javauto.fileClose(file.getPath());
+    }
+
+    @Test
+    public void testFileAppendBoundsOpenFiles() throws Exception {
+	Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("append").toFile();
+	File held = new File(dir, "held.txt");
+	Javauto.FileAppender appender = javauto.fileOpenAppend(held.getPath());
+
+	/* only fileAppend's own handles are closed to make room */
+	File fds = new File("/proc/self/fd");
+	int before = fds.isDirectory() ? fds.list().length : 0;
+	for (int i = 0; i < 200; i++)
+	    assertThat(javauto.fileAppend(new File(dir, i + ".txt").getPath(),
+		    "line " + i)).isTrue();
+	if (fds.isDirectory())
+	    assertThat(fds.list().length - before).isLessThanOrEqualTo(40);
+	assertThat(javauto.fileAppend(new File(dir, "0.txt").getPath(), "!"))
+		.isTrue();
+	appender.write("still open");
+	appender.close();
+
+	assertThat(javauto.fileRead(dir + "/0.txt", "UTF-8")).isEqualTo(
+		"line 0!");
+	assertThat(javauto.fileRead(dir + "/199.txt", "UTF-8")).isEqualTo(
+		"line 199");
+	assertThat(javauto.fileRead(held.getPath(), "UTF-8")).isEqualTo(
+		"still open");
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileFind() throws Exception {
+	Javauto javauto = new Javauto();
+	File root = Files.createTempDirectory("find").toFile();
+	new File(root, "a/b").mkdirs();
+	new File(root, "top.log").createNewFile();
+	new File(root, "a/one.log").createNewFile();
+	new File(root, "a/one.txt").createNewFile();
+	new File(root, "a/b/two.log").createNewFile();
+
+	String[] all = javauto.fileFind(root.getPath(), "*.log", -1);
+	Arrays.sort(all);
+	assertThat(all).isEqualTo(
+		new String[] { new File(root, "a/b/two.log").getPath(),
+			new File(root, "a/one.log").getPath(),
+			new File(root, "top.log").getPath() });
+	String[] parallel = javauto.fileFind(root.getPath(), "*.log", -1, true);
+	Arrays.sort(parallel);
+	assertThat(parallel).isEqualTo(all);
+	assertThat(javauto.fileFind(root.getPath(), "*.log", 2)).hasSize(2);
+	assertThat(javauto.fileFind(root.getPath(), "*", 0)).isEmpty();
+	assertThat(javauto.fileFind(root.getPath(), "*", 0, true)).isEmpty();
+	assertThat(javauto.fileFind(root.getPath(), "a/*/*.log", -1))
+		.containsOnly(new File(root, "a/b/two.log").getPath());
+	javauto.rmDir(root.getPath());
+    }
+
+    @Test
+    public void testFileWalkSkipsDirectory() throws Exception {
+	Javauto javauto = new Javauto();
+	File root = Files.createTempDirectory("walk").toFile();
+	new File(root, "skip/deep").mkdirs();
+	new File(root, "keep").mkdirs();
+	new File(root, "keep/file").createNewFile();
+
+	for (boolean parallel : new boolean[] { false, true }) {
+	    final List<String> visited = Collections
+		    .synchronizedList(new ArrayList<String>());
+	    javauto.fileWalk(root.getPath(), new Javauto.PathVisitor() {
+		public boolean visit(Path path, BasicFileAttributes attributes) {
+		    visited.add(path.getFileName().toString());
+		    return !path.endsWith("skip");
+		}
+	    }, parallel);
+	    assertThat(visited.size()).isEqualTo(3);
+	    assertThat(visited.contains("deep")).isFalse();
+	}
+	javauto.rmDir(root.getPath());
+    }
+
+    @Test
+    public void testFileWaitFor() throws Exception {
+	final Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("wait").toFile();
+	final File file = new File(dir, "export.csv");
+
+	assertThat(javauto.fileWaitFor(file.getPath(), 100)).isFalse();
+	javauto.after(100, new Runnable() {
+	    public void run() {
+		javauto.fileWrite(file.getPath(), "done");
+	    }
+	});
+	assertThat(javauto.fileWaitFor(file.getPath(), 5000)).isTrue();
+	assertThat(javauto.fileWaitFor(file.getPath(), 0)).isTrue();
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileOnChange() throws Exception {
+	Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("watch").toFile();
+	final List<String> changes = Collections
+		.synchronizedList(new ArrayList<String>());
+	final CountDownLatch created = new CountDownLatch(1);
+
+	Future<?> watch = javauto.fileOnChange(dir.getPath(), "*.csv",
+		new Javauto.FileChangeListener() {
+		    public void changed(String path, String change) {
+			changes.add(new File(path).getName() + " " + change);
+			if (change.equals("created"))
+			    created.countDown();
+		    }
+		});
+	new File(dir, "ignored.txt").createNewFile();
+	new File(dir, "export.csv").createNewFile();
+	assertThat(created.await(5, TimeUnit.SECONDS)).isTrue();
+	assertThat(changes.contains("export.csv created")).isTrue();
+	assertThat(changes.contains("ignored.txt created")).isFalse();
+
+	assertThat(watch.cancel(false)).isTrue();
+	assertThat(watch.isCancelled()).isTrue();
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileWaitForFromTimerTask() throws Exception {
+	final Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("wait").toFile();
+	/* the directory doesn't exist yet, so the wait has to poll */
+	final File file = new File(new File(dir, "later"), "export.csv");
+	final AtomicBoolean found = new AtomicBoolean();
+	final CountDownLatch done = new CountDownLatch(1);
+
+	javauto.after(0, new Runnable() {
+	    public void run() {
+		found.set(javauto.fileWaitFor(file.getPath(), 5000));
+		done.countDown();
+	    }
+	});
+	Thread.sleep(300);
+	file.getParentFile().mkdir();
+	file.createNewFile();
+	assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+	assertThat(found.get()).isTrue();
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileOnChangeAfterDirectoryIsRecreated() throws Exception {
+	Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("watch").toFile();
+	new File(dir, "old.csv").createNewFile();
+	final CountDownLatch deleted = new CountDownLatch(1);
+	final CountDownLatch created = new CountDownLatch(1);
+
+	Future<?> watch = javauto.fileOnChange(dir.getPath(), "*.csv",
+		new Javauto.FileChangeListener() {
+		    public void changed(String path, String change) {
+			if (change.equals("deleted"))
+			    deleted.countDown();
+			if (new File(path).getName().equals("new.csv")
+				&& change.equals("created"))
+			    created.countDown();
+		    }
+		});
+	javauto.rmDir(dir.getPath());
+	assertThat(deleted.await(5, TimeUnit.SECONDS)).isTrue();
+	Thread.sleep(500);
+	dir.mkdir();
+	new File(dir, "new.csv").createNewFile();
+	assertThat(created.await(5, TimeUnit.SECONDS)).isTrue();
+
+	watch.cancel(false);
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileOnChangeIsWatchedOnceDirectoryAppears()
+	    throws Exception {
+	Javauto javauto = new Javauto();
+	File parent = Files.createTempDirectory("watch").toFile();
+	File dir = new File(parent, "later");
+	final List<String> threads = Collections
+		.synchronizedList(new ArrayList<String>());
+	final CountDownLatch first = new CountDownLatch(1);
+	final CountDownLatch second = new CountDownLatch(1);
+
+	Future<?> watch = javauto.fileOnChange(dir.getPath(), "*.csv",
+		new Javauto.FileChangeListener() {
+		    public void changed(String path, String change) {
+			String name = new File(path).getName();
+			if (name.equals("first.csv"))
+			    first.countDown();
+			if (name.equals("second.csv")) {
+			    threads.add(Thread.currentThread().getName());
+			    second.countDown();
+			}
+		    }
+		});
+	dir.mkdir();
+	new File(dir, "first.csv").createNewFile();
+	assertThat(first.await(5, TimeUnit.SECONDS)).isTrue();
+	new File(dir, "second.csv").createNewFile();
+	assertThat(second.await(5, TimeUnit.SECONDS)).isTrue();
+	assertThat(threads).isEqualTo(Arrays.asList("Javauto file watcher"));
+
+	watch.cancel(false);
+	javauto.rmDir(parent.getPath());
+    }
+
+    @Test
+    public void testFileWaitForFromListener() throws Exception {
+	final Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("wait").toFile();
+	final File trigger = new File(dir, "trigger.csv");
+	final File file = new File(dir, "export.csv");
+	final AtomicBoolean found = new AtomicBoolean();
+	final CountDownLatch done = new CountDownLatch(1);
+
+	Future<?> watch = javauto.fileOnChange(dir.getPath(), "trigger.csv",
+		new Javauto.FileChangeListener() {
+		    public void changed(String path, String change) {
+			if (done.getCount() == 0)
+			    return;
+			found.set(javauto.fileWaitFor(file.getPath(), 5000));
+			done.countDown();
+		    }
+		});
+	trigger.createNewFile();
+	Thread.sleep(300);
+	file.createNewFile();
+	assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+	assertThat(found.get()).isTrue();
+
+	watch.cancel(false);
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testDirWatchNewDirectories() throws Exception {
+	Javauto javauto = new Javauto();
+	File dir = Files.createTempDirectory("watch").toFile();
+	final Set<String> changes = Collections
+		.synchronizedSet(new HashSet<String>());
+	final CountDownLatch nested = new CountDownLatch(2);
+	final CountDownLatch later = new CountDownLatch(1);
+
+	Future<?> watch = javauto.dirWatch(dir.getPath(),
+		new Javauto.FileChangeListener() {
+		    public void changed(String path, String change) {
+			String name = new File(path).getName();
+			if (change.equals("created")
+				&& changes.add(name + " " + change)) {
+			    if (name.equals("inner") || name.equals("a.txt"))
+				nested.countDown();
+			    if (name.equals("b.txt"))
+				later.countDown();
+			}
+		    }
+		});
+	File inner = new File(dir, "sub/inner");
+	inner.mkdirs();
+	new File(inner, "a.txt").createNewFile();
+	assertThat(nested.await(5, TimeUnit.SECONDS)).isTrue();
+	assertThat(changes.contains("sub created")).isTrue();
+	assertThat(changes.contains("inner created")).isTrue();
+	assertThat(changes.contains("a.txt created")).isTrue();
+
+	/* the new directories are watched from now on */
+	new File(inner, "b.txt").createNewFile();
+	assertThat(later.await(5, TimeUnit.SECONDS)).isTrue();
+
+	watch.cancel(false);
+	javauto.rmDir(dir.getPath());
+    }
+
+    @Test
+    public void testFileCopyIsExact() throws Exception {
+	Javauto javauto = new Javauto();
+	File source = File.createTempFile("copy", ".bin");
+	File dest = File.createTempFile("copy", ".bin");
+	source.deleteOnExit();
+	dest.deleteOnExit();
+	byte[] data = new byte[100000];
+	new Random(1).nextBytes(data);
+	Files.write(source.toPath(), data);
+
+	assertThat(javauto.fileCopy(source.getPath(), dest.getPath())).isTrue();
+	assertThat(Files.readAllBytes(dest.toPath())).isEqualTo(data);
+	assertThat(javauto.fileCopy(source.getPath(), source.getPath()))
+		.isTrue();
+	assertThat(Files.readAllBytes(source.toPath())).isEqualTo(data);
+	assertThat(javauto.fileCopy(source.getPath() + ".missing",
+		dest.getPath())).isFalse();
+    }
+
+    @Test
+    public void testFileMove() throws Exception {
+	Javauto javauto = new Javauto();
+	File source = File.createTempFile("move", ".txt");
+	File dest = new File(source.getPath() + ".moved");
+	dest.deleteOnExit();
+	Files.write(source.toPath(), "moved".getBytes("UTF-8"));
+
+	assertThat(javauto.fileMove(source.getPath(), dest.getPath())).isTrue();
+	assertThat(source.exists()).isFalse();
+	assertThat(contentOf(dest)).isEqualTo("moved");
+    }
+
+    @Test
+    public void testDirCopyAndRmDir() throws Exception {
+	Javauto javauto = new Javauto();
+	File source = Files.createTempDirectory("copy").toFile();
+	File copy = new File(source.getPath() + ".copy");
+	File parallel = new File(source.getPath() + ".parallel");
+	new File(source, "a/b").mkdirs();
+	Files.write(new File(source, "a/b/c.txt").toPath(), "c".getBytes());
+	Files.write(new File(source, "d.txt").toPath(), "d".getBytes());
+
+	assertThat(javauto.dirCopy(source.getPath(), copy.getPath())).isTrue();
+	assertThat(javauto.dirCopy(source.getPath(), parallel.getPath(), true))
+		.isTrue();
+	assertThat(contentOf(new File(copy, "a/b/c.txt"))).isEqualTo("c");
+	assertThat(contentOf(new File(parallel, "d.txt"))).isEqualTo("d");
+	assertThat(javauto.dirCopy(source.getPath(), new File(source, "a")
+		.getPath())).isFalse();
+
+	/*
+	 * deep enough that deleting it recursively could run out of stack,
+	 * while the whole path stays within what every system allows
+	 */
+	Path deep = copy.toPath().resolve("deep");
+	while (deep.toString().length() < 1000)
+	    deep = deep.resolve("x");
+	Files.createDirectories(deep);
+
+	javauto.rmDir(source.getPath());
+	javauto.rmDir(copy.getPath());
+	javauto.rmDir(parallel.getPath());
+	assertThat(source.exists()).isFalse();
+	assertThat(copy.exists()).isFalse();
+	assertThat(parallel.exists()).isFalse();
+    }
+
+    @Test
+    public void testDirCopyAndMoveWriteOutAppends() throws Exception {
+	Javauto javauto = new Javauto();
+	File source = Files.createTempDirectory("copy").toFile();
+	File copy = new File(source.getPath() + ".copy");
+	File moved = new File(source.getPath() + ".moved");
+	File log = new File(source, "logs/run.log");
+	log.getParentFile().mkdirs();
+	javauto.fileOpenAppend(log.getPath()).write("buffered");
+
+	assertThat(javauto.dirCopy(source.getPath(), copy.getPath())).isTrue();
+	assertThat(contentOf(new File(copy, "logs/run.log"))).isEqualTo(
+		"buffered");
+	assertThat(javauto.fileMove(source.getPath(), moved.getPath()))
+		.isTrue();
+	assertThat(contentOf(new File(moved, "logs/run.log"))).isEqualTo(
+		"buffered");
+
+	javauto.rmDir(copy.getPath());
+	javauto.rmDir(moved.getPath());
+    }
+
+    @Test
+    public void testSendCoalescesShift() {
+	Javauto javauto = new Javauto();
+	RecordingInputBackend backend = new RecordingInputBackend(10, 10);
+	javauto.setInputBackend(backend);
+	javauto.setSpeed(1);
+
+	javauto.send("aB!{ENTER}");
+
+	assertThat(backend.getEvents()).isEqualTo(
+		Arrays.asList("keyPress 65", "keyRelease 65", "keyPress 16",
+			"keyPress 66", "keyRelease 66", "keyPress 49",
+			"keyRelease 49", "keyRelease 16", "keyPress 10",
+			"keyRelease 10"));
+    }
+
     @Test
     public void testToDoubleString() {
 	Javauto javauto = new Javauto();
@@ -1296,4 +2603,77 @@ public class JavautoTest {
 	assertThat(javauto.clipboardGet()).isEqualToIgnoringCase("[5, 2]");
     }
 
+    /**
+     * A frame that isn't one of Javauto's own, which passes everything through
+     * to one that is.
+     */
+    private static class WrappedFrame implements Javauto.ScreenFrame {
+	private final Javauto.ScreenFrame frame;
+
+	WrappedFrame(Javauto.ScreenFrame frame) {
+	    this.frame = frame;
+	}
+
+	public int getX() {
+	    return frame.getX();
+	}
+
+	public int getY() {
+	    return frame.getY();
+	}
+
+	public int getWidth() {
+	    return frame.getWidth();
+	}
+
+	public int getHeight() {
+	    return frame.getHeight();
+	}
+
+	public long getTime() {
+	    return frame.getTime();
+	}
+
+	public boolean contains(int x, int y) {
+	    return frame.contains(x, y);
+	}
+
+	public int getColor(int x, int y) {
+	    return frame.getColor(x, y);
+	}
+
+	public int[] getColors(int[][] points) {
+	    return frame.getColors(points);
+	}
+
+	public Javauto.ScreenFrame region(int x1, int y1, int x2, int y2) {
+	    return new WrappedFrame(frame.region(x1, y1, x2, y2));
+	}
+
+	public long getChecksum() {
+	    return frame.getChecksum();
+	}
+
+	public BufferedImage toImage() {
+	    return frame.toImage();
+	}
+    }
+
+    /**
+     * Measure how many bytes the current thread allocates calling an action
+     * many times, after calling it as many times first so that it's been
+     * compiled.
+     */
+    private static long allocatedBytes(Runnable action, int calls) {
+	ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+		.getThreadMXBean();
+	long id = Thread.currentThread().getId();
+	for (int i = 0; i < calls; i++)
+	    action.run();
+	long before = threads.getThreadAllocatedBytes(id);
+	for (int i = 0; i < calls; i++)
+	    action.run();
+	return threads.getThreadAllocatedBytes(id) - before;
+    }
+
 }
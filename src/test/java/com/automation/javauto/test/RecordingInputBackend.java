@@ -0,0 +1,111 @@
+package com.automation.javauto.test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.automation.javauto.Javauto;
+
+/**
+ * An {@link Javauto.InputBackend} that records the events it is sent instead
+ * of performing them and serves screen captures from an in-memory image.
+ */
+public class RecordingInputBackend implements Javauto.InputBackend {
+
+    private final List<String> events = new ArrayList<String>();
+    private final List<Long> eventTimes = new ArrayList<Long>();
+    private final Point mousePosition = new Point();
+    private BufferedImage screen;
+    private long captureCount;
+
+    /**
+     * Create a new RecordingInputBackend with a black screen.
+     *
+     * @param width
+     *            - The width of the fake screen.
+     * @param height
+     *            - The height of the fake screen.
+     */
+    public RecordingInputBackend(int width, int height) {
+	screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * @return the events recorded so far, like "keyPress 65"
+     */
+    public List<String> getEvents() {
+	return events;
+    }
+
+    /**
+     * @return the value of System.nanoTime() when each event was recorded
+     */
+    public List<Long> getEventTimes() {
+	return eventTimes;
+    }
+
+    /**
+     * @return the fake screen, which can be drawn on by tests
+     */
+    public BufferedImage getScreen() {
+	return screen;
+    }
+
+    private void record(String event) {
+	events.add(event);
+	eventTimes.add(System.nanoTime());
+    }
+
+    public void mouseMove(int x, int y) {
+	mousePosition.setLocation(x, y);
+	record("mouseMove " + x + " " + y);
+    }
+
+    public Point getMousePosition() {
+	return new Point(mousePosition);
+    }
+
+    public void mousePress(int buttons) {
+	record("mousePress " + buttons);
+    }
+
+    public void mouseRelease(int buttons) {
+	record("mouseRelease " + buttons);
+    }
+
+    public void mouseWheel(int wheelAmt) {
+	record("mouseWheel " + wheelAmt);
+    }
+
+    public void keyPress(int keycode) {
+	record("keyPress " + keycode);
+    }
+
+    public void keyRelease(int keycode) {
+	record("keyRelease " + keycode);
+    }
+
+    public int getPixelColor(int x, int y) {
+	captureCount++;
+	return screen.getRGB(x, y);
+    }
+
+    public BufferedImage createScreenCapture(Rectangle screenRect) {
+	captureCount++;
+	BufferedImage capture = new BufferedImage(screenRect.width,
+		screenRect.height, BufferedImage.TYPE_INT_RGB);
+	capture.getGraphics().drawImage(screen, -screenRect.x, -screenRect.y,
+		null);
+	return capture;
+    }
+
+    public long getEventCount() {
+	return events.size();
+    }
+
+    public long getCaptureCount() {
+	return captureCount;
+    }
+}